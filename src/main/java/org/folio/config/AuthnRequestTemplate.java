@@ -0,0 +1,229 @@
+package org.folio.config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.zip.Deflater;
+
+/**
+ * A serialized, unsigned AuthnRequest of one client split around its ID and IssueInstant values. Everything else of
+ * the request (issuer, ACS URL, destination, NameIDPolicy, AuthnContext, binding) is constant for the client, so
+ * requests are rendered by concatenation instead of building and marshalling OpenSAML objects.
+ */
+public class AuthnRequestTemplate {
+
+  /**
+   * Same format OpenSAML uses to marshal the IssueInstant.
+   */
+  public static final DateTimeFormatter INSTANT_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
+    .withZone(ZoneOffset.UTC);
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+  private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+  private static final SecureRandom random = new SecureRandom();
+  private static final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
+  private final String destination;
+  private final byte[][] parts;
+  private final boolean idFirst;
+
+  private AuthnRequestTemplate(String destination, byte[][] parts, boolean idFirst) {
+    this.destination = destination;
+    this.parts = parts;
+    this.idFirst = idFirst;
+  }
+
+  /**
+   * @param xml           serialized request, with {@code markerId} as ID and {@code markerInstant} as IssueInstant
+   * @param markerId      ID of the serialized request, must occur exactly once
+   * @param markerInstant IssueInstant of the serialized request
+   * @param destination   SSO endpoint of the IdP the request is sent to
+   * @throws IllegalArgumentException if the markers cannot be located in the request
+   */
+  public static AuthnRequestTemplate compile(String xml, String markerId, Instant markerInstant, String destination) {
+    String idAttribute = "ID=\"" + markerId + "\"";
+    String instantAttribute = "IssueInstant=\"" + INSTANT_FORMAT.format(markerInstant) + "\"";
+
+    int idStart = uniqueIndexOf(xml, idAttribute);
+    int instantStart = uniqueIndexOf(xml, instantAttribute);
+
+    int idValue = idStart + "ID=\"".length();
+    int instantValue = instantStart + "IssueInstant=\"".length();
+    boolean idFirst = idValue < instantValue;
+
+    String[] parts;
+    if (idFirst) {
+      parts = new String[]{
+        xml.substring(0, idValue),
+        xml.substring(idValue + markerId.length(), instantValue),
+        xml.substring(instantStart + instantAttribute.length() - 1)};
+    } else {
+      parts = new String[]{
+        xml.substring(0, instantValue),
+        xml.substring(instantStart + instantAttribute.length() - 1, idValue),
+        xml.substring(idValue + markerId.length())};
+    }
+
+    byte[][] encodedParts = new byte[parts.length][];
+    for (int i = 0; i < parts.length; i++) {
+      encodedParts[i] = parts[i].getBytes(StandardCharsets.UTF_8);
+    }
+    return new AuthnRequestTemplate(destination, encodedParts, idFirst);
+  }
+
+  /**
+   * @return a random request ID, a valid NCName
+   */
+  public static String newId() {
+    byte[] bytes = new byte[20];
+    random.nextBytes(bytes);
+    char[] id = new char[1 + 2 * bytes.length];
+    id[0] = '_';
+    for (int i = 0; i < bytes.length; i++) {
+      id[1 + 2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+      id[2 + 2 * i] = HEX[bytes[i] & 0xf];
+    }
+    return new String(id);
+  }
+
+  public String getDestination() {
+    return destination;
+  }
+
+  /**
+   * @return the request as XML
+   */
+  public String render(String id, Instant issueInstant) {
+    Buffers buffer = buffers.get();
+    try {
+      write(buffer.xml, id, issueInstant);
+      return new String(buffer.xml.array(), 0, buffer.xml.size(), StandardCharsets.UTF_8);
+    } finally {
+      buffer.release();
+    }
+  }
+
+  /**
+   * @return the request for the HTTP-POST binding: base64 encoded
+   */
+  public String encodePost(String id, Instant issueInstant) {
+    Buffers buffer = buffers.get();
+    try {
+      write(buffer.xml, id, issueInstant);
+      return base64(buffer.xml);
+    } finally {
+      buffer.release();
+    }
+  }
+
+  /**
+   * @return the URL of the HTTP-Redirect binding: the request deflated and base64 encoded, with the relay state
+   */
+  public String redirectUrl(String id, Instant issueInstant, String relayState) {
+    Buffers buffer = buffers.get();
+    try {
+      write(buffer.xml, id, issueInstant);
+
+      Deflater deflater = buffer.deflater;
+      deflater.reset();
+      deflater.setInput(buffer.xml.array(), 0, buffer.xml.size());
+      deflater.finish();
+      byte[] chunk = buffer.chunk;
+      while (!deflater.finished()) {
+        int length = deflater.deflate(chunk);
+        buffer.deflated.write(chunk, 0, length);
+      }
+
+      StringBuilder url = new StringBuilder(destination.length() + 2 * buffer.deflated.size() + 64)
+        .append(destination)
+        .append(destination.indexOf('?') < 0 ? '?' : '&')
+        .append("SAMLRequest=").append(urlEncode(base64(buffer.deflated)));
+      if (relayState != null && !relayState.isEmpty()) {
+        url.append("&RelayState=").append(urlEncode(relayState));
+      }
+      return url.toString();
+    } finally {
+      buffer.release();
+    }
+  }
+
+  private void write(ExposedBuffer out, String id, Instant issueInstant) {
+    byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+    byte[] instantBytes = INSTANT_FORMAT.format(issueInstant).getBytes(StandardCharsets.US_ASCII);
+
+    out.write(parts[0], 0, parts[0].length);
+    if (idFirst) {
+      out.write(idBytes, 0, idBytes.length);
+    } else {
+      out.write(instantBytes, 0, instantBytes.length);
+    }
+    out.write(parts[1], 0, parts[1].length);
+    if (idFirst) {
+      out.write(instantBytes, 0, instantBytes.length);
+    } else {
+      out.write(idBytes, 0, idBytes.length);
+    }
+    out.write(parts[2], 0, parts[2].length);
+  }
+
+  private static String base64(ExposedBuffer bytes) {
+    ByteBuffer encoded = Base64.getEncoder().encode(ByteBuffer.wrap(bytes.array(), 0, bytes.size()));
+    return new String(encoded.array(), 0, encoded.limit(), StandardCharsets.US_ASCII);
+  }
+
+  private static String urlEncode(String value) {
+    try {
+      return URLEncoder.encode(value, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static int uniqueIndexOf(String xml, String attribute) {
+    int index = xml.indexOf(" " + attribute);
+    if (index < 0 || xml.indexOf(" " + attribute, index + 1) >= 0) {
+      throw new IllegalArgumentException("Cannot locate " + attribute + " in the AuthnRequest");
+    }
+    return index + 1;
+  }
+
+  private static class ExposedBuffer extends ByteArrayOutputStream {
+
+    ExposedBuffer() {
+      super(4096);
+    }
+
+    byte[] array() {
+      return buf;
+    }
+
+    int capacity() {
+      return buf.length;
+    }
+  }
+
+  private static class Buffers {
+
+    private final ExposedBuffer xml = new ExposedBuffer();
+    private final ExposedBuffer deflated = new ExposedBuffer();
+    private final byte[] chunk = new byte[4096];
+    private final Deflater deflater = new Deflater(Deflater.DEFLATED, true);
+
+    void release() {
+      xml.reset();
+      deflated.reset();
+      if (xml.capacity() > MAX_RETAINED_BUFFER || deflated.capacity() > MAX_RETAINED_BUFFER) {
+        deflater.end();
+        buffers.remove();
+      }
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package org.folio.config;
+
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.resolver.Criterion;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.CredentialResolver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers the credentials resolved for a set of criteria, so the certificates in the metadata are decoded once,
+ * not for every signature. Only valid as long as the metadata behind the delegate does not change: a new client is
+ * built with a new resolver when the IdP metadata changes.
+ */
+public class CachingCredentialResolver implements CredentialResolver {
+
+  // the callback asks with the same few criteria sets, the bound only matters if some criterion has no equals()
+  private static final int MAX_ENTRIES = 32;
+
+  private final CredentialResolver delegate;
+  private final ConcurrentMap<Set<Criterion>, List<Credential>> cache = new ConcurrentHashMap<>();
+
+  public CachingCredentialResolver(CredentialResolver delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public Iterable<Credential> resolve(CriteriaSet criteria) throws ResolverException {
+    Set<Criterion> key = criteria == null ? Collections.emptySet() : new HashSet<>(criteria);
+    List<Credential> credentials = cache.get(key);
+    if (credentials != null) {
+      return credentials;
+    }
+
+    List<Credential> resolved = new ArrayList<>();
+    for (Credential credential : delegate.resolve(criteria)) {
+      resolved.add(credential);
+    }
+    credentials = Collections.unmodifiableList(resolved);
+    if (cache.size() < MAX_ENTRIES) {
+      cache.putIfAbsent(key, credentials);
+    }
+    return credentials;
+  }
+
+  @Override
+  public Credential resolveSingle(CriteriaSet criteria) throws ResolverException {
+    Iterator<Credential> credentials = resolve(criteria).iterator();
+    return credentials.hasNext() ? credentials.next() : null;
+  }
+}
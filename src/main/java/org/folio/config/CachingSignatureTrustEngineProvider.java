@@ -0,0 +1,57 @@
+package org.folio.config;
+
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import org.opensaml.saml.metadata.resolver.MetadataResolver;
+import org.opensaml.saml.metadata.resolver.impl.PredicateRoleDescriptorResolver;
+import org.opensaml.saml.security.impl.MetadataCredentialResolver;
+import org.opensaml.xmlsec.config.DefaultSecurityConfigurationBootstrap;
+import org.opensaml.xmlsec.keyinfo.KeyInfoCredentialResolver;
+import org.opensaml.xmlsec.signature.support.SignatureTrustEngine;
+import org.opensaml.xmlsec.signature.support.impl.ExplicitKeySignatureTrustEngine;
+import org.pac4j.saml.crypto.SAML2SignatureTrustEngineProvider;
+import org.pac4j.saml.exceptions.SAMLException;
+
+/**
+ * Builds the trust engine validating the IdP signatures once per client instead of once per SAML response, same
+ * setup as pac4j's {@code ExplicitSignatureTrustEngineProvider}, with the resolved credentials cached.
+ */
+public class CachingSignatureTrustEngineProvider implements SAML2SignatureTrustEngineProvider {
+
+  private final MetadataResolver metadataResolver;
+  private volatile SignatureTrustEngine trustEngine;
+
+  public CachingSignatureTrustEngineProvider(MetadataResolver metadataResolver) {
+    this.metadataResolver = metadataResolver;
+  }
+
+  @Override
+  public SignatureTrustEngine build() {
+    SignatureTrustEngine engine = trustEngine;
+    if (engine == null) {
+      synchronized (this) {
+        if (trustEngine == null) {
+          trustEngine = createTrustEngine();
+        }
+        engine = trustEngine;
+      }
+    }
+    return engine;
+  }
+
+  private SignatureTrustEngine createTrustEngine() {
+    MetadataCredentialResolver metadataCredentialResolver = new MetadataCredentialResolver();
+    PredicateRoleDescriptorResolver roleResolver = new PredicateRoleDescriptorResolver(metadataResolver);
+    KeyInfoCredentialResolver keyResolver = DefaultSecurityConfigurationBootstrap.buildBasicInlineKeyInfoCredentialResolver();
+
+    metadataCredentialResolver.setKeyInfoCredentialResolver(keyResolver);
+    metadataCredentialResolver.setRoleDescriptorResolver(roleResolver);
+    try {
+      roleResolver.initialize();
+      metadataCredentialResolver.initialize();
+    } catch (ComponentInitializationException e) {
+      throw new SAMLException("Cannot initialize the credential resolvers of the IdP metadata", e);
+    }
+
+    return new ExplicitKeySignatureTrustEngine(new CachingCredentialResolver(metadataCredentialResolver), keyResolver);
+  }
+}
@@ -0,0 +1,59 @@
+package org.folio.config;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Tells the other module instances that the SAML configuration of a tenant changed, over the Vert.x event bus.
+ * On a clustered Vert.x every node receives the event, otherwise only the local event bus does.
+ */
+public class ConfigChangeNotifier {
+
+  private static final Logger log = LoggerFactory.getLogger(ConfigChangeNotifier.class);
+
+  public static final String ADDRESS = "mod-login-saml.configuration.changed";
+  private static final String TENANT_KEY = "tenant";
+  private static final String ORIGIN_KEY = "origin";
+
+  private static final String LOCAL_NODE_ID = UUID.randomUUID().toString();
+
+  private final Vertx vertx;
+  private final String nodeId;
+
+  public ConfigChangeNotifier(Vertx vertx) {
+    this(vertx, LOCAL_NODE_ID);
+  }
+
+  ConfigChangeNotifier(Vertx vertx, String nodeId) {
+    this.vertx = vertx;
+    this.nodeId = nodeId;
+  }
+
+  public void publish(String tenantId) {
+    if (StringUtils.hasText(tenantId)) {
+      vertx.eventBus().publish(ADDRESS, new JsonObject().put(TENANT_KEY, tenantId).put(ORIGIN_KEY, nodeId));
+    }
+  }
+
+  /**
+   * @param onChange called with the tenant id for changes published by other nodes
+   */
+  public MessageConsumer<JsonObject> listen(Consumer<String> onChange) {
+    return vertx.eventBus().consumer(ADDRESS, message -> {
+      JsonObject body = message.body();
+      String tenantId = body.getString(TENANT_KEY);
+      if (nodeId.equals(body.getString(ORIGIN_KEY)) || !StringUtils.hasText(tenantId)) {
+        return; // this node already knows about its own changes
+      }
+      log.info("SAML configuration of tenant " + tenantId + " changed on an other node");
+      onChange.accept(tenantId);
+    });
+  }
+}
@@ -0,0 +1,219 @@
+package org.folio.config;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.folio.config.model.SamlConfiguration;
+import org.folio.util.PropertyUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Configurations read from and written to mod-configuration, keyed by tenant id. Bounded with the limits of
+ * {@link TenantClientCache}, {@code saml.cache.maxTenants} and {@code saml.cache.maxBytes}: the entry loaded first is
+ * evicted first. An entry is removed when it is invalidated or older than {@code saml.configuration.cacheTtl}.
+ */
+class ConfigurationCache {
+
+  private static final Logger log = LoggerFactory.getLogger(ConfigurationCache.class);
+
+  private static final int DEFAULT_MAX_TENANTS = 1000;
+
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+  private final long ttl;
+  private final int maxTenants;
+  private final long maxBytes;
+
+  ConfigurationCache(long ttl, int maxTenants, long maxBytes) {
+    this.ttl = ttl;
+    this.maxTenants = maxTenants;
+    this.maxBytes = maxBytes;
+  }
+
+  static ConfigurationCache fromSystemProperties() {
+    return new ConfigurationCache(
+      PropertyUtil.getLong(ConfigurationsClient.CACHE_TTL_PROPERTY, 60000L),
+      PropertyUtil.getInt(TenantClientCache.MAX_TENANTS_PROPERTY, DEFAULT_MAX_TENANTS),
+      PropertyUtil.getLong(TenantClientCache.MAX_BYTES_PROPERTY, 0));
+  }
+
+  /**
+   * @return the configuration of the tenant, null if there is none or it expired
+   */
+  SamlConfiguration get(String tenantId, long now) {
+    Entry entry = entries.get(tenantId);
+    if (entry == null) {
+      return null;
+    }
+    SamlConfiguration configuration = entry.get(now);
+    if (configuration == null && entry.isExpired(now)) {
+      entries.remove(tenantId, entry);
+    }
+    return configuration;
+  }
+
+  /**
+   * @return the entry of the tenant, created if missing
+   */
+  Entry entry(String tenantId) {
+    return entries.computeIfAbsent(tenantId, tenant -> new Entry());
+  }
+
+  /**
+   * @return the entry of the tenant, null if missing
+   */
+  Entry find(String tenantId) {
+    return entries.get(tenantId);
+  }
+
+  void remove(String tenantId) {
+    Entry entry = entries.remove(tenantId);
+    if (entry != null) {
+      entry.invalidate();
+    }
+  }
+
+  /**
+   * Removes the entry if it holds no configuration, e.g. after its first load failed.
+   */
+  void discardEmpty(String tenantId, Entry entry) {
+    if (entry.isEmpty()) {
+      entries.remove(tenantId, entry);
+    }
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  /**
+   * Evicts the entries loaded first while over a limit, keeping the one just updated.
+   */
+  synchronized void evictOverLimit(String justUpdated) {
+    while (entries.size() > 1 && isOverLimit()) {
+      String victim = null;
+      Entry victimEntry = null;
+      for (Map.Entry<String, Entry> candidate : entries.entrySet()) {
+        if (!candidate.getKey().equals(justUpdated)
+          && (victimEntry == null || candidate.getValue().loadedAt < victimEntry.loadedAt)) {
+          victim = candidate.getKey();
+          victimEntry = candidate.getValue();
+        }
+      }
+      if (victimEntry == null) {
+        return;
+      }
+      log.debug("Evicting configuration of tenant " + victim);
+      if (entries.remove(victim, victimEntry)) {
+        victimEntry.invalidate();
+      }
+    }
+  }
+
+  private boolean isOverLimit() {
+    if (maxTenants > 0 && entries.size() > maxTenants) {
+      return true;
+    }
+    if (maxBytes <= 0) {
+      return false;
+    }
+    long bytes = 0;
+    for (Entry entry : entries.values()) {
+      bytes += entry.bytes;
+    }
+    return bytes > maxBytes;
+  }
+
+  static JsonArray configs(Map<String, String> values) {
+    JsonArray configs = new JsonArray();
+    values.forEach((code, value) -> configs.add(new JsonObject().put("code", code).put("value", value)));
+    return configs;
+  }
+
+  private static long estimateBytes(Map<String, String> values) {
+    long bytes = 0;
+    for (Map.Entry<String, String> value : values.entrySet()) {
+      // the value is held twice, by the map and by the configuration mapped from it
+      long valueBytes = 40L + 2L * (value.getValue() == null ? 0 : value.getValue().length());
+      bytes += 40L + 2L * value.getKey().length() + 2 * valueBytes;
+    }
+    return bytes;
+  }
+
+  /**
+   * Configuration of one tenant. The version changes with every local write, a fetch started before a write does not
+   * replace what the write left.
+   */
+  class Entry {
+
+    private long version;
+    private Map<String, String> values;
+    private SamlConfiguration configuration;
+    private volatile long loadedAt;
+    private volatile long bytes;
+
+    synchronized long version() {
+      return version;
+    }
+
+    synchronized SamlConfiguration get(long now) {
+      return configuration != null && now - loadedAt < ttl ? configuration : null;
+    }
+
+    synchronized boolean isEmpty() {
+      return configuration == null;
+    }
+
+    synchronized boolean isExpired(long now) {
+      return configuration != null && now - loadedAt >= ttl;
+    }
+
+    /**
+     * @return false if a local write happened since the fetch started, the fetched values are dropped then
+     */
+    synchronized boolean loaded(long fetchVersion, Map<String, String> fetchedValues, SamlConfiguration fetched, long fetchedAt) {
+      if (fetchVersion != version) {
+        return false;
+      }
+      set(fetchedValues, fetched, fetchedAt);
+      return true;
+    }
+
+    synchronized void stored(Map<String, String> storedValues, SamlConfiguration stored, long fetchedAt) {
+      version++;
+      set(storedValues, stored, fetchedAt);
+    }
+
+    synchronized void written(String code, String value) {
+      version++;
+      if (values == null) {
+        return;
+      }
+      Map<String, String> updated = new LinkedHashMap<>(values);
+      updated.put(code, value);
+      try {
+        set(updated, ConfigurationObjectMapper.map(configs(updated), SamlConfiguration.class), loadedAt);
+      } catch (RuntimeException e) {
+        invalidate();
+      }
+    }
+
+    synchronized void invalidate() {
+      version++;
+      values = null;
+      configuration = null;
+      bytes = 0;
+    }
+
+    private void set(Map<String, String> values, SamlConfiguration configuration, long loadedAt) {
+      this.values = values;
+      this.configuration = configuration;
+      this.loadedAt = loadedAt;
+      this.bytes = estimateBytes(values);
+    }
+  }
+}
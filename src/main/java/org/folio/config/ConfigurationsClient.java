@@ -8,20 +8,25 @@ import io.vertx.core.http.HttpMethod;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import org.folio.config.model.SamlConfiguration;
-import org.folio.rest.tools.client.HttpClientFactory;
 import org.folio.rest.tools.client.Response;
 import org.folio.rest.tools.client.interfaces.HttpClientInterface;
+import org.folio.util.OkapiClientPool;
+import org.folio.util.PropertyUtil;
+import org.folio.util.TokenRejectedException;
 import org.folio.util.model.OkapiHeaders;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 
 import java.net.URLEncoder;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Connect to mod-configuration via Okapi
@@ -35,40 +40,137 @@ public class ConfigurationsClient {
   public static final String CONFIGURATIONS_ENTRIES_ENDPOINT_URL = "/configurations/entries";
   public static final String MODULE_NAME = "LOGIN-SAML";
   public static final String CONFIG_NAME = "saml";
+  public static final String WRITE_CONCURRENCY_PROPERTY = "saml.configuration.writeConcurrency";
+  public static final String CACHE_TTL_PROPERTY = "saml.configuration.cacheTtl";
 
+  // mod-configuration returns 10 entries by default, the module has about as many codes
+  private static final int ENTRIES_LIMIT = 100;
+
+  private static final ConfigurationCache cache = ConfigurationCache.fromSystemProperties();
+
+  /**
+   * @return the configuration of the tenant, from the cache if it was loaded or written less than
+   * {@code saml.configuration.cacheTtl} ms ago. The instance is shared, do not modify it.
+   */
   public static Future<SamlConfiguration> getConfiguration(OkapiHeaders okapiHeaders) {
 
+    String missingHeader = missingHeader(okapiHeaders);
+    if (missingHeader != null) {
+      return Future.failedFuture(missingHeader);
+    }
+    SamlConfiguration cached = cache.get(okapiHeaders.getTenant(), System.currentTimeMillis());
+    if (cached != null) {
+      return Future.succeededFuture(cached);
+    }
+    return reloadConfiguration(okapiHeaders);
+  }
+
+  /**
+   * Loads the configuration from mod-configuration, bypassing and updating the cache.
+   */
+  public static Future<SamlConfiguration> reloadConfiguration(OkapiHeaders okapiHeaders) {
+
+    String missingHeader = missingHeader(okapiHeaders);
+    if (missingHeader != null) {
+      return Future.failedFuture(missingHeader);
+    }
+
+    String tenantId = okapiHeaders.getTenant();
+    long fetchedAt = System.currentTimeMillis();
+    ConfigurationCache.Entry cached = cache.entry(tenantId);
+    long version = cached.version();
+
+    Future<SamlConfiguration> future = Future.future();
+    fetchEntries(okapiHeaders).setHandler(fetched -> {
+      if (fetched.failed()) {
+        cache.discardEmpty(tenantId, cached);
+        future.fail(fetched.cause());
+      } else {
+        Future<SamlConfiguration> mapped = Future.future();
+        ConfigurationObjectMapper.map(fetched.result(), SamlConfiguration.class, mapped);
+        if (mapped.succeeded() && cached.loaded(version, values(fetched.result()), mapped.result(), fetchedAt)) {
+          cache.evictOverLimit(tenantId);
+          SamlStatusIndex.getInstance().update(tenantId, mapped.result(), fetchedAt);
+        } else {
+          cache.discardEmpty(tenantId, cached);
+        }
+        mapped.setHandler(future.completer());
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Drops the cached configuration of the tenant, e.g. after it was changed on another node.
+   */
+  public static void invalidate(String tenantId) {
+    cache.remove(tenantId);
+    SamlStatusIndex.getInstance().invalidate(tenantId);
+  }
+
+  /**
+   * @return whether the cache has an entry for the tenant
+   */
+  static boolean isCached(String tenantId) {
+    return cache.find(tenantId) != null;
+  }
+
+  /**
+   * @return the message of the first missing header, null if all are present
+   */
+  private static String missingHeader(OkapiHeaders okapiHeaders) {
     if (Strings.isNullOrEmpty(okapiHeaders.getUrl())) {
-      return Future.failedFuture("Missing Okapi URL");
+      return "Missing Okapi URL";
     }
     if (Strings.isNullOrEmpty(okapiHeaders.getTenant())) {
-      return Future.failedFuture("Missing Tenant");
+      return "Missing Tenant";
     }
     if (Strings.isNullOrEmpty(okapiHeaders.getToken())) {
-      return Future.failedFuture("Missing Token");
+      return "Missing Token";
     }
+    return null;
+  }
 
-    Future<SamlConfiguration> future = Future.future();
+  private static Map<String, String> values(JsonArray configs) {
+    Map<String, String> values = new LinkedHashMap<>();
+    for (Object config : configs) {
+      if (config instanceof JsonObject) {
+        JsonObject entry = (JsonObject) config;
+        values.put(entry.getString("code"), entry.getString("value"));
+      }
+    }
+    return values;
+  }
+
+  /**
+   * All entries of the module's configuration in one request.
+   */
+  private static Future<JsonArray> fetchEntries(OkapiHeaders okapiHeaders) {
+
+    String missingHeader = missingHeader(okapiHeaders);
+    if (missingHeader != null) {
+      return Future.failedFuture(missingHeader);
+    }
+
+    Future<JsonArray> future = Future.future();
 
     String query = "(module==" + MODULE_NAME + " AND configName==" + CONFIG_NAME + ")";
 
     try {
       String encodedQuery = URLEncoder.encode(query, "UTF-8");
 
-      Map<String, String> headers = new HashMap<>();
-      headers.put(OkapiHeaders.OKAPI_TOKEN_HEADER, okapiHeaders.getToken());
-
-      HttpClientInterface httpClient = HttpClientFactory.getHttpClient(okapiHeaders.getUrl(), okapiHeaders.getTenant());
-      httpClient.setDefaultHeaders(headers);
-      httpClient.request(CONFIGURATIONS_ENTRIES_ENDPOINT_URL + "?query=" + encodedQuery) // this is ugly :/
+      HttpClientInterface httpClient = OkapiClientPool.getClient(okapiHeaders);
+      httpClient.request(CONFIGURATIONS_ENTRIES_ENDPOINT_URL + "?query=" + encodedQuery + "&limit=" + ENTRIES_LIMIT, OkapiClientPool.headers(okapiHeaders)) // this is ugly :/
         .whenComplete((Response response, Throwable throwable) -> {
           if (Response.isSuccess(response.getCode())) {
 
             JsonObject responseBody = response.getBody();
             JsonArray configs = responseBody.getJsonArray("configs"); //{"configs": [],"total_records": 0}
+            future.complete(configs == null ? new JsonArray() : configs);
 
-            ConfigurationObjectMapper.map(configs, SamlConfiguration.class, future);
-
+          } else if (TokenRejectedException.isRejection(response.getCode())) {
+            log.warn("Cannot get configuration data, token rejected: " + response.getCode());
+            future.fail(new TokenRejectedException(response.getCode(), "Cannot get configuration data, HTTP status " + response.getCode()));
           } else {
             log.warn("Cannot get configuration data: " + response.getError().toString());
             future.fail(response.getException());
@@ -83,6 +185,10 @@ public class ConfigurationsClient {
     return future;
   }
 
+  /**
+   * Fetches the existing entries once, creates or updates the given ones with at most
+   * {@code saml.configuration.writeConcurrency} requests in flight, and maps the resulting configuration locally.
+   */
   public static Future<SamlConfiguration> storeEntries(OkapiHeaders headers, Map<String, String> entries) {
 
     Objects.requireNonNull(headers);
@@ -90,46 +196,113 @@ public class ConfigurationsClient {
 
     Future<SamlConfiguration> result = Future.future();
 
-    List<Future> futures = entries.entrySet().stream()
-      .map(entry -> ConfigurationsClient.storeEntry(headers, entry.getKey(), entry.getValue()))
-      .collect(Collectors.toList());
+    long fetchedAt = System.currentTimeMillis();
+    fetchEntries(headers).setHandler(fetched -> {
+      if (fetched.failed()) {
+        log.warn("Cannot save configuration entries: " + fetched.cause());
+        result.fail(fetched.cause());
+        return;
+      }
 
-    CompositeFuture.all(futures).setHandler(compositeEvent -> {
-      if (compositeEvent.succeeded()) {
-        ConfigurationsClient.getConfiguration(headers).setHandler(newConfigHandler -> {
+      Map<String, String> ids = new HashMap<>();
+      for (Object config : fetched.result()) {
+        if (config instanceof JsonObject) {
+          JsonObject entry = (JsonObject) config;
+          ids.putIfAbsent(entry.getString("code"), entry.getString("id"));
+        }
+      }
+      Map<String, String> values = values(fetched.result());
+
+      Queue<Map.Entry<String, String>> queue = new ConcurrentLinkedQueue<>(entries.entrySet());
+      int concurrency = Math.max(1, Math.min(entries.size(), PropertyUtil.getInt(WRITE_CONCURRENCY_PROPERTY, 4)));
+      List<Future> lanes = new ArrayList<>();
+      for (int i = 0; i < concurrency; i++) {
+        Future<Void> lane = Future.future();
+        writeNext(headers, ids, queue, lane);
+        lanes.add(lane);
+      }
 
-          if (newConfigHandler.succeeded()) {
-            result.complete(newConfigHandler.result());
+      CompositeFuture.all(lanes).setHandler(compositeEvent -> {
+        if (compositeEvent.succeeded()) {
+          values.putAll(entries);
+          Future<SamlConfiguration> mapped = Future.future();
+          ConfigurationObjectMapper.map(ConfigurationCache.configs(values), SamlConfiguration.class, mapped);
+          if (mapped.succeeded()) {
+            cache.entry(headers.getTenant()).stored(values, mapped.result(), fetchedAt);
+            cache.evictOverLimit(headers.getTenant());
+            SamlStatusIndex.getInstance().update(headers.getTenant(), mapped.result(), fetchedAt);
           } else {
-            result.fail(newConfigHandler.cause());
+            invalidate(headers.getTenant());
           }
-
-        });
-      } else {
-        log.warn("Cannot save configuration entries: " + compositeEvent.cause());
-        result.fail(compositeEvent.cause());
-      }
+          mapped.setHandler(result.completer());
+        } else {
+          log.warn("Cannot save configuration entries: " + compositeEvent.cause());
+          // some entries may be written
+          invalidate(headers.getTenant());
+          result.fail(compositeEvent.cause());
+        }
+      });
     });
 
     return result;
   }
 
+  private static void writeNext(OkapiHeaders headers, Map<String, String> ids, Queue<Map.Entry<String, String>> queue,
+                                Future<Void> lane) {
+    Map.Entry<String, String> entry = queue.poll();
+    if (entry == null) {
+      lane.complete();
+      return;
+    }
+    writeEntry(headers, ids.get(entry.getKey()), entry.getKey(), entry.getValue()).setHandler(written -> {
+      if (written.failed()) {
+        lane.fail(written.cause());
+      } else {
+        writeNext(headers, ids, queue, lane);
+      }
+    });
+  }
 
   public static Future<Void> storeEntry(OkapiHeaders okapiHeaders, String code, String value) {
 
     Assert.hasText(code, "config entry CODE is mandatory");
 
-    if (Strings.isNullOrEmpty(okapiHeaders.getUrl())) {
-      return Future.failedFuture("Missing Okapi URL");
-    }
-    if (Strings.isNullOrEmpty(okapiHeaders.getTenant())) {
-      return Future.failedFuture("Missing Tenant");
-    }
-    if (Strings.isNullOrEmpty(okapiHeaders.getToken())) {
-      return Future.failedFuture("Missing Token");
+    String missingHeader = missingHeader(okapiHeaders);
+    if (missingHeader != null) {
+      return Future.failedFuture(missingHeader);
     }
 
 
+    Future<Void> result = Future.future();
+
+    // decide to POST or PUT
+    checkEntry(okapiHeaders, code).setHandler(checkHandler -> {
+      if (checkHandler.failed()) {
+        result.fail(checkHandler.cause());
+      } else {
+        writeEntry(okapiHeaders, checkHandler.result(), code, value).setHandler(written -> {
+          ConfigurationCache.Entry cached = cache.find(okapiHeaders.getTenant());
+          if (cached != null && written.succeeded()) {
+            cached.written(code, value);
+          } else if (cached != null) {
+            cache.remove(okapiHeaders.getTenant());
+          }
+          // probed again on the next check
+          SamlStatusIndex.getInstance().invalidate(okapiHeaders.getTenant());
+          result.handle(written);
+        });
+      }
+    });
+
+
+    return result;
+  }
+
+  /**
+   * POST a new entry if {@code configId} is null, PUT the existing one otherwise.
+   */
+  private static Future<Void> writeEntry(OkapiHeaders okapiHeaders, String configId, String code, String value) {
+
     Future<Void> result = Future.future();
 
     JsonObject requestBody = new JsonObject();
@@ -139,53 +312,38 @@ public class ConfigurationsClient {
       .put("code", code)
       .put("value", value);
 
-    // decide to POST or PUT
-    checkEntry(okapiHeaders, code).setHandler(checkHandler -> {
-      if (checkHandler.failed()) {
-        result.fail(checkHandler.cause());
-      } else {
-        String configId = checkHandler.result();
-
-        // not existing -> POST, existing->PUT
-        HttpMethod httpMethod = configId == null ? HttpMethod.POST : HttpMethod.PUT;
-        String endpoint = configId == null ? CONFIGURATIONS_ENTRIES_ENDPOINT_URL : CONFIGURATIONS_ENTRIES_ENDPOINT_URL + "/" + configId;
-
-        Map<String, String> headers = new HashMap<>();
-        headers.put(OkapiHeaders.OKAPI_TOKEN_HEADER, okapiHeaders.getToken());
-
-        try {
-          HttpClientInterface storeEntryClient = HttpClientFactory.getHttpClient(okapiHeaders.getUrl(), okapiHeaders.getTenant(), true);
-          storeEntryClient.setDefaultHeaders(headers);
-          storeEntryClient.request(httpMethod, requestBody, endpoint, null)
-            .whenComplete((storeEntryResponse, throwable) -> {
-
-              if (storeEntryResponse == null) {
-                if (throwable == null) {
-                  result.fail("Cannot " + httpMethod.toString() + " configuration entry");
-                } else {
-                  result.fail(throwable);
-                }
-              }
-              // POST->201 created, PUT->204 no content
-              else if ((httpMethod.equals(HttpMethod.POST) && storeEntryResponse.getCode() == 201)
-                || (httpMethod.equals(HttpMethod.PUT) && storeEntryResponse.getCode() == 204)) {
-
-                result.complete();
-              } else {
-                result.fail("The response status is not 'created',instead "
-                  + storeEntryResponse.getCode()
-                  + " with message  "
-                  + storeEntryResponse.getError());
-              }
-
-            });
-        } catch (Exception ex) {
-          result.fail(ex);
-        }
+    // not existing -> POST, existing->PUT
+    HttpMethod httpMethod = configId == null ? HttpMethod.POST : HttpMethod.PUT;
+    String endpoint = configId == null ? CONFIGURATIONS_ENTRIES_ENDPOINT_URL : CONFIGURATIONS_ENTRIES_ENDPOINT_URL + "/" + configId;
 
-      }
-    });
+    try {
+      HttpClientInterface storeEntryClient = OkapiClientPool.getClient(okapiHeaders);
+      storeEntryClient.request(httpMethod, requestBody, endpoint, OkapiClientPool.headers(okapiHeaders))
+        .whenComplete((storeEntryResponse, throwable) -> {
 
+          if (storeEntryResponse == null) {
+            if (throwable == null) {
+              result.fail("Cannot " + httpMethod.toString() + " configuration entry");
+            } else {
+              result.fail(throwable);
+            }
+          }
+          // POST->201 created, PUT->204 no content
+          else if ((httpMethod.equals(HttpMethod.POST) && storeEntryResponse.getCode() == 201)
+            || (httpMethod.equals(HttpMethod.PUT) && storeEntryResponse.getCode() == 204)) {
+
+            result.complete();
+          } else {
+            result.fail("The response status is not 'created',instead "
+              + storeEntryResponse.getCode()
+              + " with message  "
+              + storeEntryResponse.getError());
+          }
+
+        });
+    } catch (Exception ex) {
+      result.fail(ex);
+    }
 
     return result;
   }
@@ -196,25 +354,17 @@ public class ConfigurationsClient {
   public static Future<String> checkEntry(OkapiHeaders okapiHeaders, String code) {
     Future<String> result = Future.future();
 
-    if (Strings.isNullOrEmpty(okapiHeaders.getUrl())) {
-      return Future.failedFuture("Missing Okapi URL");
-    }
-    if (Strings.isNullOrEmpty(okapiHeaders.getTenant())) {
-      return Future.failedFuture("Missing Tenant");
-    }
-    if (Strings.isNullOrEmpty(okapiHeaders.getToken())) {
-      return Future.failedFuture("Missing Token");
+    String missingHeader = missingHeader(okapiHeaders);
+    if (missingHeader != null) {
+      return Future.failedFuture(missingHeader);
     }
 
     String query = "(module==" + MODULE_NAME + " AND configName==" + CONFIG_NAME + " AND code== " + code + ")";
     try {
       String encodedQuery = URLEncoder.encode(query, "UTF-8");
 
-      Map<String, String> headers = new HashMap<>();
-      headers.put(OkapiHeaders.OKAPI_TOKEN_HEADER, okapiHeaders.getToken());
-      HttpClientInterface checkEntryClient = HttpClientFactory.getHttpClient(okapiHeaders.getUrl(), okapiHeaders.getTenant(), true);
-      checkEntryClient.setDefaultHeaders(headers);
-      checkEntryClient.request(CONFIGURATIONS_ENTRIES_ENDPOINT_URL + "?query=" + encodedQuery)
+      HttpClientInterface checkEntryClient = OkapiClientPool.getClient(okapiHeaders);
+      checkEntryClient.request(CONFIGURATIONS_ENTRIES_ENDPOINT_URL + "?query=" + encodedQuery, OkapiClientPool.headers(okapiHeaders))
         .whenComplete((checkEntryResponse, throwable) -> {
           if (checkEntryResponse.getCode() != 200) {
             result.fail("Failed to check configuration entry: " + code
@@ -0,0 +1,459 @@
+package org.folio.config;
+
+import com.google.common.hash.HashCode;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.streams.Pump;
+import org.folio.config.model.IdpMetadata;
+import org.folio.util.ByteBufferInputStream;
+import org.folio.util.PropertyUtil;
+import org.folio.util.VertxUtils;
+import org.folio.util.XmlUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Process-wide cache of IdP metadata documents, keyed by URL. Tenants pointing at the same URL share one copy.
+ * <p>
+ * The lifetime of a document comes from its {@code cacheDuration} and {@code validUntil} attributes. Documents are
+ * revalidated with {@code If-None-Match}/{@code If-Modified-Since} ahead of expiry, in the background. Small documents
+ * are kept on the heap, large ones are streamed to a temporary file and memory-mapped.
+ */
+public class IdpMetadataCache {
+
+  private static final Logger log = LoggerFactory.getLogger(IdpMetadataCache.class);
+
+  public static final String DEFAULT_TTL_PROPERTY = "saml.metadata.defaultTtl";
+  public static final String MIN_TTL_PROPERTY = "saml.metadata.minTtl";
+  public static final String MAX_TTL_PROPERTY = "saml.metadata.maxTtl";
+  public static final String MAP_THRESHOLD_PROPERTY = "saml.metadata.mapThreshold";
+  public static final String CONNECT_TIMEOUT_PROPERTY = "saml.metadata.connectTimeout";
+  public static final String REQUEST_TIMEOUT_PROPERTY = "saml.metadata.requestTimeout";
+
+  private static final long MAINTENANCE_INTERVAL = 60000L;
+
+  private static final IdpMetadataCache instance = new IdpMetadataCache(
+    PropertyUtil.getLong(DEFAULT_TTL_PROPERTY, 3600000L),
+    PropertyUtil.getLong(MIN_TTL_PROPERTY, 60000L),
+    PropertyUtil.getLong(MAX_TTL_PROPERTY, 86400000L),
+    PropertyUtil.getLong(MAP_THRESHOLD_PROPERTY, 1048576L),
+    PropertyUtil.getInt(CONNECT_TIMEOUT_PROPERTY, 5000),
+    PropertyUtil.getLong(REQUEST_TIMEOUT_PROPERTY, 30000L),
+    "true".equals(System.getenv("TRUST_ALL_CERTIFICATES")));
+
+  private final ConcurrentMap<String, IdpMetadata> entries = new ConcurrentHashMap<>(); // key: URL
+  private final ConcurrentMap<String, CompletableFuture<IdpMetadata>> pendingFetches = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Long> lastRequested = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Vertx, HttpClient> clients = new ConcurrentHashMap<>();
+
+  private final long defaultTtl;
+  private final long minTtl;
+  private final long maxTtl;
+  private final long mapThreshold;
+  private final int connectTimeout;
+  private final long requestTimeout;
+  private final boolean trustAll;
+
+  /**
+   * @param trustAll accept any certificate and host name, for IdPs with self-signed certificates (the
+   *                 {@code TRUST_ALL_CERTIFICATES} hack, do not use in production)
+   */
+  IdpMetadataCache(long defaultTtl, long minTtl, long maxTtl, long mapThreshold, int connectTimeout, long requestTimeout,
+                   boolean trustAll) {
+    this.defaultTtl = defaultTtl;
+    this.minTtl = minTtl;
+    this.maxTtl = maxTtl;
+    this.mapThreshold = mapThreshold;
+    this.connectTimeout = connectTimeout;
+    this.requestTimeout = requestTimeout;
+    this.trustAll = trustAll;
+  }
+
+  public static IdpMetadataCache getInstance() {
+    return instance;
+  }
+
+  /**
+   * Revalidate used documents ahead of expiry, drop expired documents nobody asked for since they were fetched.
+   */
+  public void start(Vertx vertx) {
+    vertx.setPeriodic(MAINTENANCE_INTERVAL, timerId -> {
+      long now = System.currentTimeMillis();
+      entries.forEach((url, metadata) -> {
+        boolean used = lastRequested.getOrDefault(url, 0L) >= metadata.getFetchedAt();
+        if (used && now >= refreshAheadAt(metadata)) {
+          fetch(vertx, url, metadata);
+        } else if (!used && now >= metadata.getExpiresAt()) {
+          entries.remove(url, metadata);
+          lastRequested.remove(url);
+        }
+      });
+    });
+  }
+
+  /**
+   * @return Future of the metadata document at {@code url}, downloaded only if not cached or expired
+   */
+  public Future<IdpMetadata> get(Vertx vertx, String url) {
+
+    long now = System.currentTimeMillis();
+    lastRequested.put(url, now);
+
+    IdpMetadata cached = entries.get(url);
+    if (cached == null) {
+      return fetch(vertx, url, null);
+    }
+
+    if (now < cached.getExpiresAt()) {
+      if (now >= refreshAheadAt(cached)) {
+        fetch(vertx, url, cached); // in the background, keep serving the current copy
+      }
+      return Future.succeededFuture(cached);
+    }
+
+    Future<IdpMetadata> result = Future.future();
+    fetch(vertx, url, cached).setHandler(fetched -> {
+      if (fetched.succeeded()) {
+        result.complete(fetched.result());
+      } else if (now < cached.getValidUntil()) {
+        log.warn("Cannot revalidate IdP metadata " + url + ", using cached copy: " + fetched.cause().getMessage());
+        result.complete(cached);
+      } else {
+        result.fail(fetched.cause());
+      }
+    });
+    return result;
+  }
+
+  public void evict(String url) {
+    entries.remove(url);
+  }
+
+  private Future<IdpMetadata> fetch(Vertx vertx, String url, IdpMetadata previous) {
+
+    CompletableFuture<IdpMetadata> download = new CompletableFuture<>();
+    CompletableFuture<IdpMetadata> pending = pendingFetches.putIfAbsent(url, download);
+
+    if (pending == null) {
+      pending = download;
+      download(vertx, url, previous).setHandler(downloaded -> {
+        if (downloaded.succeeded()) {
+          entries.put(url, downloaded.result());
+        }
+        pendingFetches.remove(url, download);
+        if (downloaded.succeeded()) {
+          download.complete(downloaded.result());
+        } else {
+          download.completeExceptionally(downloaded.cause());
+        }
+      });
+    }
+
+    return VertxUtils.onCurrentContext(pending);
+  }
+
+  private Future<IdpMetadata> download(Vertx vertx, String url, IdpMetadata previous) {
+
+    Future<IdpMetadata> downloaded = Future.future();
+
+    HttpClientRequest request;
+    try {
+      request = client(vertx).getAbs(url);
+    } catch (Exception e) {
+      return Future.failedFuture(e);
+    }
+    request.setFollowRedirects(true);
+    if (requestTimeout > 0) {
+      request.setTimeout(requestTimeout); // fails if the IdP sends no data for this long
+    }
+    if (previous != null && StringUtils.hasText(previous.getEtag())) {
+      request.putHeader("If-None-Match", previous.getEtag());
+    }
+    if (previous != null && StringUtils.hasText(previous.getLastModified())) {
+      request.putHeader("If-Modified-Since", previous.getLastModified());
+    }
+
+    request.exceptionHandler(downloaded::tryFail);
+    request.handler(response -> {
+      long now = System.currentTimeMillis();
+      if (response.statusCode() == 304 && previous != null) {
+        log.debug("IdP metadata not modified: " + url);
+        Validity validity = new Validity(previous.getValidUntil(), previous.getCacheDuration());
+        downloaded.tryComplete(previous.revalidated(now, expiresAt(validity, now)));
+      } else if (response.statusCode() == 200) {
+        response.pause();
+        receive(vertx, url, response, now, downloaded);
+      } else {
+        downloaded.tryFail("Cannot download IdP metadata " + url + ", HTTP status " + response.statusCode());
+      }
+    });
+    request.end();
+
+    return downloaded;
+  }
+
+  /**
+   * One client per Vert.x instance, shared by all downloads. Downloads are rare, connections are not kept alive.
+   */
+  private HttpClient client(Vertx vertx) {
+    return clients.computeIfAbsent(vertx, key -> key.createHttpClient(new HttpClientOptions()
+      .setConnectTimeout(connectTimeout)
+      .setKeepAlive(false)
+      .setTrustAll(trustAll)
+      .setVerifyHost(!trustAll)));
+  }
+
+  /**
+   * Documents below the map threshold are kept on the heap. Larger ones, by {@code Content-Length} or once that many
+   * bytes arrived, are streamed into a temporary file and memory-mapped, the document is never buffered on the heap
+   * as a whole then.
+   */
+  private void receive(Vertx vertx, String url, HttpClientResponse response, long now, Future<IdpMetadata> result) {
+    long length = contentLength(response);
+    if (mapThreshold > 0 && length >= mapThreshold) {
+      spill(vertx, url, response, Buffer.buffer(), now, result);
+    } else {
+      buffer(vertx, url, response, Buffer.buffer(length > 0 ? (int) length : 4096), mapThreshold > 0, now, result);
+    }
+  }
+
+  /**
+   * Collects the body on the heap. With {@code spill} the body moves to a temporary file when it reaches the map
+   * threshold, e.g. a large aggregate sent without {@code Content-Length}.
+   */
+  private void buffer(Vertx vertx, String url, HttpClientResponse response, Buffer body, boolean spill, long now,
+                      Future<IdpMetadata> result) {
+
+    response.exceptionHandler(result::tryFail);
+    response.handler(chunk -> {
+      body.appendBuffer(chunk);
+      if (spill && body.length() >= mapThreshold) {
+        response.pause();
+        spill(vertx, url, response, body, now, result);
+      }
+    });
+    response.endHandler(end ->
+      vertx.executeBlocking((Future<IdpMetadata> blockingCode) -> {
+        try {
+          blockingCode.complete(toMetadata(url, ByteBuffer.wrap(body.getBytes()), response.getHeader("ETag"),
+            response.getHeader("Last-Modified"), now));
+        } catch (Exception e) {
+          blockingCode.fail(e);
+        }
+      }, false, stored -> complete(result, stored)));
+    response.resume();
+  }
+
+  /**
+   * Streams the rest of the body into a temporary file, after the part received so far. Stays on the heap if the file
+   * cannot be created, e.g. on a read-only file system.
+   */
+  private void spill(Vertx vertx, String url, HttpClientResponse response, Buffer head, long now,
+                     Future<IdpMetadata> result) {
+
+    vertx.executeBlocking((Future<Path> blockingCode) -> {
+      try {
+        blockingCode.complete(Files.createTempFile("idp-metadata-", ".xml"));
+      } catch (IOException e) {
+        blockingCode.fail(e);
+      }
+    }, false, created -> {
+      if (created.failed()) {
+        log.warn("Cannot create a temporary file for IdP metadata " + url + ", keeping it on the heap: "
+          + created.cause().getMessage());
+        buffer(vertx, url, response, head, false, now, result);
+        return;
+      }
+      Path file = created.result();
+      vertx.fileSystem().open(file.toString(), new OpenOptions().setWrite(true).setTruncateExisting(true), opened -> {
+        if (opened.failed()) {
+          delete(file);
+          log.warn("Cannot open a temporary file for IdP metadata " + url + ", keeping it on the heap: "
+            + opened.cause().getMessage());
+          buffer(vertx, url, response, head, false, now, result);
+          return;
+        }
+
+        AsyncFile asyncFile = opened.result();
+        AtomicBoolean closed = new AtomicBoolean();
+        asyncFile.write(head);
+        response.exceptionHandler(e -> {
+          if (closed.compareAndSet(false, true)) {
+            asyncFile.close(fileClosed -> delete(file));
+          }
+          result.tryFail(e);
+        });
+        response.endHandler(end -> {
+          if (!closed.compareAndSet(false, true)) {
+            return;
+          }
+          asyncFile.close(fileClosed -> {
+            if (fileClosed.failed()) {
+              delete(file);
+              result.tryFail(fileClosed.cause());
+              return;
+            }
+            // hashing and mapping a large aggregate takes a while
+            vertx.executeBlocking((Future<IdpMetadata> blockingCode) -> {
+              try {
+                blockingCode.complete(toMetadata(url, file, response.getHeader("ETag"), response.getHeader("Last-Modified"), now));
+              } catch (Exception e) {
+                blockingCode.fail(e);
+              } finally {
+                delete(file); // a mapping stays valid
+              }
+            }, false, stored -> complete(result, stored));
+          });
+        });
+        Pump.pump(response, asyncFile).start();
+        response.resume();
+      });
+    });
+  }
+
+  private static void complete(Future<IdpMetadata> result, AsyncResult<IdpMetadata> stored) {
+    if (stored.succeeded()) {
+      result.tryComplete(stored.result());
+    } else {
+      result.tryFail(stored.cause());
+    }
+  }
+
+  /**
+   * @return the {@code Content-Length} of the response, -1 if unknown
+   */
+  private static long contentLength(HttpClientResponse response) {
+    try {
+      return Long.parseLong(response.getHeader("Content-Length"));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private IdpMetadata toMetadata(String url, Path file, String etag, String lastModified, long now)
+    throws IOException, XMLStreamException, GeneralSecurityException {
+
+    long size = Files.size(file);
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("IdP metadata is too large: " + url);
+    }
+    ByteBuffer content;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (mapThreshold > 0 && size >= mapThreshold) {
+        content = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      } else {
+        content = ByteBuffer.allocate((int) size);
+        while (content.hasRemaining() && channel.read(content) >= 0) {
+          // read until full
+        }
+        content.flip();
+      }
+    }
+    return toMetadata(url, content, etag, lastModified, now);
+  }
+
+  private IdpMetadata toMetadata(String url, ByteBuffer content, String etag, String lastModified, long now)
+    throws IOException, XMLStreamException, GeneralSecurityException {
+
+    Validity validity = parseValidity(content);
+    if (validity.validUntil <= now) {
+      throw new IOException("IdP metadata has expired: " + url);
+    }
+    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    digest.update(content.duplicate());
+    String version = HashCode.fromBytes(digest.digest()).toString();
+    log.info("IdP metadata downloaded: " + url + " (" + content.remaining() + " bytes)");
+    return new IdpMetadata(url, content, version, etag, lastModified, now, expiresAt(validity, now),
+      validity.cacheDuration, validity.validUntil);
+  }
+
+  private static void delete(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      file.toFile().deleteOnExit();
+    }
+  }
+
+  long expiresAt(Validity validity, long now) {
+    long ttl = validity.cacheDuration > 0 ? validity.cacheDuration : defaultTtl;
+    ttl = Math.max(minTtl, Math.min(maxTtl, ttl));
+    return Math.min(now + ttl, validity.validUntil);
+  }
+
+  private static long refreshAheadAt(IdpMetadata metadata) {
+    return metadata.getFetchedAt() + (metadata.getExpiresAt() - metadata.getFetchedAt()) * 3 / 4;
+  }
+
+  /**
+   * Reads {@code validUntil} and {@code cacheDuration} of the root element, without parsing the rest.
+   */
+  static Validity parseValidity(byte[] content) throws XMLStreamException {
+    return parseValidity(ByteBuffer.wrap(content));
+  }
+
+  static Validity parseValidity(ByteBuffer content) throws XMLStreamException {
+    XMLStreamReader reader = XmlUtil.getInputFactory().createXMLStreamReader(new ByteBufferInputStream(content));
+    try {
+      while (reader.hasNext()) {
+        if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+          Validity validity = new Validity();
+          DatatypeFactory datatypeFactory = XmlUtil.getDatatypeFactory();
+          String validUntil = reader.getAttributeValue(null, "validUntil");
+          if (StringUtils.hasText(validUntil)) {
+            validity.validUntil = datatypeFactory.newXMLGregorianCalendar(validUntil.trim())
+              .toGregorianCalendar().getTimeInMillis();
+          }
+          String cacheDuration = reader.getAttributeValue(null, "cacheDuration");
+          if (StringUtils.hasText(cacheDuration)) {
+            validity.cacheDuration = datatypeFactory.newDuration(cacheDuration.trim()).getTimeInMillis(new Date());
+          }
+          return validity;
+        }
+      }
+      throw new XMLStreamException("IdP metadata has no root element");
+    } finally {
+      reader.close();
+    }
+  }
+
+  static class Validity {
+    long validUntil = Long.MAX_VALUE;
+    long cacheDuration;
+
+    Validity() {
+    }
+
+    Validity(long validUntil, long cacheDuration) {
+      this.validUntil = validUntil;
+      this.cacheDuration = cacheDuration;
+    }
+  }
+}
@@ -1,9 +1,11 @@
 package org.folio.config;
 
 import io.vertx.core.json.Json;
-import net.shibboleth.utilities.java.support.codec.Base64Support;
 import net.shibboleth.utilities.java.support.xml.SerializeSupport;
 import org.folio.rest.jaxrs.model.SamlLogin;
+import org.folio.util.PropertyUtil;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.core.xml.util.XMLObjectSupport;
 import org.opensaml.saml.common.xml.SAMLConstants;
@@ -18,8 +20,15 @@ import org.pac4j.saml.client.SAML2ClientConfiguration;
 import org.pac4j.saml.context.SAML2MessageContext;
 import org.pac4j.saml.sso.impl.SAML2AuthnRequestBuilder;
 import org.pac4j.saml.transport.Pac4jSAMLResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
 
 /**
  * Builds a {@link RedirectAction} that contains a JSON-serialized {@link SamlLogin} object instead of
@@ -29,8 +38,23 @@ import java.nio.charset.StandardCharsets;
  */
 public class JsonReponseSaml2RedirectActionBuilder implements RedirectActionBuilder {
 
+  private static final Logger log = LoggerFactory.getLogger(JsonReponseSaml2RedirectActionBuilder.class);
+
+  public static final String TEMPLATE_ENABLED_PROPERTY = "saml.authn.template.enabled";
+
+  private static final String TEMPLATE_ID = "_authn-request-template-id";
+  private static final Instant TEMPLATE_INSTANT = Instant.parse("2000-01-01T00:00:00Z");
+
+  private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+  private static final ThreadLocal<SerializationBuffer> buffers = ThreadLocal.withInitial(SerializationBuffer::new);
+
   private final SAML2Client client;
   private final SAML2AuthnRequestBuilder saml2ObjectBuilder;
+  private final boolean templateEnabled;
+
+  // compiled on the first login, the client is rebuilt when its configuration or the IdP metadata change
+  private volatile AuthnRequestTemplate template;
+  private volatile boolean templateCompiled;
 
   public JsonReponseSaml2RedirectActionBuilder(final SAML2Client client) {
     CommonHelper.assertNotNull("client", client);
@@ -39,14 +63,46 @@ public class JsonReponseSaml2RedirectActionBuilder implements RedirectActionBuil
     this.saml2ObjectBuilder = new SAML2AuthnRequestBuilder(cfg.isForceAuth(),
       cfg.getComparisonType(), cfg.getDestinationBindingType(), cfg.getAuthnContextClassRef(),
       cfg.getNameIdPolicyFormat());
+    this.templateEnabled = PropertyUtil.getBoolean(TEMPLATE_ENABLED_PROPERTY, false);
+  }
+
+  /**
+   * Serializes the request into a per-thread buffer and base64 encodes it, without String copies of the XML. The
+   * request was marshalled and signed by the send, its DOM is reused: marshalling again would break the signature.
+   */
+  static String encode(AuthnRequest authnRequest) throws MarshallingException {
+    Element dom = authnRequest.getDOM() != null ? authnRequest.getDOM() : XMLObjectSupport.marshall(authnRequest);
+
+    SerializationBuffer buffer = buffers.get();
+    buffer.reset();
+    try {
+      SerializeSupport.writeNode(dom, buffer);
+      return StandardCharsets.ISO_8859_1.decode(Base64.getEncoder().encode(buffer.asByteBuffer())).toString();
+    } finally {
+      if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+        buffers.remove();
+      }
+    }
   }
 
   @Override
   public RedirectAction redirect(WebContext webContext) throws HttpAction {
 
+    AuthnRequestTemplate compiledTemplate = this.template;
+    if (compiledTemplate != null) {
+      return fromTemplate(compiledTemplate, this.client.getStateParameter(webContext));
+    }
+
     final SAML2MessageContext context = this.client.getContextProvider().buildContext(webContext);
     final String relayState = this.client.getStateParameter(webContext);
 
+    if (templateEnabled && !templateCompiled) {
+      compiledTemplate = compileTemplate(context);
+      if (compiledTemplate != null) {
+        return fromTemplate(compiledTemplate, relayState);
+      }
+    }
+
     final AuthnRequest authnRequest = this.saml2ObjectBuilder.build(context);
     String destination = authnRequest.getDestination();
 
@@ -57,10 +113,9 @@ public class JsonReponseSaml2RedirectActionBuilder implements RedirectActionBuil
 
 
       SamlLogin samlLogin = new SamlLogin();
-      if (this.client.getConfiguration().getDestinationBindingType().equalsIgnoreCase(SAMLConstants.SAML2_POST_BINDING_URI)) {
+      if (isPostBinding()) {
 
-        String authnResuestAsString = SerializeSupport.nodeToString(XMLObjectSupport.marshall(authnRequest));
-        String b64authnRequest = Base64Support.encode(authnResuestAsString.getBytes(StandardCharsets.UTF_8), Base64Support.UNCHUNKED);
+        String b64authnRequest = encode(authnRequest);
 
         samlLogin.setBindingMethod(SamlLogin.BindingMethod.POST);
         samlLogin.setLocation(destination);
@@ -82,4 +137,67 @@ public class JsonReponseSaml2RedirectActionBuilder implements RedirectActionBuil
 
   }
 
+  /**
+   * Only unsigned requests can be rendered from a template: the signature covers the ID and the IssueInstant.
+   */
+  private AuthnRequestTemplate compileTemplate(SAML2MessageContext context) {
+    templateCompiled = true;
+
+    boolean signed = Boolean.TRUE.equals(context.getSPSSODescriptor().isAuthnRequestsSigned())
+      || Boolean.TRUE.equals(context.getIDPSSODescriptor().getWantAuthnRequestsSigned());
+    if (signed) {
+      log.info("AuthnRequests of " + client.getName() + " are signed, not using a template");
+      return null;
+    }
+
+    try {
+      AuthnRequest prototype = this.saml2ObjectBuilder.build(context);
+      prototype.setID(TEMPLATE_ID);
+      prototype.setIssueInstant(new DateTime(TEMPLATE_INSTANT.toEpochMilli(), DateTimeZone.UTC));
+      String xml = SerializeSupport.nodeToString(XMLObjectSupport.marshall(prototype));
+
+      template = AuthnRequestTemplate.compile(xml, TEMPLATE_ID, TEMPLATE_INSTANT, prototype.getDestination());
+      log.info("AuthnRequest template of " + client.getName() + " compiled");
+      return template;
+    } catch (MarshallingException | RuntimeException e) {
+      log.warn("Cannot compile the AuthnRequest template of " + client.getName() + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  private RedirectAction fromTemplate(AuthnRequestTemplate compiledTemplate, String relayState) {
+    String id = AuthnRequestTemplate.newId();
+    Instant issueInstant = Instant.now();
+
+    SamlLogin samlLogin = new SamlLogin();
+    if (isPostBinding()) {
+      samlLogin.setBindingMethod(SamlLogin.BindingMethod.POST);
+      samlLogin.setLocation(compiledTemplate.getDestination());
+      samlLogin.setSamlRequest(compiledTemplate.encodePost(id, issueInstant));
+      samlLogin.setRelayState(relayState);
+    } else {
+      samlLogin.setBindingMethod(SamlLogin.BindingMethod.GET);
+      samlLogin.setLocation(compiledTemplate.redirectUrl(id, issueInstant, relayState));
+    }
+    return RedirectAction.success(Json.encode(samlLogin));
+  }
+
+  private boolean isPostBinding() {
+    return this.client.getConfiguration().getDestinationBindingType().equalsIgnoreCase(SAMLConstants.SAML2_POST_BINDING_URI);
+  }
+
+  private static class SerializationBuffer extends ByteArrayOutputStream {
+
+    SerializationBuffer() {
+      super(8192);
+    }
+
+    ByteBuffer asByteBuffer() {
+      return ByteBuffer.wrap(buf, 0, count);
+    }
+
+    int capacity() {
+      return buf.length;
+    }
+  }
 }
@@ -1,30 +1,33 @@
 package org.folio.config;
 
 import com.google.common.base.Strings;
-import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
-import io.vertx.core.buffer.Buffer;
 import io.vertx.ext.web.RoutingContext;
 import org.apache.commons.lang3.RandomStringUtils;
+import org.folio.config.model.CachingSaml2Client;
 import org.folio.config.model.SAML2ClientMock;
 import org.folio.config.model.SamlClientComposite;
 import org.folio.config.model.SamlConfiguration;
 import org.folio.rest.tools.client.test.HttpClientMock2;
+import org.folio.util.KeyPairPool;
+import org.folio.util.KeyStoreGenerator;
 import org.folio.util.OkapiHelper;
-import org.folio.util.VertxUtils;
 import org.folio.util.model.OkapiHeaders;
 import org.opensaml.saml.common.xml.SAMLConstants;
 import org.pac4j.core.util.CommonHelper;
 import org.pac4j.saml.client.SAML2Client;
 import org.pac4j.saml.client.SAML2ClientConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.core.io.ByteArrayResource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.core.io.Resource;
 import org.springframework.util.StringUtils;
 
-import java.net.MalformedURLException;
-import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
 import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Load Pac4j {@link SAML2Client} from configuration
@@ -33,6 +36,8 @@ import java.util.Base64;
  */
 public class SamlClientLoader {
 
+  private static final Logger log = LoggerFactory.getLogger(SamlClientLoader.class);
+
   public static final String CALLBACK_ENDPOINT = "/saml/callback";
 
   public static Future<SamlClientComposite> loadFromConfiguration(RoutingContext routingContext, boolean generateMissingKeyStore) {
@@ -51,8 +56,6 @@ public class SamlClientLoader {
         final String keystore = samlConfiguration.getKeystore();
         final String keystorePassword = samlConfiguration.getKeystorePassword();
         final String privateKeyPassword = samlConfiguration.getPrivateKeyPassword();
-        final String samlBinding = samlConfiguration.getSamlBinding();
-        final String okapiUrl = samlConfiguration.getOkapiUrl();
 
         final Vertx vertx = routingContext.vertx();
 
@@ -66,66 +69,21 @@ public class SamlClientLoader {
               // Generate new KeyStore
 
               final String randomId = RandomStringUtils.randomAlphanumeric(12);
-              final String randomFileName = RandomStringUtils.randomAlphanumeric(12);
 
               final String actualKeystorePassword = Strings.isNullOrEmpty(keystorePassword) ? randomId : keystorePassword;
               final String actualPrivateKeyPassword = Strings.isNullOrEmpty(privateKeyPassword) ? randomId : privateKeyPassword;
-              final String keystoreFileName = "temp_" + randomFileName + ".jks";
-
-              SAML2Client saml2Client = configureSaml2Client(okapiUrl, tenantId, idpUrl, actualKeystorePassword, actualPrivateKeyPassword, keystoreFileName, samlBinding);
-
-              vertx.executeBlocking(blockingHandler -> {
-                  saml2Client.init(VertxUtils.createWebContext(routingContext));
-                  blockingHandler.complete();
-                },
-                samlClientInitHandler -> {
-                  if (samlClientInitHandler.failed()) {
-                    clientInstantiationFuture.fail(samlClientInitHandler.cause());
-                  } else {
-                    storeKeystore(okapiHeaders, vertx, keystoreFileName, actualKeystorePassword, actualPrivateKeyPassword).setHandler(keyfileStorageHandler -> {
-                      if (keyfileStorageHandler.succeeded()) {
-                        // storeKeystore is deleting JKS file, recreate client from byteArray
-                        Buffer keystoreBytes = keyfileStorageHandler.result();
-                        ByteArrayResource keystoreResource = new ByteArrayResource(keystoreBytes.getBytes());
-                        try {
-                          UrlResource idpUrlResource = new UrlResource(idpUrl);
-                          SAML2Client reinitedSaml2Client = configureSaml2Client(okapiUrl, tenantId, actualKeystorePassword, actualPrivateKeyPassword, idpUrlResource, keystoreResource, samlBinding);
-
-                          clientInstantiationFuture.complete(new SamlClientComposite(reinitedSaml2Client, samlConfiguration));
-                        } catch (MalformedURLException e) {
-                          clientInstantiationFuture.fail(e);
-                        }
-                      } else {
-                        clientInstantiationFuture.fail(keyfileStorageHandler.cause());
-                      }
-                    });
-                  }
-                });
+
+              generateKeystore(vertx, tenantId, actualKeystorePassword, actualPrivateKeyPassword)
+                .compose(keystoreBytes -> storeKeystore(okapiHeaders, keystoreBytes, actualKeystorePassword, actualPrivateKeyPassword))
+                // the client is built from the stored configuration, with the generated KeyStore
+                .compose(storedConfiguration -> buildClient(vertx, tenantId, storedConfiguration))
+                .setHandler(clientInstantiationFuture.completer());
             } else {
               clientInstantiationFuture.fail("No KeyStore stored in configuration and regeneration is not allowed.");
             }
           } else {
             // Load KeyStore from configuration
-
-            vertx.executeBlocking((Future<Buffer> blockingCode) -> {
-              blockingCode.complete(Buffer.buffer(Base64.getDecoder().decode(keystore)));
-            }, resultHandler -> {
-              if (resultHandler.failed()) {
-                clientInstantiationFuture.fail(resultHandler.cause());
-              } else {
-                Buffer keystoreBytes = resultHandler.result();
-                ByteArrayResource keystoreResource = new ByteArrayResource(keystoreBytes.getBytes());
-                try {
-                  UrlResource idpUrlResource = new UrlResource(idpUrl);
-                  SAML2Client saml2Client = configureSaml2Client(okapiUrl, tenantId, keystorePassword, privateKeyPassword, idpUrlResource, keystoreResource, samlBinding);
-
-                  clientInstantiationFuture.complete(new SamlClientComposite(saml2Client, samlConfiguration));
-                } catch (MalformedURLException e) {
-                  clientInstantiationFuture.fail(e);
-                }
-
-              }
-            });
+            buildClient(vertx, tenantId, samlConfiguration).setHandler(clientInstantiationFuture.completer());
           }
         }
 
@@ -138,78 +96,107 @@ public class SamlClientLoader {
 
 
   /**
-   * Store KeyStore (as Base64 string), KeyStorePassword and PrivateKeyPassword in mod-configuration,
-   * complete returned future with original file bytes.
+   * Load client of a tenant outside of a request, e.g. at startup. Does not generate a missing KeyStore.
    */
-  private static Future<Buffer> storeKeystore(OkapiHeaders okapiHeaders, Vertx vertx, String keystoreFileName, String keystorePassword, String privateKeyPassword) {
-
-
-    Future<Buffer> future = Future.future();
-
-    // read generated jks file
-    vertx.fileSystem().readFile(keystoreFileName, fileResult -> {
-      if (fileResult.failed()) {
-        future.fail(fileResult.cause());
-      } else {
-        final byte[] rawBytes = fileResult.result().getBytes();
-
-        // base64 encode
-        vertx.executeBlocking((Future<Buffer> blockingFuture) -> {
-          Buffer encodedBytes = Buffer.buffer(Base64.getEncoder().encode(rawBytes));
-          blockingFuture.complete(encodedBytes);
-        }, resultHandler -> {
-          Buffer encodedBytes = resultHandler.result();
-
-          // store in mod-configuration with passwords, wait for all operations to finish
-          CompositeFuture.all(
-            ConfigurationsClient.storeEntry(okapiHeaders, SamlConfiguration.KEYSTORE_FILE_CODE, encodedBytes.toString(StandardCharsets.UTF_8)),
-            ConfigurationsClient.storeEntry(okapiHeaders, SamlConfiguration.KEYSTORE_PASSWORD_CODE, keystorePassword),
-            ConfigurationsClient.storeEntry(okapiHeaders, SamlConfiguration.KEYSTORE_PRIVATEKEY_PASSWORD_CODE, privateKeyPassword),
-            ConfigurationsClient.storeEntry(okapiHeaders, SamlConfiguration.METADATA_INVALIDATED_CODE, "true") // if keystore modified, current metasata is invalid.
-          ).setHandler(allConfigurationsStoredHandler -> {
-
-            if (allConfigurationsStoredHandler.failed()) {
-              vertx.fileSystem().delete(keystoreFileName, deleteResult ->
-                // it is already a failed operation, deleteResult is not important
-                future.fail(allConfigurationsStoredHandler.cause())
-              );
-            } else {
-              // delete the file
-              vertx.fileSystem().delete(keystoreFileName, deleteResult -> {
-                if (deleteResult.failed()) {
-                  future.fail(deleteResult.cause());
-                } else {
-                  future.complete(Buffer.buffer(rawBytes));
-                }
-              });
-            }
-          });
-        });
-      }
-    });
+  public static Future<SamlClientComposite> loadFromConfiguration(Vertx vertx, OkapiHeaders okapiHeaders) {
+    return ConfigurationsClient.getConfiguration(okapiHeaders)
+      .compose(samlConfiguration -> buildClient(vertx, okapiHeaders.getTenant(), samlConfiguration));
+  }
 
-    return future;
+  /**
+   * Build client of a tenant whose KeyStore is already stored in configuration. Does not generate anything.
+   * <p>
+   * The IdP metadata is downloaded asynchronously, the client is created and initialized on a worker thread, so
+   * pac4j does not initialize it lazily (parsing metadata and keys) on the event loop of the first request.
+   */
+  public static Future<SamlClientComposite> buildClient(Vertx vertx, String tenantId, SamlConfiguration samlConfiguration) {
+
+    final String idpUrl = samlConfiguration.getIdpUrl();
+    final String keystore = samlConfiguration.getKeystore();
+
+    if (Strings.isNullOrEmpty(idpUrl)) {
+      return Future.failedFuture("There is no IdP configuration stored!");
+    }
+    if (Strings.isNullOrEmpty(keystore)) {
+      return Future.failedFuture("No KeyStore stored in configuration.");
+    }
+
+    return IdpMetadataCache.getInstance().get(vertx, idpUrl).compose(idpMetadata -> {
+
+      Future<SamlClientComposite> result = Future.future();
 
+      vertx.executeBlocking((Future<SAML2Client> blockingCode) -> {
+        try {
+          ByteArrayResource keystoreResource = new ByteArrayResource(Base64.getDecoder().decode(keystore));
+          // only the configured IdP of an aggregate is parsed by the client
+          Resource idpMetadataResource = idpMetadata.toResource(samlConfiguration.getIdpEntityId());
+
+          SAML2Client saml2Client = configureSaml2Client(samlConfiguration.getOkapiUrl(), tenantId,
+            samlConfiguration.getKeystorePassword(), samlConfiguration.getPrivateKeyPassword(),
+            idpMetadataResource, samlConfiguration.getIdpEntityId(), keystoreResource, samlConfiguration.getSamlBinding());
+          // the callback URL is absolute, initialization does not need the request
+          saml2Client.init(null);
+
+          blockingCode.complete(saml2Client);
+        } catch (Exception e) {
+          blockingCode.fail(e);
+        }
+      }, false, clientResult -> {
+        if (clientResult.failed()) {
+          log.warn("Cannot build SAML client of tenant " + tenantId + ": " + clientResult.cause().getMessage());
+          result.fail(clientResult.cause());
+        } else {
+          result.complete(new SamlClientComposite(clientResult.result(), samlConfiguration, idpMetadata.getVersion()));
+        }
+      });
+
+      return result;
+    });
   }
 
 
-  private static SAML2Client configureSaml2Client(String okapiUrl, String tenantId, String idpUrl, String keystorePassword, String actualPrivateKeyPassword, String keystoreFileName, String samlBinding) {
-    final SAML2ClientConfiguration cfg = new SAML2ClientConfiguration(keystoreFileName,
-      keystorePassword,
-      actualPrivateKeyPassword,
-      idpUrl);
-    cfg.setMaximumAuthenticationLifetime(18000);
+  /**
+   * Generate KeyStore in memory, on a worker thread, with a key pair of the pool.
+   */
+  private static Future<byte[]> generateKeystore(Vertx vertx, String tenantId, String keystorePassword, String privateKeyPassword) {
+    Future<byte[]> future = Future.future();
+    vertx.executeBlocking((Future<byte[]> blockingFuture) -> {
+      try {
+        KeyPair keyPair = KeyPairPool.getInstance().take();
+        blockingFuture.complete(KeyStoreGenerator.generateKeyStore(keyPair, tenantId, keystorePassword, privateKeyPassword));
+      } catch (Exception e) {
+        blockingFuture.fail(e);
+      }
+    }, false, future.completer());
+    return future;
+  }
 
-    return assembleSaml2Client(okapiUrl, tenantId, cfg, samlBinding);
+  /**
+   * Store KeyStore (as Base64 string), KeyStorePassword and PrivateKeyPassword in mod-configuration,
+   * complete returned future with the stored configuration.
+   */
+  private static Future<SamlConfiguration> storeKeystore(OkapiHeaders okapiHeaders, byte[] keystore, String keystorePassword, String privateKeyPassword) {
+
+    // store in mod-configuration with passwords, wait for all operations to finish
+    Map<String, String> entries = new LinkedHashMap<>();
+    entries.put(SamlConfiguration.KEYSTORE_FILE_CODE, Base64.getEncoder().encodeToString(keystore));
+    entries.put(SamlConfiguration.KEYSTORE_PASSWORD_CODE, keystorePassword);
+    entries.put(SamlConfiguration.KEYSTORE_PRIVATEKEY_PASSWORD_CODE, privateKeyPassword);
+    entries.put(SamlConfiguration.METADATA_INVALIDATED_CODE, "true"); // if keystore modified, current metasata is invalid.
+    return ConfigurationsClient.storeEntries(okapiHeaders, entries);
   }
 
-  private static SAML2Client configureSaml2Client(String okapiUrl, String tenantId, String keystorePassword, String privateKeyPassword, UrlResource idpUrlResource, ByteArrayResource keystoreResource, String samlBinding) {
+
+  private static SAML2Client configureSaml2Client(String okapiUrl, String tenantId, String keystorePassword, String privateKeyPassword, Resource idpUrlResource, String idpEntityId, ByteArrayResource keystoreResource, String samlBinding) {
 
     final SAML2ClientConfiguration byteArrayCfg = new SAML2ClientConfiguration(keystoreResource,
       keystorePassword,
       privateKeyPassword,
       idpUrlResource);
     byteArrayCfg.setMaximumAuthenticationLifetime(18000);
+    if (StringUtils.hasText(idpEntityId)) {
+      byteArrayCfg.setIdentityProviderEntityId(idpEntityId);
+    }
 
     return assembleSaml2Client(okapiUrl, tenantId, byteArrayCfg, samlBinding);
   }
@@ -225,7 +212,7 @@ public class SamlClientLoader {
       cfg.setDestinationBindingType(SAMLConstants.SAML2_POST_BINDING_URI);
     }
 
-    SAML2Client saml2Client = mock ? new SAML2ClientMock(cfg) : new SAML2Client(cfg);
+    SAML2Client saml2Client = mock ? new SAML2ClientMock(cfg) : new CachingSaml2Client(cfg);
     saml2Client.setName(tenantId);
     saml2Client.setIncludeClientNameInCallbackUrl(false);
     saml2Client.setCallbackUrl(buildCallbackUrl(okapiUrl, tenantId));
@@ -0,0 +1,178 @@
+package org.folio.config;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.HttpRequest;
+import io.vertx.ext.web.client.WebClient;
+import org.folio.config.model.SamlClientComposite;
+import org.folio.util.PropertyUtil;
+import org.folio.util.model.OkapiHeaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Optional startup phase: builds the clients of the configured (or discovered) tenants, so the first logins after
+ * a deploy do not pay for configuration loading and client setup.
+ */
+public class SamlClientPrewarmer {
+
+  private static final Logger log = LoggerFactory.getLogger(SamlClientPrewarmer.class);
+
+  public static final String TENANTS_PROPERTY = "saml.warmup.tenants";
+  public static final String DISCOVER_PROPERTY = "saml.warmup.discover";
+  public static final String PARALLELISM_PROPERTY = "saml.warmup.parallelism";
+  public static final String TIMEOUT_PROPERTY = "saml.warmup.timeout";
+
+  private static final String SUPERTENANT = "supertenant";
+  private static final String TENANTS_ENDPOINT = "/_/proxy/tenants";
+
+  private final Vertx vertx;
+  private final SamlConfigHolder configHolder;
+  private final Function<OkapiHeaders, Future<SamlClientComposite>> loader;
+
+  public SamlClientPrewarmer(Vertx vertx, SamlConfigHolder configHolder) {
+    this(vertx, configHolder, okapiHeaders -> SamlClientLoader.loadFromConfiguration(vertx, okapiHeaders));
+  }
+
+  SamlClientPrewarmer(Vertx vertx, SamlConfigHolder configHolder,
+                      Function<OkapiHeaders, Future<SamlClientComposite>> loader) {
+    this.vertx = vertx;
+    this.configHolder = configHolder;
+    this.loader = loader;
+  }
+
+  /**
+   * @return Future completed when every tenant is warmed up or the time budget ran out; never fails
+   */
+  public Future<Void> warmUp() {
+
+    String okapiUrl = SamlConfigHolder.moduleOkapiUrl();
+    List<String> configuredTenants = parseTenants(PropertyUtil.getString(TENANTS_PROPERTY, ""));
+    boolean discover = PropertyUtil.getBoolean(DISCOVER_PROPERTY, false);
+
+    if (!StringUtils.hasText(okapiUrl) || (configuredTenants.isEmpty() && !discover)) {
+      return Future.succeededFuture();
+    }
+
+    Future<Void> ready = Future.future();
+    long timeout = PropertyUtil.getLong(TIMEOUT_PROPERTY, 30000);
+    long timerId = vertx.setTimer(timeout, id -> {
+      if (ready.tryComplete()) {
+        log.warn("SAML client warm-up did not finish in " + timeout + " ms, continuing in the background");
+      }
+    });
+
+    Future<List<String>> tenants = configuredTenants.isEmpty() ? discoverTenants(okapiUrl) : Future.succeededFuture(configuredTenants);
+    tenants.compose(tenantIds -> warmUp(okapiUrl, tenantIds))
+      .setHandler(warmedUp -> {
+        vertx.cancelTimer(timerId);
+        if (warmedUp.failed()) {
+          log.warn("SAML client warm-up failed: " + warmedUp.cause().getMessage());
+        }
+        ready.tryComplete();
+      });
+
+    return ready;
+  }
+
+  private Future<Void> warmUp(String okapiUrl, List<String> tenantIds) {
+
+    Queue<String> queue = new ConcurrentLinkedQueue<>(tenantIds);
+    int parallelism = Math.max(1, Math.min(tenantIds.size(), PropertyUtil.getInt(PARALLELISM_PROPERTY, 4)));
+    AtomicInteger loaded = new AtomicInteger();
+
+    log.info("Warming up SAML clients of " + tenantIds.size() + " tenants");
+    long start = System.currentTimeMillis();
+
+    List<Future> lanes = new ArrayList<>();
+    for (int i = 0; i < parallelism; i++) {
+      Future<Void> lane = Future.future();
+      warmUpNext(okapiUrl, queue, loaded, lane);
+      lanes.add(lane);
+    }
+
+    Future<Void> result = Future.future();
+    CompositeFuture.all(lanes).setHandler(all -> {
+      log.info("Warmed up " + loaded.get() + " of " + tenantIds.size() + " SAML clients in "
+        + (System.currentTimeMillis() - start) + " ms");
+      result.complete();
+    });
+    return result;
+  }
+
+  private void warmUpNext(String okapiUrl, Queue<String> queue, AtomicInteger loaded, Future<Void> lane) {
+    String tenantId = queue.poll();
+    if (tenantId == null) {
+      lane.complete();
+      return;
+    }
+
+    OkapiHeaders okapiHeaders = new OkapiHeaders();
+    okapiHeaders.setUrl(okapiUrl);
+    okapiHeaders.setTenant(tenantId);
+    okapiHeaders.setToken(SamlConfigHolder.moduleToken(tenantId));
+    configHolder.putOkapiUrl(tenantId, okapiUrl);
+
+    configHolder.findOrLoadClient(tenantId, false, () -> loader.apply(okapiHeaders))
+      .setHandler(clientResult -> {
+        if (clientResult.succeeded()) {
+          loaded.incrementAndGet();
+        } else {
+          log.debug("No SAML client for tenant " + tenantId + ": " + clientResult.cause().getMessage());
+        }
+        warmUpNext(okapiUrl, queue, loaded, lane);
+      });
+  }
+
+  private Future<List<String>> discoverTenants(String okapiUrl) {
+    Future<List<String>> result = Future.future();
+
+    WebClient client = WebClient.create(vertx);
+    String token = SamlConfigHolder.moduleToken(SUPERTENANT);
+    HttpRequest<Buffer> request = client.getAbs(okapiUrl + TENANTS_ENDPOINT)
+      .putHeader(OkapiHeaders.OKAPI_TENANT_HEADER, SUPERTENANT);
+    if (StringUtils.hasText(token)) {
+      request.putHeader(OkapiHeaders.OKAPI_TOKEN_HEADER, token);
+    }
+
+    request.send(response -> {
+      client.close();
+      if (response.failed()) {
+        result.fail(response.cause());
+      } else if (response.result().statusCode() != 200) {
+        result.fail("Cannot list tenants, HTTP status " + response.result().statusCode());
+      } else {
+        JsonArray tenants = response.result().bodyAsJsonArray();
+        result.complete(tenants.stream()
+          .filter(JsonObject.class::isInstance)
+          .map(tenant -> ((JsonObject) tenant).getString("id"))
+          .filter(tenantId -> StringUtils.hasText(tenantId) && !SUPERTENANT.equals(tenantId))
+          .collect(Collectors.toList()));
+      }
+    });
+
+    return result;
+  }
+
+  static List<String> parseTenants(String tenants) {
+    return Arrays.stream(tenants.split(","))
+      .map(String::trim)
+      .filter(StringUtils::hasText)
+      .distinct()
+      .collect(Collectors.toList());
+  }
+}
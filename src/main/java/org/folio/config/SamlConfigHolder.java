@@ -1,36 +1,82 @@
 package org.folio.config;
 
+import io.vertx.core.Future;
 import org.folio.config.model.SamlClientComposite;
+import org.folio.util.PropertyUtil;
+import org.folio.util.VertxUtils;
+import org.folio.util.model.OkapiHeaders;
 import org.pac4j.core.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
 
 /**
  * Singleton for holding Pac4j {@link Config}
+ * <p>
+ * Thread-safe: at most one load per tenant is in flight, concurrent callers wait for the same result.
+ * Failed loads are remembered for a short time, see {@link #FAILED_LOAD_TTL_PROPERTY} (milliseconds).
+ * <p>
+ * Background jobs call other modules with the module's own credentials ({@link #MODULE_TOKEN_PROPERTY}), never with
+ * the token of a user request: only the Okapi URL of the tenant's requests is remembered.
  *
  * @author rsass
  */
 public class SamlConfigHolder {
 
-  private static SamlConfigHolder instance;
-  private Map<String, SamlClientComposite> config; // key: tenantId
+  private static final Logger log = LoggerFactory.getLogger(SamlConfigHolder.class);
+
+  public static final String FAILED_LOAD_TTL_PROPERTY = "saml.client.failedLoadTtl";
+  public static final String MODULE_OKAPI_URL_PROPERTY = "saml.module.okapiUrl";
+  public static final String MODULE_TOKEN_PROPERTY = "saml.module.token";
+  private static final long DEFAULT_FAILED_LOAD_TTL = 5000L;
+
+  private static final SamlConfigHolder instance = new SamlConfigHolder();
+
+  private final TenantClientCache config; // key: tenantId
+  private final ConcurrentMap<String, CompletableFuture<SamlClientComposite>> pendingLoads;
+  private final ConcurrentMap<String, FailedLoad> failedLoads;
+  private final ConcurrentMap<String, String> okapiUrls; // last seen Okapi URL, for background work
+  private final long failedLoadTtl;
 
   private SamlConfigHolder() {
     // new empty client list
-    this.config = new HashMap<>();
+    this.config = TenantClientCache.fromSystemProperties();
+    this.pendingLoads = new ConcurrentHashMap<>();
+    this.failedLoads = new ConcurrentHashMap<>();
+    this.okapiUrls = new ConcurrentHashMap<>();
+    this.failedLoadTtl = PropertyUtil.getLong(FAILED_LOAD_TTL_PROPERTY, DEFAULT_FAILED_LOAD_TTL);
   }
 
   public static SamlConfigHolder getInstance() {
-    if (instance == null) {
-      instance = new SamlConfigHolder();
-    }
     return instance;
   }
 
+  /**
+   * @return snapshot of the loaded clients
+   */
   public Map<String, SamlClientComposite> getConfig() {
-    return config;
+    return config.asMap();
+  }
+
+  /**
+   * @return approximate heap usage of the loaded clients per tenant, in bytes
+   */
+  public Map<String, Long> getMemoryEstimates() {
+    return config.memoryEstimates();
+  }
+
+  /**
+   * Drops clients that were not used for the configured idle TTL, see {@link TenantClientCache#IDLE_TTL_PROPERTY}.
+   */
+  public void evictIdleClients() {
+    config.evictIdle();
   }
 
   public SamlClientComposite findClient(String tenantId) {
@@ -39,11 +85,165 @@ public class SamlConfigHolder {
 
   public void removeClient(String tenantId) {
     this.config.remove(tenantId);
+    this.failedLoads.remove(tenantId);
   }
 
   public void putClient(String tenantId, SamlClientComposite clientComposite) {
     Assert.hasText(tenantId, "tenantId cannot be empty!");
     Assert.notNull(clientComposite, "clientComposite cannot be null!");
     this.config.put(tenantId, clientComposite);
+    this.failedLoads.remove(tenantId);
+  }
+
+  /**
+   * Swaps the client of the tenant atomically, only if it was not changed or removed meanwhile.
+   *
+   * @return true if swapped
+   */
+  public boolean replaceClient(String tenantId, SamlClientComposite expected, SamlClientComposite clientComposite) {
+    Assert.notNull(clientComposite, "clientComposite cannot be null!");
+    return this.config.replace(tenantId, expected, clientComposite);
+  }
+
+  /**
+   * Remember the Okapi URL of the latest request of a tenant, background tasks call other modules through it.
+   */
+  public void putOkapiUrl(String tenantId, String okapiUrl) {
+    if (StringUtils.hasText(tenantId) && StringUtils.hasText(okapiUrl)) {
+      this.okapiUrls.put(tenantId, okapiUrl);
+    }
+  }
+
+  /**
+   * @return headers with the module's token for background calls of a tenant that was seen since startup (or since
+   * its token was rejected), null if there are none
+   */
+  public OkapiHeaders findOkapiHeaders(String tenantId) {
+    String okapiUrl = this.okapiUrls.get(tenantId);
+    String token = moduleToken(tenantId);
+    if (okapiUrl == null || token == null) {
+      return null;
+    }
+    OkapiHeaders headers = new OkapiHeaders();
+    headers.setUrl(okapiUrl);
+    headers.setTenant(tenantId);
+    headers.setToken(token);
+    return headers;
+  }
+
+  /**
+   * Stops background calls of the tenant after Okapi rejected the module's token, until its next request.
+   */
+  public void rejectOkapiHeaders(String tenantId, Throwable cause) {
+    if (this.okapiUrls.remove(tenantId) != null) {
+      log.warn("Okapi rejected the module token of tenant " + tenantId + ", background jobs of the tenant are paused: "
+        + cause.getMessage());
+    }
+  }
+
+  /**
+   * Okapi tokens are issued per tenant: {@code saml.module.token.<tenant>} overrides {@code saml.module.token}.
+   */
+  public static String moduleToken(String tenantId) {
+    return PropertyUtil.getString(MODULE_TOKEN_PROPERTY + "." + tenantId, PropertyUtil.getString(MODULE_TOKEN_PROPERTY, null));
+  }
+
+  /**
+   * @return the Okapi URL of jobs not started by a request, defaults to the {@code OKAPI_URL} environment variable
+   */
+  public static String moduleOkapiUrl() {
+    return PropertyUtil.getString(MODULE_OKAPI_URL_PROPERTY, System.getenv("OKAPI_URL"));
+  }
+
+  /**
+   * Returns the client of the tenant, loading it with {@code loader} if it is not loaded yet.
+   *
+   * @param tenantId the tenant
+   * @param reload   drop the loaded client and a remembered failure, start a new load
+   * @param loader   starts the actual loading, called at most once per tenant at a time
+   * @return Future of the loaded client, completed on the caller's context
+   */
+  public Future<SamlClientComposite> findOrLoadClient(String tenantId, boolean reload,
+                                                      Supplier<Future<SamlClientComposite>> loader) {
+
+    if (!StringUtils.hasText(tenantId)) {
+      return Future.failedFuture("Missing Tenant");
+    }
+
+    if (!reload) {
+      SamlClientComposite clientComposite = config.get(tenantId);
+      if (clientComposite != null) {
+        return Future.succeededFuture(clientComposite);
+      }
+
+      FailedLoad failedLoad = failedLoads.get(tenantId);
+      if (failedLoad != null) {
+        if (!failedLoad.isExpired()) {
+          return Future.failedFuture(failedLoad.cause);
+        }
+        failedLoads.remove(tenantId, failedLoad);
+      }
+    }
+
+    CompletableFuture<SamlClientComposite> load = new CompletableFuture<>();
+    CompletableFuture<SamlClientComposite> pending;
+    if (reload) {
+      removeClient(tenantId);
+      // a newer load supersedes the one in flight
+      pendingLoads.put(tenantId, load);
+      pending = null;
+    } else {
+      pending = pendingLoads.putIfAbsent(tenantId, load);
+    }
+
+    if (pending == null) {
+      startLoad(tenantId, load, loader);
+      pending = load;
+    }
+
+    // callers may come from different event loops
+    return VertxUtils.onCurrentContext(pending);
+  }
+
+  private void startLoad(String tenantId, CompletableFuture<SamlClientComposite> load,
+                         Supplier<Future<SamlClientComposite>> loader) {
+
+    Future<SamlClientComposite> loadFuture;
+    try {
+      loadFuture = loader.get();
+    } catch (Exception e) {
+      loadFuture = Future.failedFuture(e);
+    }
+
+    loadFuture.setHandler(loadResult -> {
+      // only the latest load of the tenant may change the registry
+      boolean current = pendingLoads.remove(tenantId, load);
+      if (loadResult.succeeded()) {
+        if (current) {
+          putClient(tenantId, loadResult.result());
+        }
+        load.complete(loadResult.result());
+      } else {
+        if (current && failedLoadTtl > 0) {
+          failedLoads.put(tenantId, new FailedLoad(loadResult.cause(), System.currentTimeMillis() + failedLoadTtl));
+        }
+        load.completeExceptionally(loadResult.cause());
+      }
+    });
+  }
+
+  private static class FailedLoad {
+
+    private final Throwable cause;
+    private final long expiresAt;
+
+    private FailedLoad(Throwable cause, long expiresAt) {
+      this.cause = cause;
+      this.expiresAt = expiresAt;
+    }
+
+    private boolean isExpired() {
+      return System.currentTimeMillis() >= expiresAt;
+    }
   }
 }
@@ -0,0 +1,186 @@
+package org.folio.config;
+
+import com.google.common.base.Strings;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import org.folio.config.model.SamlClientComposite;
+import org.folio.config.model.SamlConfiguration;
+import org.folio.util.PropertyUtil;
+import org.folio.util.TokenRejectedException;
+import org.folio.util.model.OkapiHeaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Periodically re-reads the configuration of the loaded tenants, so changes made directly in mod-configuration or
+ * on an other instance are picked up. The client is rebuilt only if a value it depends on or the IdP metadata
+ * changed, and swapped in atomically; requests keep using the current client meanwhile. Tenants are refreshed with
+ * the module's token, see {@link SamlConfigHolder#findOkapiHeaders(String)}.
+ */
+public class SamlConfigRefresher {
+
+  private static final Logger log = LoggerFactory.getLogger(SamlConfigRefresher.class);
+
+  public static final String REFRESH_INTERVAL_PROPERTY = "saml.config.refreshInterval";
+  private static final long DEFAULT_REFRESH_INTERVAL = 300000L;
+
+  private final Vertx vertx;
+  private final SamlConfigHolder configHolder;
+  private final AtomicBoolean running = new AtomicBoolean();
+  private final Set<String> skippedTenants = ConcurrentHashMap.newKeySet(); // logged once
+
+  public SamlConfigRefresher(Vertx vertx, SamlConfigHolder configHolder) {
+    this.vertx = vertx;
+    this.configHolder = configHolder;
+  }
+
+  public void start() {
+    long interval = PropertyUtil.getLong(REFRESH_INTERVAL_PROPERTY, DEFAULT_REFRESH_INTERVAL);
+    if (interval > 0) {
+      if (PropertyUtil.getString(SamlConfigHolder.MODULE_TOKEN_PROPERTY, null) == null) {
+        log.warn(SamlConfigHolder.MODULE_TOKEN_PROPERTY + " is not set, the SAML configuration is refreshed only for "
+          + "tenants with " + SamlConfigHolder.MODULE_TOKEN_PROPERTY + ".<tenant>");
+      }
+      vertx.setPeriodic(interval, timerId -> refreshAll());
+    }
+  }
+
+  /**
+   * Refresh the loaded tenants one after the other. Skipped if the previous round is still running.
+   */
+  public Future<Void> refreshAll() {
+    if (!running.compareAndSet(false, true)) {
+      return Future.succeededFuture();
+    }
+    Future<Void> done = Future.future();
+    refreshNext(configHolder.getConfig().entrySet().iterator(), done);
+    done.setHandler(finished -> running.set(false));
+    return done;
+  }
+
+  private void refreshNext(Iterator<Map.Entry<String, SamlClientComposite>> tenants, Future<Void> done) {
+    if (!tenants.hasNext()) {
+      done.complete();
+      return;
+    }
+    Map.Entry<String, SamlClientComposite> tenant = tenants.next();
+    if (configHolder.findOkapiHeaders(tenant.getKey()) == null) {
+      String message = "No module credentials for tenant " + tenant.getKey() + ", not refreshing its SAML configuration";
+      if (skippedTenants.add(tenant.getKey())) {
+        log.info(message);
+      } else {
+        log.debug(message);
+      }
+      refreshNext(tenants, done);
+      return;
+    }
+    skippedTenants.remove(tenant.getKey());
+    refresh(tenant.getKey(), tenant.getValue())
+      .setHandler(refreshed -> {
+        if (refreshed.failed()) {
+          log.warn("Cannot refresh SAML configuration of tenant " + tenant.getKey() + ": " + refreshed.cause().getMessage());
+        }
+        refreshNext(tenants, done);
+      });
+  }
+
+  /**
+   * Refresh one tenant right now, e.g. after an other node changed its configuration. If the client cannot be
+   * refreshed it is dropped, the next request loads it again.
+   */
+  public Future<Void> refreshTenant(String tenantId) {
+    SamlClientComposite current = configHolder.findClient(tenantId);
+    if (current == null) {
+      configHolder.removeClient(tenantId); // forget a remembered failure
+      return Future.succeededFuture();
+    }
+
+    Future<Void> result = Future.future();
+    refresh(tenantId, current).setHandler(refreshed -> {
+      if (refreshed.failed()) {
+        log.warn("Cannot refresh SAML configuration of tenant " + tenantId + ", dropping client: " + refreshed.cause().getMessage());
+        configHolder.removeClient(tenantId);
+      }
+      result.complete();
+    });
+    return result;
+  }
+
+  public Future<Void> refresh(String tenantId, SamlClientComposite current) {
+
+    OkapiHeaders okapiHeaders = configHolder.findOkapiHeaders(tenantId);
+    if (okapiHeaders == null) {
+      return Future.failedFuture("No module credentials for tenant");
+    }
+
+    Future<Void> result = Future.future();
+
+    ConfigurationsClient.reloadConfiguration(okapiHeaders)
+      .setHandler(configurationResult -> {
+        if (configurationResult.failed()) {
+          if (configurationResult.cause() instanceof TokenRejectedException) {
+            configHolder.rejectOkapiHeaders(tenantId, configurationResult.cause());
+          }
+          result.fail(configurationResult.cause());
+          return;
+        }
+
+        SamlConfiguration loaded = configurationResult.result();
+        SamlConfiguration cached = current.getConfiguration();
+
+        if (Strings.isNullOrEmpty(loaded.getIdpUrl())) {
+          log.info("SAML configuration of tenant " + tenantId + " was removed, dropping client");
+          configHolder.removeClient(tenantId);
+          result.complete();
+          return;
+        }
+
+        IdpMetadataCache.getInstance().get(vertx, loaded.getIdpUrl()).setHandler(metadataResult -> {
+          boolean metadataChanged = metadataResult.succeeded()
+            && !metadataResult.result().getVersion().equals(current.getIdpMetadataVersion());
+
+          if (loaded.equals(cached) && !metadataChanged) {
+            result.complete();
+          } else if (!clientSettingsChanged(cached, loaded) && !metadataChanged) {
+            // client stays, only the attribute mapping or flags changed
+            configHolder.replaceClient(tenantId, current,
+              new SamlClientComposite(current.getClient(), loaded, current.getIdpMetadataVersion()));
+            result.complete();
+          } else {
+            log.info("SAML configuration or IdP metadata of tenant " + tenantId + " changed, rebuilding client");
+            SamlClientLoader.buildClient(vertx, tenantId, loaded)
+              .setHandler(clientResult -> {
+                if (clientResult.failed()) {
+                  result.fail(clientResult.cause());
+                } else {
+                  configHolder.replaceClient(tenantId, current, clientResult.result());
+                  result.complete();
+                }
+              });
+          }
+        });
+      });
+
+    return result;
+  }
+
+  /**
+   * @return true if a value used for building the {@link org.pac4j.saml.client.SAML2Client} changed
+   */
+  static boolean clientSettingsChanged(SamlConfiguration cached, SamlConfiguration loaded) {
+    return !Objects.equals(cached.getIdpUrl(), loaded.getIdpUrl())
+      || !Objects.equals(cached.getIdpEntityId(), loaded.getIdpEntityId())
+      || !Objects.equals(cached.getKeystore(), loaded.getKeystore())
+      || !Objects.equals(cached.getKeystorePassword(), loaded.getKeystorePassword())
+      || !Objects.equals(cached.getPrivateKeyPassword(), loaded.getPrivateKeyPassword())
+      || !Objects.equals(cached.getSamlBinding(), loaded.getSamlBinding())
+      || !Objects.equals(cached.getOkapiUrl(), loaded.getOkapiUrl());
+  }
+}
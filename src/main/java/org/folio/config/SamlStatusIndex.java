@@ -0,0 +1,63 @@
+package org.folio.config;
+
+import com.google.common.base.Strings;
+import org.folio.config.model.SamlConfiguration;
+import org.folio.util.PropertyUtil;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Whether SAML is active per tenant, answered by {@code GET /saml/check} without building a client. SAML is active
+ * if the configuration has an IdP URL and a KeyStore. Kept current by the reads and writes of
+ * {@link ConfigurationsClient}, an entry older than {@code saml.configuration.cacheTtl} is probed again.
+ */
+public class SamlStatusIndex {
+
+  private static final SamlStatusIndex instance = new SamlStatusIndex(
+    PropertyUtil.getLong(ConfigurationsClient.CACHE_TTL_PROPERTY, 60000L));
+
+  private final long ttl;
+  private final ConcurrentMap<String, Status> statuses = new ConcurrentHashMap<>();
+
+  SamlStatusIndex(long ttl) {
+    this.ttl = ttl;
+  }
+
+  public static SamlStatusIndex getInstance() {
+    return instance;
+  }
+
+  /**
+   * @return whether SAML is active for the tenant, null if unknown or expired
+   */
+  public Boolean isActive(String tenantId, long now) {
+    Status status = statuses.get(tenantId);
+    return status != null && now - status.updatedAt < ttl ? status.active : null;
+  }
+
+  public boolean update(String tenantId, SamlConfiguration configuration, long now) {
+    boolean active = isActive(configuration);
+    statuses.put(tenantId, new Status(active, now));
+    return active;
+  }
+
+  public void invalidate(String tenantId) {
+    statuses.remove(tenantId);
+  }
+
+  public static boolean isActive(SamlConfiguration configuration) {
+    return !Strings.isNullOrEmpty(configuration.getIdpUrl()) && !Strings.isNullOrEmpty(configuration.getKeystore());
+  }
+
+  private static class Status {
+
+    private final boolean active;
+    private final long updatedAt;
+
+    Status(boolean active, long updatedAt) {
+      this.active = active;
+      this.updatedAt = updatedAt;
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package org.folio.config;
+
+import com.google.common.hash.Hashing;
+import org.folio.config.model.SamlConfiguration;
+import org.folio.config.model.SpMetadata;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * SP metadata served by {@code GET /saml/metadata}, per tenant. An entry is replaced only when the KeyStore, the
+ * Okapi URL or the IdP URL of the tenant change, so pollers get {@code 304} as long as nothing changed.
+ */
+public class SpMetadataCache {
+
+  private static final SpMetadataCache instance = new SpMetadataCache();
+  private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US)
+    .withZone(ZoneOffset.UTC);
+
+  private final ConcurrentMap<String, SpMetadata> metadata = new ConcurrentHashMap<>();
+
+  SpMetadataCache() {
+  }
+
+  public static SpMetadataCache getInstance() {
+    return instance;
+  }
+
+  /**
+   * @return the cached metadata of the tenant, null if missing or generated from other configuration values
+   */
+  public SpMetadata get(String tenantId, SamlConfiguration configuration) {
+    SpMetadata cached = metadata.get(tenantId);
+    return cached != null && cached.isCurrent(configuration) ? cached : null;
+  }
+
+  public SpMetadata put(String tenantId, SamlConfiguration configuration, String xml, long now) {
+    String etag = "\"" + Hashing.sha256().hashString(xml, StandardCharsets.UTF_8).toString().substring(0, 32) + "\"";
+
+    SpMetadata cached = metadata.get(tenantId);
+    // same document again, e.g. after a client rebuild: keep the validators pollers already have
+    if (cached != null && cached.getEtag().equals(etag)) {
+      return cached;
+    }
+    SpMetadata generated = new SpMetadata(configuration, xml, etag, now / 1000 * 1000);
+    metadata.put(tenantId, generated);
+    return generated;
+  }
+
+  public void invalidate(String tenantId) {
+    metadata.remove(tenantId);
+  }
+
+  /**
+   * @return true if the request's {@code If-None-Match} or, without it, {@code If-Modified-Since} matches
+   */
+  public static boolean notModified(SpMetadata spMetadata, String ifNoneMatch, String ifModifiedSince) {
+    if (ifNoneMatch != null) {
+      for (String tag : ifNoneMatch.split(",")) {
+        String candidate = tag.trim();
+        if (candidate.startsWith("W/")) {
+          candidate = candidate.substring(2);
+        }
+        if ("*".equals(candidate) || spMetadata.getEtag().equals(candidate)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    if (ifModifiedSince != null) {
+      try {
+        long since = ZonedDateTime.parse(ifModifiedSince.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        return spMetadata.getLastModified() <= since;
+      } catch (DateTimeParseException e) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  public static String httpDate(long epochMillis) {
+    return HTTP_DATE.format(Instant.ofEpochMilli(epochMillis));
+  }
+}
@@ -0,0 +1,259 @@
+package org.folio.config;
+
+import org.folio.config.model.SamlClientComposite;
+import org.folio.config.model.SamlConfiguration;
+import org.folio.util.PropertyUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of loaded {@link SamlClientComposite}s, keyed by tenant id.
+ * <p>
+ * Limits the number of tenants and the approximate heap usage, evicts idle tenants, picks eviction victims by
+ * {@link EvictionPolicy}. Evicted tenants are simply loaded again on next use.
+ */
+public class TenantClientCache {
+
+  private static final Logger log = LoggerFactory.getLogger(TenantClientCache.class);
+
+  public static final String MAX_TENANTS_PROPERTY = "saml.cache.maxTenants";
+  public static final String MAX_BYTES_PROPERTY = "saml.cache.maxBytes";
+  public static final String IDLE_TTL_PROPERTY = "saml.cache.idleTtl";
+  public static final String POLICY_PROPERTY = "saml.cache.policy";
+  public static final String CLIENT_OVERHEAD_PROPERTY = "saml.cache.clientOverheadBytes";
+
+  private static final int DEFAULT_MAX_TENANTS = 1000;
+  private static final long DEFAULT_CLIENT_OVERHEAD = 256L * 1024; // SAML2Client, OpenSAML resolvers, credentials
+
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+  private final AtomicLong totalBytes = new AtomicLong();
+  private final AtomicLong accessSequence = new AtomicLong();
+
+  private final int maxTenants;
+  private final long maxBytes;
+  private final long idleTtl;
+  private final EvictionPolicy policy;
+  private final long clientOverhead;
+
+  public TenantClientCache(int maxTenants, long maxBytes, long idleTtl, EvictionPolicy policy, long clientOverhead) {
+    this.maxTenants = maxTenants;
+    this.maxBytes = maxBytes;
+    this.idleTtl = idleTtl;
+    this.policy = policy;
+    this.clientOverhead = clientOverhead;
+  }
+
+  /**
+   * Cache configured from system properties, a limit of {@code 0} means unlimited.
+   */
+  public static TenantClientCache fromSystemProperties() {
+    EvictionPolicy policy;
+    try {
+      policy = EvictionPolicy.valueOf(PropertyUtil.getString(POLICY_PROPERTY, EvictionPolicy.LRU.name()).toUpperCase());
+    } catch (IllegalArgumentException e) {
+      log.warn("Unknown " + POLICY_PROPERTY + ", using " + EvictionPolicy.LRU);
+      policy = EvictionPolicy.LRU;
+    }
+    return new TenantClientCache(
+      PropertyUtil.getInt(MAX_TENANTS_PROPERTY, DEFAULT_MAX_TENANTS),
+      PropertyUtil.getLong(MAX_BYTES_PROPERTY, 0),
+      PropertyUtil.getLong(IDLE_TTL_PROPERTY, 0),
+      policy,
+      PropertyUtil.getLong(CLIENT_OVERHEAD_PROPERTY, DEFAULT_CLIENT_OVERHEAD));
+  }
+
+  public SamlClientComposite get(String tenantId) {
+    Entry entry = entries.get(tenantId);
+    if (entry == null) {
+      return null;
+    }
+    long now = System.currentTimeMillis();
+    if (isIdle(entry, now)) {
+      remove(tenantId, entry);
+      return null;
+    }
+    entry.touch(now, accessSequence.incrementAndGet());
+    return entry.value;
+  }
+
+  public void put(String tenantId, SamlClientComposite value) {
+    Entry entry = new Entry(value, estimateBytes(value), System.currentTimeMillis(), accessSequence.incrementAndGet());
+    Entry previous = entries.put(tenantId, entry);
+    totalBytes.addAndGet(entry.bytes - (previous == null ? 0 : previous.bytes));
+    evictIdle();
+    evictOverLimit(tenantId);
+  }
+
+  /**
+   * Swaps the cached value of the tenant, only if it is still {@code expected}.
+   *
+   * @return true if swapped
+   */
+  public boolean replace(String tenantId, SamlClientComposite expected, SamlClientComposite value) {
+    Entry current = entries.get(tenantId);
+    if (current == null || current.value != expected) {
+      return false;
+    }
+    Entry replacement = new Entry(value, estimateBytes(value), current.lastAccess, current.lastUse);
+    replacement.hits.add(current.hits.sum());
+    if (!entries.replace(tenantId, current, replacement)) {
+      return false;
+    }
+    totalBytes.addAndGet(replacement.bytes - current.bytes);
+    evictOverLimit(tenantId);
+    return true;
+  }
+
+  public void remove(String tenantId) {
+    Entry previous = entries.remove(tenantId);
+    if (previous != null) {
+      totalBytes.addAndGet(-previous.bytes);
+    }
+  }
+
+  private void remove(String tenantId, Entry entry) {
+    if (entries.remove(tenantId, entry)) {
+      totalBytes.addAndGet(-entry.bytes);
+    }
+  }
+
+  /**
+   * Drops every entry not used for the configured idle TTL.
+   */
+  public void evictIdle() {
+    if (idleTtl <= 0) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    entries.forEach((tenantId, entry) -> {
+      if (isIdle(entry, now)) {
+        log.debug("Evicting idle SAML client of tenant " + tenantId);
+        remove(tenantId, entry);
+      }
+    });
+  }
+
+  private synchronized void evictOverLimit(String justAdded) {
+    while (isOverLimit() && entries.size() > 1) {
+      String victim = null;
+      Entry victimEntry = null;
+      for (Map.Entry<String, Entry> candidate : entries.entrySet()) {
+        if (candidate.getKey().equals(justAdded)) {
+          continue;
+        }
+        if (victimEntry == null || policy.prefers(candidate.getValue(), victimEntry)) {
+          victim = candidate.getKey();
+          victimEntry = candidate.getValue();
+        }
+      }
+      if (victimEntry == null) {
+        return;
+      }
+      log.debug("Evicting SAML client of tenant " + victim + " (" + policy + ")");
+      remove(victim, victimEntry);
+    }
+  }
+
+  private boolean isOverLimit() {
+    return (maxTenants > 0 && entries.size() > maxTenants) || (maxBytes > 0 && totalBytes.get() > maxBytes);
+  }
+
+  private boolean isIdle(Entry entry, long now) {
+    return idleTtl > 0 && now - entry.lastAccess > idleTtl;
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  public long totalBytes() {
+    return totalBytes.get();
+  }
+
+  /**
+   * @return approximate heap usage per tenant, in bytes
+   */
+  public Map<String, Long> memoryEstimates() {
+    Map<String, Long> estimates = new HashMap<>();
+    entries.forEach((tenantId, entry) -> estimates.put(tenantId, entry.bytes));
+    return estimates;
+  }
+
+  public Map<String, SamlClientComposite> asMap() {
+    Map<String, SamlClientComposite> clients = new HashMap<>();
+    entries.forEach((tenantId, entry) -> clients.put(tenantId, entry.value));
+    return clients;
+  }
+
+  long estimateBytes(SamlClientComposite composite) {
+    SamlConfiguration configuration = composite.getConfiguration();
+    long keystore = estimateBytes(configuration.getKeystore());
+    return clientOverhead
+      + keystore
+      + keystore * 3 / 8 // decoded keystore bytes held by the client
+      + estimateBytes(configuration.getIdpUrl())
+      + estimateBytes(configuration.getIdpEntityId())
+      + estimateBytes(configuration.getKeystorePassword())
+      + estimateBytes(configuration.getPrivateKeyPassword())
+      + estimateBytes(configuration.getSamlBinding())
+      + estimateBytes(configuration.getSamlAttribute())
+      + estimateBytes(configuration.getUserProperty())
+      + estimateBytes(configuration.getMetadataInvalidated())
+      + estimateBytes(configuration.getOkapiUrl());
+  }
+
+  private static long estimateBytes(String value) {
+    return value == null ? 0 : 40L + 2L * value.length();
+  }
+
+  public enum EvictionPolicy {
+    /**
+     * least recently used
+     */
+    LRU,
+    /**
+     * least frequently used, ties broken by recency
+     */
+    LFU;
+
+    boolean prefers(Entry candidate, Entry current) {
+      if (this == LFU) {
+        long candidateHits = candidate.hits.sum();
+        long currentHits = current.hits.sum();
+        if (candidateHits != currentHits) {
+          return candidateHits < currentHits;
+        }
+      }
+      return candidate.lastUse < current.lastUse;
+    }
+  }
+
+  private static class Entry {
+
+    private final SamlClientComposite value;
+    private final long bytes;
+    private final LongAdder hits = new LongAdder();
+    private volatile long lastAccess; // wall clock, for idle eviction
+    private volatile long lastUse; // access sequence, for recency ordering
+
+    private Entry(SamlClientComposite value, long bytes, long now, long sequence) {
+      this.value = value;
+      this.bytes = bytes;
+      this.lastAccess = now;
+      this.lastUse = sequence;
+    }
+
+    private void touch(long now, long sequence) {
+      lastAccess = now;
+      lastUse = sequence;
+      hits.increment();
+    }
+  }
+}
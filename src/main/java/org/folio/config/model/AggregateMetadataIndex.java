@@ -0,0 +1,454 @@
+package org.folio.config.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the {@code EntityDescriptor}s of a metadata document (usually a federation aggregate): entityID to byte
+ * range, built by one pass over the raw bytes without building a DOM. A single entity can be cut out as a standalone
+ * document, so a client parses only the IdP it uses.
+ * <p>
+ * The document must be UTF-8 (or ASCII) encoded and must not contain a DTD.
+ */
+public class AggregateMetadataIndex {
+
+  private static final String ENTITIES_DESCRIPTOR = "EntitiesDescriptor";
+  private static final String ENTITY_DESCRIPTOR = "EntityDescriptor";
+  private static final String ENTITY_ID = "entityID";
+  private static final String XMLNS = "xmlns";
+
+  private static final byte[] XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+    .getBytes(StandardCharsets.US_ASCII);
+
+  private final boolean aggregate;
+  private final String[] entityIds; // sorted
+  private final int[] starts;
+  private final int[] nameEnds; // end of the element name in the start tag, namespaces are inserted here
+  private final int[] ends;
+  private final int[] namespaceRefs;
+  private final byte[][] namespaces; // distinct sets of namespace declarations inherited from the ancestors
+
+  private AggregateMetadataIndex(boolean aggregate, List<Entity> entities, List<byte[]> namespaces) {
+    entities.sort((a, b) -> a.entityId.compareTo(b.entityId));
+
+    List<Entity> distinct = new ArrayList<>(entities.size());
+    for (Entity entity : entities) {
+      if (distinct.isEmpty() || !distinct.get(distinct.size() - 1).entityId.equals(entity.entityId)) {
+        distinct.add(entity); // first one wins, like in OpenSAML
+      }
+    }
+
+    this.aggregate = aggregate;
+    this.entityIds = new String[distinct.size()];
+    this.starts = new int[distinct.size()];
+    this.nameEnds = new int[distinct.size()];
+    this.ends = new int[distinct.size()];
+    this.namespaceRefs = new int[distinct.size()];
+    for (int i = 0; i < distinct.size(); i++) {
+      Entity entity = distinct.get(i);
+      entityIds[i] = entity.entityId;
+      starts[i] = entity.start;
+      nameEnds[i] = entity.nameEnd;
+      ends[i] = entity.end;
+      namespaceRefs[i] = entity.namespaceRef;
+    }
+    this.namespaces = namespaces.toArray(new byte[0][]);
+  }
+
+  /**
+   * @return true if the root element is an {@code EntitiesDescriptor}
+   */
+  public boolean isAggregate() {
+    return aggregate;
+  }
+
+  public int size() {
+    return entityIds.length;
+  }
+
+  public boolean contains(String entityId) {
+    return indexOf(entityId) >= 0;
+  }
+
+  /**
+   * @param content the indexed document
+   * @return the entity as a standalone metadata document, or null if it is not in the index
+   */
+  public byte[] materialize(ByteBuffer content, String entityId) {
+    int i = indexOf(entityId);
+    if (i < 0) {
+      return null;
+    }
+
+    byte[] inherited = namespaces[namespaceRefs[i]];
+    int headLength = nameEnds[i] - starts[i];
+    int tailLength = ends[i] - nameEnds[i];
+    byte[] document = new byte[XML_DECLARATION.length + headLength + inherited.length + tailLength];
+
+    ByteBuffer source = content.duplicate();
+    int offset = 0;
+    System.arraycopy(XML_DECLARATION, 0, document, offset, XML_DECLARATION.length);
+    offset += XML_DECLARATION.length;
+    source.position(starts[i]);
+    source.get(document, offset, headLength);
+    offset += headLength;
+    System.arraycopy(inherited, 0, document, offset, inherited.length);
+    offset += inherited.length;
+    source.get(document, offset, tailLength);
+
+    return document;
+  }
+
+  private int indexOf(String entityId) {
+    if (entityId == null) {
+      return -1;
+    }
+    int low = 0;
+    int high = entityIds.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = entityIds[mid].compareTo(entityId);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Scans the document once. Only the start tags of {@code EntityDescriptor}s and their ancestors are parsed,
+   * everything inside an entity is skipped over.
+   *
+   * @throws IOException if the document is not well-formed enough to be indexed
+   */
+  public static AggregateMetadataIndex build(ByteBuffer content) throws IOException {
+    Scanner scanner = new Scanner(content);
+
+    Deque<Element> open = new ArrayDeque<>();
+    List<Entity> entities = new ArrayList<>();
+    Map<String, Integer> namespaceRefs = new HashMap<>();
+    List<byte[]> namespaces = new ArrayList<>();
+    Boolean aggregate = null;
+    Element entity = null; // the open EntityDescriptor
+
+    int lt;
+    while ((lt = scanner.indexOf('<', scanner.pos)) >= 0) {
+      if (scanner.startsWith(lt, "<!--")) {
+        scanner.pos = scanner.skipPast(lt + 4, "-->");
+      } else if (scanner.startsWith(lt, "<![CDATA[")) {
+        scanner.pos = scanner.skipPast(lt + 9, "]]>");
+      } else if (scanner.startsWith(lt, "<?")) {
+        scanner.checkDeclaration(lt);
+        scanner.pos = scanner.skipPast(lt + 2, "?>");
+      } else if (scanner.startsWith(lt, "<!")) {
+        throw new IOException("DTD is not allowed in IdP metadata");
+      } else {
+        int gt = scanner.tagEnd(lt + 1);
+        scanner.pos = gt + 1;
+
+        if (scanner.get(lt + 1) == '/') {
+          Element closed = open.poll();
+          if (closed == null) {
+            throw new IOException("Unbalanced end tag at " + lt);
+          }
+          if (closed == entity) {
+            entities.add(new Entity(entity, gt + 1));
+            entity = null;
+          }
+          continue;
+        }
+
+        boolean empty = scanner.get(gt - 1) == '/';
+        Element element = scanner.startTag(lt, empty ? gt - 1 : gt, entity == null);
+        if (aggregate == null) {
+          aggregate = ENTITIES_DESCRIPTOR.equals(element.localName);
+        }
+
+        if (entity == null && ENTITY_DESCRIPTOR.equals(element.localName)) {
+          if (element.entityId == null) {
+            throw new IOException("EntityDescriptor without entityID at " + lt);
+          }
+          String inherited = inheritedNamespaces(open, element);
+          element.namespaceRef = namespaceRefs.computeIfAbsent(inherited, key -> {
+            namespaces.add(key.getBytes(StandardCharsets.UTF_8));
+            return namespaces.size() - 1;
+          });
+          entity = element;
+          if (empty) {
+            entities.add(new Entity(entity, gt + 1));
+            entity = null;
+          }
+        }
+
+        if (!empty) {
+          open.push(element);
+        }
+      }
+    }
+
+    if (!open.isEmpty()) {
+      throw new IOException("Truncated IdP metadata, unclosed element " + open.peek().localName);
+    }
+    if (aggregate == null) {
+      throw new IOException("IdP metadata has no root element");
+    }
+    return new AggregateMetadataIndex(aggregate, entities, namespaces);
+  }
+
+  /**
+   * Namespace declarations in scope at the element, except the ones it declares itself, as attribute text.
+   */
+  private static String inheritedNamespaces(Deque<Element> open, Element element) {
+    Map<String, String> inScope = new LinkedHashMap<>();
+    for (Iterator<Element> ancestors = open.descendingIterator(); ancestors.hasNext(); ) {
+      inScope.putAll(ancestors.next().namespaces);
+    }
+    inScope.keySet().removeAll(element.namespaces.keySet());
+
+    StringBuilder declarations = new StringBuilder();
+    inScope.values().forEach(declaration -> declarations.append(' ').append(declaration));
+    return declarations.toString();
+  }
+
+  private static class Element {
+    int start;
+    int nameEnd;
+    String localName;
+    String entityId;
+    Map<String, String> namespaces = new LinkedHashMap<>(); // key: xmlns attribute name, value: its raw text
+    int namespaceRef;
+  }
+
+  private static class Entity {
+    final String entityId;
+    final int start;
+    final int nameEnd;
+    final int end;
+    final int namespaceRef;
+
+    Entity(Element element, int end) {
+      this.entityId = element.entityId;
+      this.start = element.start;
+      this.nameEnd = element.nameEnd;
+      this.end = end;
+      this.namespaceRef = element.namespaceRef;
+    }
+  }
+
+  /**
+   * Byte-level reader; all markup characters are ASCII, so UTF-8 content can be scanned byte by byte.
+   */
+  private static class Scanner {
+
+    private final ByteBuffer content;
+    private final int limit;
+    int pos;
+
+    Scanner(ByteBuffer content) throws IOException {
+      this.content = content;
+      this.limit = content.limit();
+      int b0 = limit > 0 ? get(0) & 0xff : 0;
+      int b1 = limit > 1 ? get(1) & 0xff : 0;
+      if ((b0 == 0xfe && b1 == 0xff) || (b0 == 0xff && b1 == 0xfe) || b0 == 0 || b1 == 0) {
+        throw new IOException("Only UTF-8 encoded IdP metadata can be indexed");
+      }
+      if (limit > 2 && b0 == 0xef && b1 == 0xbb && (get(2) & 0xff) == 0xbf) {
+        pos = 3; // UTF-8 byte order mark
+      }
+    }
+
+    byte get(int index) {
+      return content.get(index);
+    }
+
+    int indexOf(char c, int from) {
+      for (int i = from; i < limit; i++) {
+        if (get(i) == c) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    boolean startsWith(int from, String prefix) {
+      if (from + prefix.length() > limit) {
+        return false;
+      }
+      for (int i = 0; i < prefix.length(); i++) {
+        if (get(from + i) != prefix.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    int skipPast(int from, String terminator) throws IOException {
+      for (int i = from; i <= limit - terminator.length(); i++) {
+        if (startsWith(i, terminator)) {
+          return i + terminator.length();
+        }
+      }
+      throw new IOException("Truncated IdP metadata, missing " + terminator);
+    }
+
+    /**
+     * @return position of the {@code >} closing the tag, {@code >} in attribute values is skipped
+     */
+    int tagEnd(int from) throws IOException {
+      byte quote = 0;
+      for (int i = from; i < limit; i++) {
+        byte b = get(i);
+        if (quote != 0) {
+          if (b == quote) {
+            quote = 0;
+          }
+        } else if (b == '"' || b == '\'') {
+          quote = b;
+        } else if (b == '>') {
+          return i;
+        }
+      }
+      throw new IOException("Truncated IdP metadata, unclosed tag");
+    }
+
+    void checkDeclaration(int lt) throws IOException {
+      if (!startsWith(lt, "<?xml") || !isWhitespace(get(lt + 5))) {
+        return;
+      }
+      String encoding = readAttribute(lt + 5, tagEnd(lt) - 1, "encoding");
+      if (encoding != null && !"UTF-8".equalsIgnoreCase(encoding) && !"US-ASCII".equalsIgnoreCase(encoding)) {
+        throw new IOException("Only UTF-8 encoded IdP metadata can be indexed, found " + encoding);
+      }
+    }
+
+    /**
+     * @param end position of {@code >} or of {@code />}
+     * @param attributes false to read the element name only
+     */
+    Element startTag(int lt, int end, boolean attributes) throws IOException {
+      Element element = new Element();
+      element.start = lt;
+
+      int i = lt + 1;
+      int nameStart = i;
+      int localStart = i;
+      while (i < end && !isWhitespace(get(i))) {
+        if (get(i) == ':') {
+          localStart = i + 1;
+        }
+        i++;
+      }
+      element.nameEnd = i;
+      element.localName = text(localStart, i);
+
+      if (i == nameStart) {
+        throw new IOException("Malformed start tag at " + lt);
+      }
+
+      while (attributes) {
+        while (i < end && isWhitespace(get(i))) {
+          i++;
+        }
+        if (i >= end) {
+          break;
+        }
+        int attributeStart = i;
+        while (i < end && get(i) != '=' && !isWhitespace(get(i))) {
+          i++;
+        }
+        String name = text(attributeStart, i);
+        while (i < end && (isWhitespace(get(i)) || get(i) == '=')) {
+          i++;
+        }
+        if (i >= end || (get(i) != '"' && get(i) != '\'')) {
+          throw new IOException("Malformed attribute " + name + " at " + attributeStart);
+        }
+        byte quote = get(i);
+        int valueStart = ++i;
+        while (i < end && get(i) != quote) {
+          i++;
+        }
+        int valueEnd = i++;
+
+        if (name.equals(XMLNS) || name.startsWith(XMLNS + ":")) {
+          element.namespaces.put(name, text(attributeStart, i));
+        } else if (name.equals(ENTITY_ID)) {
+          element.entityId = unescape(text(valueStart, valueEnd));
+        }
+      }
+      return element;
+    }
+
+    private String readAttribute(int from, int end, String name) {
+      int at = from;
+      while (at < end) {
+        int found = -1;
+        for (int i = at; i <= end - name.length(); i++) {
+          if (startsWith(i, name) && isWhitespace(get(i - 1))) {
+            found = i;
+            break;
+          }
+        }
+        if (found < 0) {
+          return null;
+        }
+        int i = found + name.length();
+        while (i < end && isWhitespace(get(i))) {
+          i++;
+        }
+        if (i < end && get(i) == '=') {
+          i++;
+          while (i < end && isWhitespace(get(i))) {
+            i++;
+          }
+          if (i < end && (get(i) == '"' || get(i) == '\'')) {
+            byte quote = get(i);
+            int valueStart = ++i;
+            while (i < end && get(i) != quote) {
+              i++;
+            }
+            return text(valueStart, i);
+          }
+        }
+        at = found + name.length();
+      }
+      return null;
+    }
+
+    private String text(int from, int to) {
+      byte[] bytes = new byte[to - from];
+      ByteBuffer source = content.duplicate();
+      source.position(from);
+      source.get(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isWhitespace(byte b) {
+      return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private static String unescape(String value) {
+      if (value.indexOf('&') < 0) {
+        return value;
+      }
+      return value.replace("&lt;", "<")
+        .replace("&gt;", ">")
+        .replace("&quot;", "\"")
+        .replace("&apos;", "'")
+        .replace("&amp;", "&");
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package org.folio.config.model;
+
+import org.folio.config.CachingSignatureTrustEngineProvider;
+import org.joda.time.DateTime;
+import org.opensaml.saml.metadata.resolver.MetadataResolver;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.SubjectConfirmation;
+import org.opensaml.saml.saml2.core.SubjectConfirmationData;
+import org.pac4j.core.context.WebContext;
+import org.pac4j.core.exception.HttpAction;
+import org.pac4j.saml.client.SAML2Client;
+import org.pac4j.saml.client.SAML2ClientConfiguration;
+import org.pac4j.saml.context.SAML2MessageContext;
+import org.pac4j.saml.credentials.SAML2Credentials;
+
+/**
+ * SAML2Client keeping the signature trust engine and the IdP credentials resolved from its metadata for its whole
+ * life. The client is rebuilt when the IdP metadata changes, that drops them too.
+ * <p>
+ * The ID and the expiry of the assertion validated by {@link #getCredentials(WebContext)} are put into the request
+ * attributes {@link #ASSERTION_ID_ATTRIBUTE} and {@link #ASSERTION_NOT_ON_OR_AFTER_ATTRIBUTE}, for replay detection.
+ */
+public class CachingSaml2Client extends SAML2Client {
+
+  public static final String ASSERTION_ID_ATTRIBUTE = "saml.assertion.id";
+  public static final String ASSERTION_NOT_ON_OR_AFTER_ATTRIBUTE = "saml.assertion.notOnOrAfter";
+
+  public CachingSaml2Client(final SAML2ClientConfiguration cfg) {
+    super(cfg);
+  }
+
+  @Override
+  protected void initSignatureTrustEngineProvider(final MetadataResolver metadataManager) {
+    this.signatureTrustEngineProvider = new CachingSignatureTrustEngineProvider(metadataManager);
+  }
+
+  @Override
+  protected SAML2Credentials retrieveCredentials(final WebContext context) throws HttpAction {
+    final SAML2MessageContext samlContext = this.contextProvider.buildContext(context);
+    final SAML2Credentials credentials = (SAML2Credentials) this.profileHandler.receive(samlContext);
+
+    // the subject assertion is the decrypted one, its signature or the one of the response was verified
+    final Assertion assertion = samlContext.getSubjectAssertion();
+    if (assertion != null) {
+      recordAssertion(context, assertion.getID(), notOnOrAfter(assertion));
+    }
+    return credentials;
+  }
+
+  protected static void recordAssertion(WebContext context, String assertionId, Long notOnOrAfter) {
+    context.setRequestAttribute(ASSERTION_ID_ATTRIBUTE, assertionId);
+    if (notOnOrAfter != null) {
+      context.setRequestAttribute(ASSERTION_NOT_ON_OR_AFTER_ATTRIBUTE, notOnOrAfter);
+    }
+  }
+
+  /**
+   * @return the earliest NotOnOrAfter of the conditions and the subject confirmations, null if there is none
+   */
+  static Long notOnOrAfter(Assertion assertion) {
+    DateTime earliest = assertion.getConditions() != null ? assertion.getConditions().getNotOnOrAfter() : null;
+    if (assertion.getSubject() != null) {
+      for (SubjectConfirmation confirmation : assertion.getSubject().getSubjectConfirmations()) {
+        SubjectConfirmationData data = confirmation.getSubjectConfirmationData();
+        if (data != null && data.getNotOnOrAfter() != null
+          && (earliest == null || data.getNotOnOrAfter().isBefore(earliest))) {
+          earliest = data.getNotOnOrAfter();
+        }
+      }
+    }
+    return earliest != null ? earliest.getMillis() : null;
+  }
+}
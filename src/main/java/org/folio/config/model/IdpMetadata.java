@@ -0,0 +1,160 @@
+package org.folio.config.model;
+
+import org.folio.util.ByteBufferInputStream;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * IdP metadata document downloaded from {@code idp.url}, with its HTTP validators and cache lifetime.
+ * <p>
+ * Large documents (federation aggregates) are kept in a memory-mapped file instead of the heap.
+ */
+public class IdpMetadata {
+
+  private final String url;
+  private final ByteBuffer content;
+  private final String version;
+  private final String etag;
+  private final String lastModified;
+  private final long fetchedAt;
+  private final long expiresAt;
+  private final long cacheDuration; // 0 if not set by the document
+  private final long validUntil; // Long.MAX_VALUE if not limited by the document
+
+  private volatile AggregateMetadataIndex index;
+
+  public IdpMetadata(String url, ByteBuffer content, String version, String etag, String lastModified,
+                     long fetchedAt, long expiresAt, long cacheDuration, long validUntil) {
+    Assert.hasText(url, "url cannot be empty!");
+    Assert.notNull(content, "content cannot be null!");
+    this.url = url;
+    this.content = content.asReadOnlyBuffer();
+    this.version = version;
+    this.etag = etag;
+    this.lastModified = lastModified;
+    this.fetchedAt = fetchedAt;
+    this.expiresAt = expiresAt;
+    this.cacheDuration = cacheDuration;
+    this.validUntil = validUntil;
+  }
+
+  /**
+   * Same document, revalidated by the server (HTTP 304): new lifetime.
+   */
+  public IdpMetadata revalidated(long fetchedAt, long expiresAt) {
+    IdpMetadata revalidated = new IdpMetadata(url, content, version, etag, lastModified, fetchedAt, expiresAt,
+      cacheDuration, validUntil);
+    revalidated.index = index;
+    return revalidated;
+  }
+
+  /**
+   * @return a new {@link Resource} reading the whole document in place, for pac4j
+   */
+  public Resource toResource() {
+    return new AbstractResource() {
+      @Override
+      public String getDescription() {
+        return url;
+      }
+
+      @Override
+      public InputStream getInputStream() {
+        return new ByteBufferInputStream(content);
+      }
+
+      @Override
+      public long contentLength() {
+        return content.limit();
+      }
+    };
+  }
+
+  /**
+   * Blocking, the first call indexes the document.
+   *
+   * @param entityId entityID of the IdP, or empty for the whole document
+   * @return a new {@link Resource} containing only the given IdP, for pac4j
+   * @throws IOException if the document cannot be indexed or the IdP is not in it
+   */
+  public Resource toResource(String entityId) throws IOException {
+    if (!StringUtils.hasText(entityId)) {
+      return toResource();
+    }
+    byte[] entity = getIndex().materialize(content, entityId);
+    if (entity == null) {
+      throw new IOException("IdP " + entityId + " not found in metadata " + url);
+    }
+    return new ByteArrayResource(entity, url + "#" + entityId);
+  }
+
+  /**
+   * Blocking, built on first use.
+   */
+  public AggregateMetadataIndex getIndex() throws IOException {
+    AggregateMetadataIndex current = index;
+    if (current == null) {
+      synchronized (this) {
+        current = index;
+        if (current == null) {
+          current = AggregateMetadataIndex.build(content);
+          index = current;
+        }
+      }
+    }
+    return current;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  /**
+   * @return read-only view of the document
+   */
+  public ByteBuffer getContent() {
+    return content.duplicate();
+  }
+
+  public int getSize() {
+    return content.limit();
+  }
+
+  /**
+   * @return hash of the content, changes only if the document changes
+   */
+  public String getVersion() {
+    return version;
+  }
+
+  public String getEtag() {
+    return etag;
+  }
+
+  public String getLastModified() {
+    return lastModified;
+  }
+
+  public long getFetchedAt() {
+    return fetchedAt;
+  }
+
+  public long getExpiresAt() {
+    return expiresAt;
+  }
+
+  public long getCacheDuration() {
+    return cacheDuration;
+  }
+
+  public long getValidUntil() {
+    return validUntil;
+  }
+}
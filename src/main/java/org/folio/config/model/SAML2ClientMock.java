@@ -1,18 +1,20 @@
 package org.folio.config.model;
 
 
+import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
 import org.pac4j.core.context.WebContext;
 import org.pac4j.core.exception.HttpAction;
 import org.pac4j.core.profile.CommonProfile;
-import org.pac4j.saml.client.SAML2Client;
 import org.pac4j.saml.client.SAML2ClientConfiguration;
 import org.pac4j.saml.credentials.SAML2Credentials;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
-public class SAML2ClientMock extends SAML2Client {
+public class SAML2ClientMock extends CachingSaml2Client {
 
   private static final Logger log = LoggerFactory.getLogger(SAML2ClientMock.class);
   public static final String SAML_USER_ID = "saml-user-id";
@@ -29,6 +31,9 @@ public class SAML2ClientMock extends SAML2Client {
     CommonProfile userProfile = new CommonProfile();
     userProfile.addAttribute("UserID", Arrays.asList(SAML_USER_ID));
     cred.setUserProfile(userProfile);
+    // there is no real assertion, the response itself stands for its ID
+    String samlResponse = Strings.nullToEmpty(context.getRequestParameter("SAMLResponse"));
+    recordAssertion(context, Hashing.sha256().hashString(samlResponse, StandardCharsets.UTF_8).toString(), null);
     return cred;
   }
 
@@ -10,12 +10,21 @@ public class SamlClientComposite {
 
   private final SAML2Client client;
   private final SamlConfiguration configuration;
+  private final String idpMetadataVersion;
 
   public SamlClientComposite(SAML2Client client, SamlConfiguration configuration) {
+    this(client, configuration, null);
+  }
+
+  /**
+   * @param idpMetadataVersion version of the IdP metadata the client was built from, see {@link IdpMetadata#getVersion()}
+   */
+  public SamlClientComposite(SAML2Client client, SamlConfiguration configuration, String idpMetadataVersion) {
     Assert.notNull(client, "Client cannot be null!");
     Assert.notNull(configuration, "Configuration cannot be null!");
     this.client = client;
     this.configuration = configuration;
+    this.idpMetadataVersion = idpMetadataVersion;
   }
 
   public SAML2Client getClient() {
@@ -25,4 +34,11 @@ public class SamlClientComposite {
   public SamlConfiguration getConfiguration() {
     return configuration;
   }
+
+  /**
+   * @return version of the IdP metadata the client was built from, or {@code null} if pac4j downloads it
+   */
+  public String getIdpMetadataVersion() {
+    return idpMetadataVersion;
+  }
 }
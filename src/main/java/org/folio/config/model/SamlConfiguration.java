@@ -3,6 +3,8 @@ package org.folio.config.model;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.Objects;
+
 /**
  * POJO for strongly typed configuration client
  *
@@ -15,6 +17,7 @@ public class SamlConfiguration {
   public static final String KEYSTORE_PASSWORD_CODE = "keystore.password"; // NOSONAR
   public static final String KEYSTORE_PRIVATEKEY_PASSWORD_CODE = "keystore.privatekey.password"; // NOSONAR
   public static final String IDP_URL_CODE = "idp.url";
+  public static final String IDP_ENTITY_ID_CODE = "idp.entity.id";
   public static final String SAML_BINDING_CODE = "saml.binding";
   public static final String SAML_ATTRIBUTE_CODE = "saml.attribute";
   public static final String USER_PROPERTY_CODE = "user.property";
@@ -23,6 +26,8 @@ public class SamlConfiguration {
 
   @JsonProperty(IDP_URL_CODE)
   private String idpUrl;
+  @JsonProperty(IDP_ENTITY_ID_CODE)
+  private String idpEntityId;
   @JsonProperty(KEYSTORE_FILE_CODE)
   private String keystore;
   @JsonProperty(KEYSTORE_PASSWORD_CODE)
@@ -51,6 +56,14 @@ public class SamlConfiguration {
     this.idpUrl = idpUrl;
   }
 
+  public String getIdpEntityId() {
+    return idpEntityId;
+  }
+
+  public void setIdpEntityId(String idpEntityId) {
+    this.idpEntityId = idpEntityId;
+  }
+
   public String getKeystore() {
     return keystore;
   }
@@ -113,4 +126,31 @@ public class SamlConfiguration {
   public void setOkapiUrl(String okapiUrl) {
     this.okapiUrl = okapiUrl;
   }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    SamlConfiguration that = (SamlConfiguration) o;
+    return Objects.equals(idpUrl, that.idpUrl)
+      && Objects.equals(idpEntityId, that.idpEntityId)
+      && Objects.equals(keystore, that.keystore)
+      && Objects.equals(keystorePassword, that.keystorePassword)
+      && Objects.equals(privateKeyPassword, that.privateKeyPassword)
+      && Objects.equals(samlBinding, that.samlBinding)
+      && Objects.equals(samlAttribute, that.samlAttribute)
+      && Objects.equals(userProperty, that.userProperty)
+      && Objects.equals(metadataInvalidated, that.metadataInvalidated)
+      && Objects.equals(okapiUrl, that.okapiUrl);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(idpUrl, idpEntityId, keystore, keystorePassword, privateKeyPassword, samlBinding, samlAttribute,
+      userProperty, metadataInvalidated, okapiUrl);
+  }
 }
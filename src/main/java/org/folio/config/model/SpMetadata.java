@@ -0,0 +1,49 @@
+package org.folio.config.model;
+
+import java.util.Objects;
+
+/**
+ * SP metadata of a tenant with its validators and the configuration values it was generated from.
+ */
+public class SpMetadata {
+
+  private final String keystore;
+  private final String okapiUrl;
+  private final String idpUrl;
+  private final String content;
+  private final String etag;
+  private final long lastModified;
+
+  public SpMetadata(SamlConfiguration configuration, String content, String etag, long lastModified) {
+    this.keystore = configuration.getKeystore();
+    this.okapiUrl = configuration.getOkapiUrl();
+    this.idpUrl = configuration.getIdpUrl();
+    this.content = content;
+    this.etag = etag;
+    this.lastModified = lastModified;
+  }
+
+  /**
+   * @return true if the metadata would be the same for this configuration: only the KeyStore and the URLs change it
+   */
+  public boolean isCurrent(SamlConfiguration configuration) {
+    return Objects.equals(keystore, configuration.getKeystore())
+      && Objects.equals(okapiUrl, configuration.getOkapiUrl())
+      && Objects.equals(idpUrl, configuration.getIdpUrl());
+  }
+
+  public String getContent() {
+    return content;
+  }
+
+  public String getEtag() {
+    return etag;
+  }
+
+  /**
+   * @return epoch milliseconds, whole seconds
+   */
+  public long getLastModified() {
+    return lastModified;
+  }
+}
@@ -4,7 +4,20 @@ package org.folio.rest.impl;
 import io.vertx.core.*;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import org.folio.config.ConfigChangeNotifier;
+import org.folio.config.ConfigurationsClient;
+import org.folio.config.IdpMetadataCache;
+import org.folio.config.SamlClientPrewarmer;
+import org.folio.config.SamlConfigHolder;
+import org.folio.config.SamlConfigRefresher;
+import org.folio.config.TenantClientCache;
 import org.folio.rest.resource.interfaces.InitAPI;
+import org.folio.session.AssertionReplayCache;
+import org.folio.users.UserIndexReplicator;
+import org.folio.users.UserLookupCache;
+import org.folio.util.KeyPairPool;
+import org.folio.util.PropertyUtil;
+import org.folio.util.XmlUtil;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
@@ -17,6 +30,8 @@ public class ApiInitializer implements InitAPI {
 
   private final Logger log = LoggerFactory.getLogger(ApiInitializer.class);
 
+  private static final long STATISTICS_INTERVAL = 60000L;
+
   @Override
   public void init(Vertx vertx, Context context, Handler<AsyncResult<Boolean>> handler) {
 
@@ -29,7 +44,40 @@ public class ApiInitializer implements InitAPI {
     String disableResolver = System.getProperty("vertx.disableDnsResolver");
     log.info("vertx.disableDnsResolver (netty workaround): " + disableResolver);
 
-    handler.handle(Future.succeededFuture(true));
+    scheduleIdleClientEviction(vertx);
+    SamlAPI.createCallbackExecutor(vertx).logStatisticsEvery(STATISTICS_INTERVAL);
+    IdpMetadataCache.getInstance().start(vertx);
+    UserIndexReplicator.getInstance().start(vertx);
+    AssertionReplayCache.getInstance().start(vertx);
+    KeyPairPool.getInstance().refill();
+    SamlConfigRefresher refresher = new SamlConfigRefresher(vertx, SamlConfigHolder.getInstance());
+    refresher.start();
+    new ConfigChangeNotifier(vertx).listen(tenantId -> {
+      ConfigurationsClient.invalidate(tenantId);
+      UserLookupCache.getInstance().invalidate(tenantId);
+      refresher.refreshTenant(tenantId);
+    });
+
+    // the clients keep the parser pool they are built with, install the shared one before the first is built
+    vertx.executeBlocking((Future<Void> future) -> {
+      XmlUtil.installParserPool();
+      future.complete();
+    }, installed -> {
+      if (installed.failed()) {
+        log.warn("Cannot install shared XML parser pool, using the pac4j default", installed.cause());
+      }
+      // report ready after the warm-up, it completes at the latest when its time budget runs out
+      new SamlClientPrewarmer(vertx, SamlConfigHolder.getInstance()).warmUp()
+        .setHandler(warmedUp -> handler.handle(Future.succeededFuture(true)));
+    });
+  }
+
+  private void scheduleIdleClientEviction(Vertx vertx) {
+    long idleTtl = PropertyUtil.getLong(TenantClientCache.IDLE_TTL_PROPERTY, 0);
+    if (idleTtl > 0) {
+      // check a few times per TTL, but not more often than once a second
+      vertx.setPeriodic(Math.max(1000, idleTtl / 4), timerId -> SamlConfigHolder.getInstance().evictIdleClients());
+    }
   }
 
   /**
@@ -2,24 +2,33 @@ package org.folio.rest.impl;
 
 import io.vertx.core.*;
 import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.json.Json;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
-import io.vertx.ext.auth.PRNG;
+import io.vertx.core.shareddata.LocalMap;
 import io.vertx.ext.web.RoutingContext;
-import io.vertx.ext.web.Session;
-import io.vertx.ext.web.sstore.impl.SessionImpl;
+import org.folio.config.ConfigChangeNotifier;
 import org.folio.config.ConfigurationsClient;
 import org.folio.config.SamlClientLoader;
 import org.folio.config.SamlConfigHolder;
+import org.folio.config.SamlStatusIndex;
+import org.folio.config.SpMetadataCache;
+import org.folio.config.model.CachingSaml2Client;
 import org.folio.config.model.SamlClientComposite;
 import org.folio.config.model.SamlConfiguration;
+import org.folio.config.model.SpMetadata;
 import org.folio.rest.jaxrs.model.*;
 import org.folio.rest.jaxrs.resource.SamlResource;
-import org.folio.rest.tools.client.HttpClientFactory;
 import org.folio.rest.tools.client.interfaces.HttpClientInterface;
+import org.folio.session.AssertionReplayCache;
 import org.folio.session.NoopSession;
+import org.folio.session.RelayStateSession;
+import org.folio.users.UserIndexReplicator;
+import org.folio.users.UserLookupCache;
+import org.folio.users.UsersClient;
+import org.folio.users.model.SamlUser;
 import org.folio.util.*;
 import org.folio.util.model.OkapiHeaders;
 import org.folio.util.model.UrlCheckResult;
@@ -31,12 +40,16 @@ import org.pac4j.saml.credentials.SAML2Credentials;
 import org.pac4j.vertx.VertxWebContext;
 import org.springframework.util.StringUtils;
 
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.NewCookie;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriBuilder;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 /**
  * Main entry point of module
@@ -48,6 +61,54 @@ public class SamlAPI implements SamlResource {
   private static final Logger log = LoggerFactory.getLogger(SamlAPI.class);
   public static final String QUOTATION_MARK_CHARACTER = "\"";
 
+  public static final String CALLBACK_POOL_SIZE_PROPERTY = "saml.callback.poolSize";
+  public static final String CALLBACK_QUEUE_SIZE_PROPERTY = "saml.callback.queueSize";
+  private static final String CALLBACK_POOL_NAME = "saml-callback";
+
+  private static final SamlResponseGate RESPONSE_GATE = new SamlResponseGate();
+  private static final long REPLAY_CLOCK_SKEW = PropertyUtil.getLong(SamlResponseGate.CLOCK_SKEW_PROPERTY, 120000L);
+
+  /**
+   * Creates the worker pool validating the SAML responses of {@code /saml/callback} for this Vert.x instance,
+   * replacing and closing the pool of a previous deployment. Called by {@link ApiInitializer}.
+   */
+  static BoundedWorkerExecutor createCallbackExecutor(Vertx vertx) {
+    BoundedWorkerExecutor executor = newCallbackExecutor(vertx);
+    BoundedWorkerExecutor previous = callbackExecutors(vertx).put(CALLBACK_POOL_NAME, executor);
+    if (previous != null) {
+      previous.close();
+    }
+    return executor;
+  }
+
+  /**
+   * @return the callback worker pool of the Vert.x instance, created now if the initializer did not run
+   */
+  static BoundedWorkerExecutor callbackExecutor(Vertx vertx) {
+    LocalMap<String, BoundedWorkerExecutor> executors = callbackExecutors(vertx);
+    BoundedWorkerExecutor executor = executors.get(CALLBACK_POOL_NAME);
+    if (executor == null) {
+      BoundedWorkerExecutor created = newCallbackExecutor(vertx);
+      executor = executors.putIfAbsent(CALLBACK_POOL_NAME, created);
+      if (executor == null) {
+        executor = created;
+      } else {
+        created.close();
+      }
+    }
+    return executor;
+  }
+
+  private static LocalMap<String, BoundedWorkerExecutor> callbackExecutors(Vertx vertx) {
+    return vertx.sharedData().getLocalMap(CALLBACK_POOL_NAME);
+  }
+
+  private static BoundedWorkerExecutor newCallbackExecutor(Vertx vertx) {
+    return new BoundedWorkerExecutor(vertx, CALLBACK_POOL_NAME,
+      PropertyUtil.getInt(CALLBACK_POOL_SIZE_PROPERTY, Runtime.getRuntime().availableProcessors()),
+      PropertyUtil.getInt(CALLBACK_QUEUE_SIZE_PROPERTY, 100));
+  }
+
   /**
    * Check that client can be loaded, SAML-Login button can be displayed.
    */
@@ -55,12 +116,24 @@ public class SamlAPI implements SamlResource {
   public void getSamlCheck(RoutingContext routingContext, Map<String, String> okapiHeaders,
                            Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) throws Exception {
 
-    findSaml2Client(routingContext, false, false)
-      .setHandler(samlClientHandler -> {
-        if (samlClientHandler.failed()) {
+    // called on every load of the login page: answered from the status index, no client is built
+    OkapiHeaders parsedHeaders = OkapiHelper.okapiHeaders(okapiHeaders);
+    SamlStatusIndex statusIndex = SamlStatusIndex.getInstance();
+    Boolean active = parsedHeaders.getTenant() == null ? null
+      : statusIndex.isActive(parsedHeaders.getTenant(), System.currentTimeMillis());
+    if (active != null) {
+      asyncResultHandler.handle(Future.succeededFuture(GetSamlCheckResponse.withJsonOK(new SamlCheck().withActive(active))));
+      return;
+    }
+
+    ConfigurationsClient.getConfiguration(parsedHeaders)
+      .setHandler(configurationHandler -> {
+        if (configurationHandler.failed()) {
           asyncResultHandler.handle(Future.succeededFuture(GetSamlCheckResponse.withJsonOK(new SamlCheck().withActive(false))));
         } else {
-          asyncResultHandler.handle(Future.succeededFuture(GetSamlCheckResponse.withJsonOK(new SamlCheck().withActive(true))));
+          boolean configured = statusIndex.update(parsedHeaders.getTenant(), configurationHandler.result(),
+            System.currentTimeMillis());
+          asyncResultHandler.handle(Future.succeededFuture(GetSamlCheckResponse.withJsonOK(new SamlCheck().withActive(configured))));
         }
       });
   }
@@ -71,12 +144,7 @@ public class SamlAPI implements SamlResource {
                             Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) throws Exception {
 
     String stripesUrl = requestEntity.getStripesUrl();
-
-    // register non-persistent session (this request only) to overWrite relayState
-    Session session = new SessionImpl(new PRNG(vertxContext.owner()));
-    session.put("samlRelayState", stripesUrl);
-    routingContext.setSession(session);
-
+    String tenantId = OkapiHelper.okapiHeaders(okapiHeaders).getTenant();
 
     findSaml2Client(routingContext, false, false) // do not allow login, if config is missing
       .setHandler(samlClientHandler -> {
@@ -84,6 +152,9 @@ public class SamlAPI implements SamlResource {
         if (samlClientHandler.succeeded()) {
           SAML2Client saml2Client = samlClientHandler.result().getClient();
           try {
+            // the signed RelayState is all pac4j needs from the session
+            routingContext.setSession(new RelayStateSession(RelayStateSigner.getInstance().sign(tenantId,
+              relayStateSecret(samlClientHandler.result().getConfiguration()), stripesUrl)));
             RedirectAction redirectAction = saml2Client.getRedirectAction(VertxUtils.createWebContext(routingContext));
             String responseJsonString = redirectAction.getContent();
             SamlLogin dto = Json.decodeValue(responseJsonString, SamlLogin.class);
@@ -91,6 +162,9 @@ public class SamlAPI implements SamlResource {
             response = PostSamlLoginResponse.withJsonOK(dto);
           } catch (HttpAction httpAction) {
             response = HttpActionMapper.toResponse(httpAction);
+          } catch (IllegalArgumentException e) {
+            log.warn("Cannot sign RelayState: " + e.getMessage());
+            response = PostSamlLoginResponse.withPlainInternalServerError("Cannot sign RelayState");
           }
         } else {
           log.warn("Login called but cannot load client to handle", samlClientHandler.cause());
@@ -109,8 +183,6 @@ public class SamlAPI implements SamlResource {
 
     final VertxWebContext webContext = VertxUtils.createWebContext(routingContext);
     final String relayState = webContext.getRequestParameter("RelayState"); // There is no better way to get RelayState.
-    final URI originalUrl = new URI(relayState); // throws exception if invalid -> automatic bad request response.
-    final URI stripesBaseUrl = UrlUtil.parseBaseUrl(originalUrl);
 
     findSaml2Client(routingContext, false, false)
       .setHandler(samlClientHandler -> {
@@ -118,114 +190,194 @@ public class SamlAPI implements SamlResource {
           asyncResultHandler.handle(
             Future.succeededFuture(PostSamlCallbackResponse.withPlainInternalServerError(samlClientHandler.cause().getMessage())));
         } else {
-          try {
-            final SamlClientComposite samlClientComposite = samlClientHandler.result();
-            final SAML2Client client = samlClientComposite.getClient();
-            final SamlConfiguration configuration = samlClientComposite.getConfiguration();
-            String userPropertyName = configuration.getUserProperty() == null ? "externalSystemId" : configuration.getUserProperty();
-            String samlAttributeName = configuration.getSamlAttribute() == null ? "UserID" : configuration.getSamlAttribute();
+          final SamlClientComposite samlClientComposite = samlClientHandler.result();
+          final SAML2Client client = samlClientComposite.getClient();
 
+          final URI originalUrl;
+          try {
+            originalUrl = new URI(RelayStateSigner.getInstance().verify(OkapiHelper.okapiHeaders(okapiHeaders).getTenant(),
+              relayStateSecret(samlClientComposite.getConfiguration()), relayState));
+          } catch (IllegalArgumentException | URISyntaxException e) {
+            log.warn("RelayState rejected: " + e.getMessage());
+            asyncResultHandler.handle(Future.succeededFuture(PostSamlCallbackResponse.withPlainBadRequest("Invalid RelayState")));
+            return;
+          }
+          final URI stripesBaseUrl = UrlUtil.parseBaseUrl(originalUrl);
 
-            SAML2Credentials credentials = client.getCredentials(webContext);
+          // reject oversized, malformed, misdirected and expired responses before any DOM or crypto work
+          try {
+            RESPONSE_GATE.check(webContext.getRequestParameter("SAMLResponse"), client.getCallbackUrl(),
+              client.getIdentityProviderResolvedEntityId(), System.currentTimeMillis());
+          } catch (IllegalArgumentException e) {
+            log.warn("SAML response rejected: " + e.getMessage());
+            asyncResultHandler.handle(Future.succeededFuture(PostSamlCallbackResponse.withPlainBadRequest(e.getMessage())));
+            return;
+          }
 
-            // Get user id
-            List samlAttributeList = (List) credentials.getUserProfile().getAttribute(samlAttributeName);
-            if (samlAttributeList == null || samlAttributeList.isEmpty()) {
-              asyncResultHandler.handle(Future.succeededFuture(PostSamlCallbackResponse.withPlainBadRequest("SAML attribute doesn't exist: " + samlAttributeName)));
-              return;
+          // decoding, signature check and decryption are CPU heavy, keep them off the event loop
+          callbackExecutor(routingContext.vertx()).submit((Future<SAML2Credentials> blockingCode) -> {
+            try {
+              SAML2Credentials credentials = client.getCredentials(webContext);
+              checkReplay(OkapiHelper.okapiHeaders(okapiHeaders).getTenant(), webContext);
+              blockingCode.complete(credentials);
+            } catch (HttpAction httpAction) {
+              blockingCode.fail(httpAction);
             }
-            final String samlAttributeValue = samlAttributeList.get(0).toString();
-
-            final String usersCql = userPropertyName +
-              "=="
-              + QUOTATION_MARK_CHARACTER + samlAttributeValue + QUOTATION_MARK_CHARACTER;
-
-            final String userQuery = UriBuilder.fromPath("/users").queryParam("query", usersCql).build().toString();
-
-            OkapiHeaders parsedHeaders = OkapiHelper.okapiHeaders(okapiHeaders);
-
-            Map<String, String> headers = new HashMap<>();
-            headers.put(OkapiHeaders.OKAPI_TOKEN_HEADER, parsedHeaders.getToken());
-
-            HttpClientInterface usersClient = HttpClientFactory.getHttpClient(parsedHeaders.getUrl(), parsedHeaders.getTenant());
-            usersClient.setDefaultHeaders(headers);
-            usersClient.request(userQuery)
-              .whenComplete((userQueryResponse, ex) -> {
-                if (!org.folio.rest.tools.client.Response.isSuccess(userQueryResponse.getCode())) {
-                  asyncResultHandler.handle(Future.succeededFuture(PostSamlCallbackResponse.withPlainInternalServerError(userQueryResponse.getError().toString())));
-                } else { // success
-                  JsonObject resultObject = userQueryResponse.getBody();
-
-                  int recordCount = resultObject.getInteger("totalRecords");
-                  if (recordCount > 1) {
-                    asyncResultHandler.handle(Future.succeededFuture(PostSamlCallbackResponse.withPlainBadRequest("More than one user record found!")));
-                  } else if (recordCount == 0) {
-                    String message = "No user found by " + userPropertyName + " == " + samlAttributeValue;
-                    log.warn(message);
-                    asyncResultHandler.handle(Future.succeededFuture(PostSamlCallbackResponse.withPlainBadRequest(message)));
-                  } else {
-
-                    final JsonObject userObject = resultObject.getJsonArray("users").getJsonObject(0);
-                    String userId = userObject.getString("id");
-                    if (!userObject.getBoolean("active")) {
-                      asyncResultHandler.handle(Future.succeededFuture(PostSamlCallbackResponse.withPlainForbidden("Inactive user account!")));
-                    } else {
+          }).setHandler(credentialsResult -> {
+            if (credentialsResult.failed()) {
+              asyncResultHandler.handle(Future.succeededFuture(credentialsFailure(credentialsResult.cause())));
+            } else {
+              handleCredentials(credentialsResult.result(), samlClientComposite.getConfiguration(), okapiHeaders,
+                originalUrl, stripesBaseUrl, asyncResultHandler);
+            }
+          });
+        }
+      });
+  }
 
-                      JsonObject payload = new JsonObject().put("payload", new JsonObject().put("sub", userObject.getString("username")).put("user_id", userId));
-
-
-                      HttpClientInterface tokenClient = HttpClientFactory.getHttpClient(parsedHeaders.getUrl(), parsedHeaders.getTenant());
-                      tokenClient.setDefaultHeaders(headers);
-                      try {
-                        tokenClient.request(HttpMethod.POST, payload, "/token", null)
-                          .whenComplete((tokenResponse, tokenError) -> {
-                            if (!org.folio.rest.tools.client.Response.isSuccess(tokenResponse.getCode())) {
-                              asyncResultHandler.handle(Future.succeededFuture(PostSamlCallbackResponse.withPlainInternalServerError(tokenResponse.getError().toString())));
-                            } else {
-                              String candidateAuthToken = null;
-                              if(tokenResponse.getCode() == 200) {
-                                candidateAuthToken = tokenResponse.getHeaders().get(OkapiHeaders.OKAPI_TOKEN_HEADER);
-                              } else { //mod-authtoken v2.x returns 201, with token in JSON response body
-                                try {
-                                  candidateAuthToken = tokenResponse.getBody().getString("token");
-                                } catch(Exception e) {
-                                  asyncResultHandler.handle(Future.succeededFuture(PostSamlCallbackResponse.withPlainInternalServerError(e.getMessage())));
-                                }
-                              }
-                              final String authToken = candidateAuthToken;
-
-                              final String location = UriBuilder.fromUri(stripesBaseUrl)
-                                .path("sso-landing")
-                                .queryParam("ssoToken", authToken)
-                                .queryParam("fwd", originalUrl.getPath())
-                                .build()
-                                .toString();
-
-                              final String cookie = new NewCookie("ssoToken", authToken, "", originalUrl.getHost(), "", 3600, false).toString();
-
-                              asyncResultHandler.handle(Future.succeededFuture(PostSamlCallbackResponse.withMovedTemporarily(cookie, authToken, location)));
-
-                            }
-                          });
-                      } catch (Exception httpClientEx) {
-                        asyncResultHandler.handle(Future.succeededFuture(PostSamlCallbackResponse.withPlainInternalServerError(httpClientEx.getMessage())));
-                      }
-                    }
+  /**
+   * Secret of the tenant every node reads from mod-configuration, the RelayState key is derived from it when
+   * {@code saml.relayState.secret} is not set.
+   */
+  private static String relayStateSecret(SamlConfiguration configuration) {
+    if (StringUtils.isEmpty(configuration.getKeystore()) || StringUtils.isEmpty(configuration.getPrivateKeyPassword())) {
+      return null;
+    }
+    return configuration.getPrivateKeyPassword() + "\n" + configuration.getKeystore();
+  }
 
-                  }
+  /**
+   * Records the ID of the assertion pac4j validated, rejects the response if it was seen before. The assertion is
+   * remembered until it expires, plus the accepted clock skew.
+   */
+  private void checkReplay(String tenantId, VertxWebContext webContext) throws HttpAction {
+    String assertionId = (String) webContext.getRequestAttribute(CachingSaml2Client.ASSERTION_ID_ATTRIBUTE);
+    if (assertionId == null) {
+      log.warn("No validated assertion to check for replay, SAML response rejected");
+      throw HttpAction.forbidden("SAML response has no validated assertion", webContext);
+    }
+    Long notOnOrAfter = (Long) webContext.getRequestAttribute(CachingSaml2Client.ASSERTION_NOT_ON_OR_AFTER_ATTRIBUTE);
+    long expiresAt = notOnOrAfter != null ? notOnOrAfter + REPLAY_CLOCK_SKEW : Long.MAX_VALUE;
 
-                }
-              });
+    if (!AssertionReplayCache.getInstance().consume(tenantId, Collections.singletonList(assertionId), expiresAt)) {
+      log.warn("Replayed SAML assertion " + assertionId + " rejected");
+      throw HttpAction.forbidden("SAML response was already used", webContext);
+    }
+  }
 
+  private Response credentialsFailure(Throwable cause) {
+    if (cause instanceof RejectedExecutionException) {
+      return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+        .header("Retry-After", "1")
+        .type(MediaType.TEXT_PLAIN)
+        .entity("Too many SAML callbacks in progress, try again later")
+        .build();
+    }
+    if (cause instanceof HttpAction) {
+      return HttpActionMapper.toResponse((HttpAction) cause);
+    }
+    String message = StringUtils.hasText(cause.getMessage()) ? cause.getMessage() : "Unknown error: " + cause.getClass().getName();
+    return PostSamlCallbackResponse.withPlainInternalServerError(message);
+  }
 
-          } catch (HttpAction httpAction) {
-            asyncResultHandler.handle(Future.succeededFuture(HttpActionMapper.toResponse(httpAction)));
-          } catch (Exception ex) {
-            String message = StringUtils.hasText(ex.getMessage()) ? ex.getMessage() : "Unknown error: " + ex.getClass().getName();
+  private void handleCredentials(SAML2Credentials credentials, SamlConfiguration configuration, Map<String, String> okapiHeaders,
+                                 URI originalUrl, URI stripesBaseUrl, Handler<AsyncResult<Response>> asyncResultHandler) {
+    try {
+      String userPropertyName = configuration.getUserProperty() == null ? "externalSystemId" : configuration.getUserProperty();
+      String samlAttributeName = configuration.getSamlAttribute() == null ? "UserID" : configuration.getSamlAttribute();
+
+      // Get user id
+      List samlAttributeList = (List) credentials.getUserProfile().getAttribute(samlAttributeName);
+      if (samlAttributeList == null || samlAttributeList.isEmpty()) {
+        asyncResultHandler.handle(Future.succeededFuture(PostSamlCallbackResponse.withPlainBadRequest("SAML attribute doesn't exist: " + samlAttributeName)));
+        return;
+      }
+      final String samlAttributeValue = samlAttributeList.get(0).toString();
+
+      OkapiHeaders parsedHeaders = OkapiHelper.okapiHeaders(okapiHeaders);
+
+      Map<String, String> headers = OkapiClientPool.headers(parsedHeaders);
+
+      // the local index replaces the search by attribute, misses are looked up there. It may be stale: an indexed
+      // user is confirmed by id and attribute, so a deleted, deactivated or changed user gets no token from it
+      SamlUser indexedUser = UserIndexReplicator.getInstance().find(parsedHeaders, userPropertyName, samlAttributeValue);
+      Supplier<Future<List<SamlUser>>> lookup = () -> UserLookupCache.getInstance().findUsers(parsedHeaders.getTenant(),
+        userPropertyName, samlAttributeValue, () -> UsersClient.findUsers(parsedHeaders, userPropertyName, samlAttributeValue));
+      Future<List<SamlUser>> usersFuture = indexedUser == null ? lookup.get()
+        : UsersClient.findUser(parsedHeaders, indexedUser.getId(), userPropertyName, samlAttributeValue)
+        .compose(confirmed -> confirmed.isEmpty() ? lookup.get() : Future.succeededFuture(confirmed));
+
+      usersFuture
+        .setHandler(userLookup -> {
+          if (userLookup.failed()) {
+            String message = userLookup.cause() != null && StringUtils.hasText(userLookup.cause().getMessage()) ? userLookup.cause().getMessage() : "Cannot query users";
             asyncResultHandler.handle(Future.succeededFuture(PostSamlCallbackResponse.withPlainInternalServerError(message)));
+          } else { // success
+            List<SamlUser> users = userLookup.result();
+
+            if (users.size() > 1) {
+              asyncResultHandler.handle(Future.succeededFuture(PostSamlCallbackResponse.withPlainBadRequest("More than one user record found!")));
+            } else if (users.isEmpty()) {
+              String message = "No user found by " + userPropertyName + " == " + samlAttributeValue;
+              log.warn(message);
+              asyncResultHandler.handle(Future.succeededFuture(PostSamlCallbackResponse.withPlainBadRequest(message)));
+            } else {
+
+              final SamlUser user = users.get(0);
+              if (!user.isActive()) {
+                asyncResultHandler.handle(Future.succeededFuture(PostSamlCallbackResponse.withPlainForbidden("Inactive user account!")));
+              } else {
+
+                JsonObject payload = new JsonObject().put("payload", new JsonObject().put("sub", user.getUsername()).put("user_id", user.getId()));
+
+
+                HttpClientInterface tokenClient = OkapiClientPool.getClient(parsedHeaders);
+                try {
+                  tokenClient.request(HttpMethod.POST, payload, "/token", headers)
+                    .whenComplete((tokenResponse, tokenError) -> {
+                      if (!org.folio.rest.tools.client.Response.isSuccess(tokenResponse.getCode())) {
+                        asyncResultHandler.handle(Future.succeededFuture(PostSamlCallbackResponse.withPlainInternalServerError(tokenResponse.getError().toString())));
+                      } else {
+                        String candidateAuthToken = null;
+                        if(tokenResponse.getCode() == 200) {
+                          candidateAuthToken = tokenResponse.getHeaders().get(OkapiHeaders.OKAPI_TOKEN_HEADER);
+                        } else { //mod-authtoken v2.x returns 201, with token in JSON response body
+                          try {
+                            candidateAuthToken = tokenResponse.getBody().getString("token");
+                          } catch(Exception e) {
+                            asyncResultHandler.handle(Future.succeededFuture(PostSamlCallbackResponse.withPlainInternalServerError(e.getMessage())));
+                          }
+                        }
+                        final String authToken = candidateAuthToken;
+
+                        final String location = UriBuilder.fromUri(stripesBaseUrl)
+                          .path("sso-landing")
+                          .queryParam("ssoToken", authToken)
+                          .queryParam("fwd", originalUrl.getPath())
+                          .build()
+                          .toString();
+
+                        final String cookie = new NewCookie("ssoToken", authToken, "", originalUrl.getHost(), "", 3600, false).toString();
+
+                        asyncResultHandler.handle(Future.succeededFuture(PostSamlCallbackResponse.withMovedTemporarily(cookie, authToken, location)));
+
+                      }
+                    });
+                } catch (Exception httpClientEx) {
+                  asyncResultHandler.handle(Future.succeededFuture(PostSamlCallbackResponse.withPlainInternalServerError(httpClientEx.getMessage())));
+                }
+              }
+
+            }
+
           }
-        }
-      });
+        });
+
+
+    } catch (Exception ex) {
+      String message = StringUtils.hasText(ex.getMessage()) ? ex.getMessage() : "Unknown error: " + ex.getClass().getName();
+      asyncResultHandler.handle(Future.succeededFuture(PostSamlCallbackResponse.withPlainInternalServerError(message)));
+    }
   }
 
 
@@ -249,6 +401,8 @@ public class SamlAPI implements SamlResource {
               if (configurationEntryStoredEvent.failed()) {
                 asyncResultHandler.handle(Future.succeededFuture(GetSamlRegenerateResponse.withPlainInternalServerError("Cannot persist metadata invalidated flag!")));
               } else {
+                new ConfigChangeNotifier(vertxContext.owner()).publish(OkapiHelper.okapiHeaders(okapiHeaders).getTenant());
+                SpMetadataCache.getInstance().invalidate(OkapiHelper.okapiHeaders(okapiHeaders).getTenant());
                 String metadata = regenerationHandler.result();
 
                 Base64Util.encode(vertxContext, metadata)
@@ -271,6 +425,45 @@ public class SamlAPI implements SamlResource {
       });
   }
 
+  /**
+   * SP metadata for IdPs and federation tooling polling it: served from {@link SpMetadataCache}, {@code 304} if the
+   * poller's copy is current.
+   */
+  @Override
+  public void getSamlMetadata(RoutingContext routingContext, Map<String, String> okapiHeaders,
+                              Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) throws Exception {
+
+    final String tenantId = OkapiHelper.okapiHeaders(okapiHeaders).getTenant();
+
+    findSaml2Client(routingContext, false, false)
+      .setHandler(samlClientHandler -> {
+        if (samlClientHandler.failed()) {
+          log.warn("Cannot load SAML client for metadata", samlClientHandler.cause());
+          asyncResultHandler.handle(Future.succeededFuture(
+            GetSamlMetadataResponse.withPlainInternalServerError("Cannot load SAML client")));
+          return;
+        }
+
+        SamlClientComposite composite = samlClientHandler.result();
+        SpMetadata spMetadata = SpMetadataCache.getInstance().get(tenantId, composite.getConfiguration());
+        if (spMetadata == null) {
+          String metadata = composite.getClient().getServiceProviderMetadataResolver().getMetadata();
+          spMetadata = SpMetadataCache.getInstance().put(tenantId, composite.getConfiguration(), metadata,
+            System.currentTimeMillis());
+        }
+
+        HttpServerRequest request = routingContext.request();
+        String lastModified = SpMetadataCache.httpDate(spMetadata.getLastModified());
+        if (SpMetadataCache.notModified(spMetadata, request.getHeader("If-None-Match"), request.getHeader("If-Modified-Since"))) {
+          asyncResultHandler.handle(Future.succeededFuture(
+            GetSamlMetadataResponse.withNotModified(spMetadata.getEtag(), lastModified)));
+        } else {
+          asyncResultHandler.handle(Future.succeededFuture(
+            GetSamlMetadataResponse.withXmlOK(spMetadata.getEtag(), lastModified, spMetadata.getContent())));
+        }
+      });
+  }
+
   @Override
   public void getSamlConfiguration(RoutingContext rc, Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) throws Exception {
 
@@ -318,6 +511,11 @@ public class SamlAPI implements SamlResource {
                 updateEntries.put(SamlConfiguration.METADATA_INVALIDATED_CODE, "true");
               });
 
+              ConfigEntryUtil.valueChanged(config.getIdpEntityId(), updatedConfig.getIdpEntityId() == null ? "" : updatedConfig.getIdpEntityId(), idpEntityId -> {
+                updateEntries.put(SamlConfiguration.IDP_ENTITY_ID_CODE, idpEntityId);
+                updateEntries.put(SamlConfiguration.METADATA_INVALIDATED_CODE, "true");
+              });
+
               ConfigEntryUtil.valueChanged(config.getSamlBinding(), updatedConfig.getSamlBinding().toString(), samlBindingCode ->
                 updateEntries.put(SamlConfiguration.SAML_BINDING_CODE, samlBindingCode));
 
@@ -349,8 +547,11 @@ public class SamlAPI implements SamlResource {
           asyncResultHandler.handle(Future.succeededFuture(
             PutSamlConfigurationResponse.withPlainInternalServerError(configuratiuonSavedEvent.cause() != null ? configuratiuonSavedEvent.cause().getMessage() : "Cannot save configuration")));
         } else {
+          UserLookupCache.getInstance().invalidate(parsedHeaders.getTenant());
           findSaml2Client(rc, true, true)
             .setHandler(configurationLoadEvent -> {
+              // configuration is saved (and a missing KeyStore generated), other nodes should reload it
+              new ConfigChangeNotifier(rc.vertx()).publish(parsedHeaders.getTenant());
               if (configurationLoadEvent.failed()) {
                 asyncResultHandler.handle(Future.succeededFuture(
                   PutSamlConfigurationResponse.withPlainInternalServerError(configurationLoadEvent.cause() != null ? configurationLoadEvent.cause().getMessage() : "Cannot reload current configuration")));
@@ -467,32 +668,13 @@ public class SamlAPI implements SamlResource {
    */
   private Future<SamlClientComposite> findSaml2Client(RoutingContext routingContext, boolean generateMissingConfig, boolean reloadClient) {
 
-    String tenantId = OkapiHelper.okapiHeaders(routingContext).getTenant();
+    OkapiHeaders parsedHeaders = OkapiHelper.okapiHeaders(routingContext);
+    String tenantId = parsedHeaders.getTenant();
     SamlConfigHolder configHolder = SamlConfigHolder.getInstance();
+    configHolder.putOkapiUrl(tenantId, parsedHeaders.getUrl());
 
-
-    SamlClientComposite clientComposite = configHolder.findClient(tenantId);
-
-    if (clientComposite != null && !reloadClient) {
-      return Future.succeededFuture(clientComposite);
-    } else {
-      if (reloadClient) {
-        configHolder.removeClient(tenantId);
-      }
-
-      Future<SamlClientComposite> result = Future.future();
-      SamlClientLoader.loadFromConfiguration(routingContext, generateMissingConfig)
-        .setHandler(clientResult -> {
-          if (clientResult.failed()) {
-            result.fail(clientResult.cause());
-          } else {
-            SamlClientComposite newClientComposite = clientResult.result();
-            configHolder.putClient(tenantId, newClientComposite);
-            result.complete(newClientComposite);
-          }
-        });
-      return result;
-    }
+    return configHolder.findOrLoadClient(tenantId, reloadClient,
+      () -> SamlClientLoader.loadFromConfiguration(routingContext, generateMissingConfig));
 
   }
 
@@ -510,6 +692,7 @@ public class SamlAPI implements SamlResource {
    */
   private SamlConfig configToDto(SamlConfiguration config) {
     SamlConfig samlConfig = new SamlConfig()
+      .withIdpEntityId(config.getIdpEntityId())
       .withSamlAttribute(config.getSamlAttribute())
       .withUserProperty(config.getUserProperty())
       .withMetadataInvalidated(Boolean.valueOf(config.getMetadataInvalidated()));
@@ -0,0 +1,210 @@
+package org.folio.session;
+
+import io.vertx.core.Vertx;
+import org.folio.util.PropertyUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Remembers the IDs of consumed SAML assertions until they expire, to reject replayed callbacks.
+ * {@link NoopSession} keeps nothing between requests, so pac4j cannot do that.
+ * <p>
+ * IDs are kept in a ring of time buckets by their expiry: an expired bucket is dropped as a whole, without touching
+ * its IDs. Each bucket has a concurrent set and a Bloom filter, so the check of an unknown ID mostly reads a few
+ * bits per bucket and takes no lock. When more than {@code saml.replay.maxEntries} IDs are kept, the bucket expiring
+ * first is dropped early.
+ */
+public class AssertionReplayCache {
+
+  private static final Logger log = LoggerFactory.getLogger(AssertionReplayCache.class);
+
+  public static final String MAX_TTL_PROPERTY = "saml.replay.maxTtl";
+  public static final String BUCKET_WIDTH_PROPERTY = "saml.replay.bucketWidth";
+  public static final String MAX_ENTRIES_PROPERTY = "saml.replay.maxEntries";
+
+  private static final int BLOOM_BITS_PER_ENTRY = 10;
+  private static final int BLOOM_HASHES = 7;
+
+  private static final AssertionReplayCache instance = new AssertionReplayCache(
+    PropertyUtil.getLong(MAX_TTL_PROPERTY, 3600000L),
+    PropertyUtil.getLong(BUCKET_WIDTH_PROPERTY, 60000L),
+    PropertyUtil.getInt(MAX_ENTRIES_PROPERTY, 1000000));
+
+  private final long maxTtl;
+  private final long bucketWidth;
+  private final int maxEntries;
+  private final int bloomBits;
+  private final AtomicReferenceArray<Bucket> buckets;
+  private final AtomicInteger size = new AtomicInteger();
+
+  AssertionReplayCache(long maxTtl, long bucketWidth, int maxEntries) {
+    this.maxTtl = maxTtl;
+    this.bucketWidth = Math.max(1, bucketWidth);
+    this.maxEntries = maxEntries;
+    int bucketCount = (int) ((maxTtl + this.bucketWidth - 1) / this.bucketWidth) + 1;
+    this.buckets = new AtomicReferenceArray<>(bucketCount);
+    this.bloomBits = Math.max(64, (int) Math.min(1L << 30, (long) maxEntries * BLOOM_BITS_PER_ENTRY / bucketCount));
+  }
+
+  public static AssertionReplayCache getInstance() {
+    return instance;
+  }
+
+  public void start(Vertx vertx) {
+    vertx.setPeriodic(bucketWidth, timerId -> purge(System.currentTimeMillis()));
+  }
+
+  /**
+   * Records the IDs as consumed until {@code expiresAt}, capped by {@code saml.replay.maxTtl}.
+   *
+   * @return false if one of them was consumed before, i.e. the response is replayed
+   */
+  public boolean consume(String tenantId, Collection<String> ids, long expiresAt) {
+    return consume(tenantId, ids, expiresAt, System.currentTimeMillis());
+  }
+
+  boolean consume(String tenantId, Collection<String> ids, long expiresAt, long now) {
+    long epoch = Math.min(expiresAt, now + maxTtl) / bucketWidth;
+    long currentEpoch = now / bucketWidth;
+    if (epoch < currentEpoch) {
+      epoch = currentEpoch; // expired already, keep it for a bucket anyway
+    }
+    Bucket target = bucket(epoch);
+
+    boolean fresh = true;
+    for (String id : ids) {
+      if (id == null) {
+        continue;
+      }
+      String key = tenantId + "\n" + id;
+      if (seenElsewhere(key, target, currentEpoch) || !target.add(key)) {
+        fresh = false;
+      } else if (size.incrementAndGet() > maxEntries) {
+        dropOldest(now);
+      }
+    }
+    return fresh;
+  }
+
+  /**
+   * Drops the expired buckets.
+   */
+  void purge(long now) {
+    long currentEpoch = now / bucketWidth;
+    for (int i = 0; i < buckets.length(); i++) {
+      Bucket bucket = buckets.get(i);
+      if (bucket != null && bucket.epoch < currentEpoch && buckets.compareAndSet(i, bucket, null)) {
+        size.addAndGet(-bucket.size());
+      }
+    }
+  }
+
+  int size() {
+    return size.get();
+  }
+
+  private boolean seenElsewhere(String key, Bucket target, long currentEpoch) {
+    int h1 = key.hashCode();
+    int h2 = mix(h1);
+    for (int i = 0; i < buckets.length(); i++) {
+      Bucket bucket = buckets.get(i);
+      if (bucket != null && bucket != target && bucket.epoch >= currentEpoch && bucket.contains(key, h1, h2)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private Bucket bucket(long epoch) {
+    int index = (int) (epoch % buckets.length());
+    while (true) {
+      Bucket bucket = buckets.get(index);
+      if (bucket != null && bucket.epoch >= epoch) {
+        return bucket; // a later epoch only keeps the IDs longer
+      }
+      // the slot holds an expired bucket or none
+      Bucket created = new Bucket(epoch, bloomBits);
+      if (buckets.compareAndSet(index, bucket, created)) {
+        if (bucket != null) {
+          size.addAndGet(-bucket.size());
+        }
+        return created;
+      }
+    }
+  }
+
+  private void dropOldest(long now) {
+    purge(now);
+    if (size.get() <= maxEntries) {
+      return;
+    }
+    int oldest = -1;
+    for (int i = 0; i < buckets.length(); i++) {
+      Bucket bucket = buckets.get(i);
+      if (bucket != null && (oldest < 0 || bucket.epoch < buckets.get(oldest).epoch)) {
+        oldest = i;
+      }
+    }
+    Bucket bucket = oldest < 0 ? null : buckets.get(oldest);
+    if (bucket != null && buckets.compareAndSet(oldest, bucket, null)) {
+      size.addAndGet(-bucket.size());
+      log.warn("Replay cache is full (" + maxEntries + " IDs), dropped IDs expiring at "
+        + (bucket.epoch + 1) * bucketWidth + " early");
+    }
+  }
+
+  private static int mix(int h) {
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    return h ^ (h >>> 16);
+  }
+
+  private static class Bucket {
+
+    final long epoch;
+    private final Set<String> ids = ConcurrentHashMap.newKeySet();
+    private final AtomicLongArray bloom;
+    private final int bits;
+
+    Bucket(long epoch, int bits) {
+      this.epoch = epoch;
+      this.bits = bits;
+      this.bloom = new AtomicLongArray((bits + 63) / 64);
+    }
+
+    boolean add(String key) {
+      int h1 = key.hashCode();
+      int h2 = mix(h1);
+      // set the bits first, a concurrent check may miss the ID but never finds the bits without it afterwards
+      for (int i = 0; i < BLOOM_HASHES; i++) {
+        int bit = Math.floorMod(h1 + i * h2, bits);
+        long mask = 1L << (bit & 63);
+        bloom.getAndAccumulate(bit >>> 6, mask, (current, add) -> current | add);
+      }
+      return ids.add(key);
+    }
+
+    boolean contains(String key, int h1, int h2) {
+      for (int i = 0; i < BLOOM_HASHES; i++) {
+        int bit = Math.floorMod(h1 + i * h2, bits);
+        if ((bloom.get(bit >>> 6) & (1L << (bit & 63))) == 0) {
+          return false;
+        }
+      }
+      return ids.contains(key);
+    }
+
+    int size() {
+      return ids.size();
+    }
+  }
+}
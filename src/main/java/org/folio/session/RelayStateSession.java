@@ -0,0 +1,29 @@
+package org.folio.session;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Session of a single login request, only carrying the RelayState pac4j reads when it builds the AuthnRequest.
+ */
+public class RelayStateSession extends NoopSession {
+
+  public static final String RELAY_STATE_ATTRIBUTE = "samlRelayState";
+
+  private final String relayState;
+
+  public RelayStateSession(String relayState) {
+    this.relayState = relayState;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T get(String key) {
+    return RELAY_STATE_ATTRIBUTE.equals(key) ? (T) relayState : null;
+  }
+
+  @Override
+  public Map<String, Object> data() {
+    return Collections.singletonMap(RELAY_STATE_ATTRIBUTE, relayState);
+  }
+}
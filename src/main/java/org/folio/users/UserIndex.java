@@ -0,0 +1,308 @@
+package org.folio.users;
+
+import org.folio.users.model.SamlUser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.UUID;
+
+/**
+ * Compact index of one tenant's users: value of the user property to (id, username, active). Not thread safe,
+ * callers synchronize.
+ * <p>
+ * Records are appended to primitive arrays: the property value and the username as UTF-8 in one byte arena, the id
+ * as two longs, the active flag in a {@link BitSet}. Two open addressing tables map the property value and the id
+ * to the latest record. An updated user gets a new record and its old one is marked removed; removed records are
+ * dropped when the arrays are rebuilt. A property value shared by more than one user is marked ambiguous and never
+ * found, so the caller falls back to mod-users, which reports the duplicate.
+ */
+public class UserIndex {
+
+  private static final int INITIAL_RECORDS = 1024;
+
+  private byte[] arena = new byte[INITIAL_RECORDS * 32];
+  private int arenaSize;
+
+  private int[] offsets = new int[INITIAL_RECORDS];
+  private long[] idMost = new long[INITIAL_RECORDS];
+  private long[] idLeast = new long[INITIAL_RECORDS];
+  private int records;
+
+  private BitSet active = new BitSet();
+  private BitSet removed = new BitSet();
+  private int removedCount;
+
+  // record + 1, 0 is an empty slot
+  private int[] keyTable = new int[INITIAL_RECORDS * 2];
+  private int[] idTable = new int[INITIAL_RECORDS * 2];
+  private BitSet ambiguousKeys = new BitSet();
+
+  /**
+   * Adds the user or replaces its previous record. Users without a UUID id are not indexed, a user without property
+   * value or username loses its previous record.
+   *
+   * @return false if the user cannot be indexed
+   */
+  public boolean put(String key, SamlUser user) {
+    if (user.getId() == null) {
+      return false;
+    }
+    UUID id;
+    try {
+      id = UUID.fromString(user.getId());
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+    if (key == null || user.getUsername() == null) {
+      remove(id);
+      return false;
+    }
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    byte[] usernameBytes = user.getUsername().getBytes(StandardCharsets.UTF_8);
+
+    int previous = findId(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    if (previous >= 0 && !removed.get(previous)) {
+      if (active.get(previous) == user.isActive() && keyEquals(previous, keyBytes, 0, keyBytes.length)
+        && usernameEquals(previous, usernameBytes)) {
+        return true;
+      }
+      removed.set(previous);
+      removedCount++;
+    }
+
+    if (records == offsets.length || (records + 1) * 2 > keyTable.length) {
+      rebuild();
+    }
+    int record = append(keyBytes, usernameBytes, id.getMostSignificantBits(), id.getLeastSignificantBits(), user.isActive());
+    index(record);
+    return true;
+  }
+
+  private void remove(UUID id) {
+    int previous = findId(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    if (previous >= 0 && !removed.get(previous)) {
+      removed.set(previous);
+      removedCount++;
+    }
+  }
+
+  /**
+   * @return the only user with this property value, null if there is none or more than one
+   */
+  public SamlUser find(String key) {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    int slot = keySlot(keyBytes, 0, keyBytes.length);
+    int record = keyTable[slot] - 1;
+    if (record < 0 || removed.get(record) || ambiguousKeys.get(slot)) {
+      return null;
+    }
+    int position = offsets[record];
+    position = skip(position);
+    int usernameLength = readLength(position);
+    String username = new String(arena, position + lengthSize(usernameLength), usernameLength, StandardCharsets.UTF_8);
+    return new SamlUser(new UUID(idMost[record], idLeast[record]).toString(), username, active.get(record));
+  }
+
+  /**
+   * @return number of indexed users
+   */
+  public int size() {
+    return records - removedCount;
+  }
+
+  /**
+   * @return approximate heap used by the index
+   */
+  public long getMemoryBytes() {
+    return arena.length + 4L * offsets.length + 16L * idMost.length + 4L * (keyTable.length + idTable.length)
+      + (active.size() + removed.size() + ambiguousKeys.size()) / 8;
+  }
+
+  private int append(byte[] keyBytes, byte[] usernameBytes, long most, long least, boolean isActive) {
+    int needed = lengthSize(keyBytes.length) + keyBytes.length + lengthSize(usernameBytes.length) + usernameBytes.length;
+    if (arenaSize + needed > arena.length) {
+      arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + needed));
+    }
+    int record = records++;
+    offsets[record] = arenaSize;
+    arenaSize = writeBytes(writeBytes(arenaSize, keyBytes), usernameBytes);
+    idMost[record] = most;
+    idLeast[record] = least;
+    active.set(record, isActive);
+    return record;
+  }
+
+  private void index(int record) {
+    int position = offsets[record];
+    int keyLength = readLength(position);
+    int slot = keySlot(arena, position + lengthSize(keyLength), keyLength);
+    int current = keyTable[slot] - 1;
+    if (current >= 0 && !removed.get(current)
+      && (idMost[current] != idMost[record] || idLeast[current] != idLeast[record])) {
+      ambiguousKeys.set(slot);
+    }
+    keyTable[slot] = record + 1;
+    idTable[idSlot(idMost[record], idLeast[record])] = record + 1;
+  }
+
+  /**
+   * Drops removed records and resizes the arrays and tables for the live ones.
+   */
+  private void rebuild() {
+    int live = records - removedCount;
+    int capacity = Math.max(INITIAL_RECORDS, Integer.highestOneBit(live + live / 2 + 1) << 1);
+
+    byte[] oldArena = arena;
+    int[] oldOffsets = offsets;
+    long[] oldMost = idMost;
+    long[] oldLeast = idLeast;
+    BitSet oldActive = active;
+    BitSet oldRemoved = removed;
+    int oldRecords = records;
+
+    arena = new byte[Math.max(INITIAL_RECORDS * 32, arenaSize)];
+    arenaSize = 0;
+    offsets = new int[capacity];
+    idMost = new long[capacity];
+    idLeast = new long[capacity];
+    records = 0;
+    active = new BitSet();
+    removed = new BitSet();
+    removedCount = 0;
+    keyTable = new int[capacity * 2];
+    idTable = new int[capacity * 2];
+    ambiguousKeys = new BitSet();
+
+    for (int i = 0; i < oldRecords; i++) {
+      if (oldRemoved.get(i)) {
+        continue;
+      }
+      int start = oldOffsets[i];
+      int end = skip(oldArena, skip(oldArena, start));
+      if (arenaSize + end - start > arena.length) {
+        arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + end - start));
+      }
+      System.arraycopy(oldArena, start, arena, arenaSize, end - start);
+      int record = records++;
+      offsets[record] = arenaSize;
+      arenaSize += end - start;
+      idMost[record] = oldMost[i];
+      idLeast[record] = oldLeast[i];
+      active.set(record, oldActive.get(i));
+      index(record);
+    }
+  }
+
+  private int findId(long most, long least) {
+    return idTable[idSlot(most, least)] - 1;
+  }
+
+  private int idSlot(long most, long least) {
+    int mask = idTable.length - 1;
+    int slot = mix(most ^ least * 31) & mask;
+    while (idTable[slot] != 0) {
+      int record = idTable[slot] - 1;
+      if (idMost[record] == most && idLeast[record] == least) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private int keySlot(byte[] bytes, int offset, int length) {
+    int mask = keyTable.length - 1;
+    int slot = hash(bytes, offset, length) & mask;
+    while (keyTable[slot] != 0) {
+      if (keyEquals(keyTable[slot] - 1, bytes, offset, length)) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private boolean keyEquals(int record, byte[] bytes, int offset, int length) {
+    return bytesEqual(offsets[record], bytes, offset, length);
+  }
+
+  private boolean usernameEquals(int record, byte[] usernameBytes) {
+    return bytesEqual(skip(offsets[record]), usernameBytes, 0, usernameBytes.length);
+  }
+
+  private boolean bytesEqual(int position, byte[] bytes, int offset, int length) {
+    if (readLength(position) != length) {
+      return false;
+    }
+    int start = position + lengthSize(length);
+    for (int i = 0; i < length; i++) {
+      if (arena[start + i] != bytes[offset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // variable length encoding of lengths, 7 bits a byte
+
+  private int writeBytes(int position, byte[] bytes) {
+    int length = bytes.length;
+    while (length >= 0x80) {
+      arena[position++] = (byte) (length | 0x80);
+      length >>>= 7;
+    }
+    arena[position++] = (byte) length;
+    System.arraycopy(bytes, 0, arena, position, bytes.length);
+    return position + bytes.length;
+  }
+
+  private int readLength(int position) {
+    return readLength(arena, position);
+  }
+
+  private static int readLength(byte[] bytes, int position) {
+    int length = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = bytes[position++];
+      length |= (b & 0x7f) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return length;
+  }
+
+  private int skip(int position) {
+    return skip(arena, position);
+  }
+
+  private static int skip(byte[] bytes, int position) {
+    int length = readLength(bytes, position);
+    return position + lengthSize(length) + length;
+  }
+
+  private static int lengthSize(int length) {
+    int size = 1;
+    while (length >= 0x80) {
+      length >>>= 7;
+      size++;
+    }
+    return size;
+  }
+
+  private static int hash(byte[] bytes, int offset, int length) {
+    int h = 0x811c9dc5;
+    for (int i = offset; i < offset + length; i++) {
+      h = (h ^ bytes[i]) * 0x01000193;
+    }
+    return h ^ (h >>> 16);
+  }
+
+  private static int mix(long value) {
+    value ^= value >>> 33;
+    value *= 0xff51afd7ed558ccdL;
+    value ^= value >>> 33;
+    return (int) value;
+  }
+}
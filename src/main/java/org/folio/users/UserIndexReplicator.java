@@ -0,0 +1,219 @@
+package org.folio.users;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.folio.config.SamlConfigHolder;
+import org.folio.users.model.SamlUser;
+import org.folio.util.PropertyUtil;
+import org.folio.util.TokenRejectedException;
+import org.folio.util.model.OkapiHeaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps a local {@link UserIndex} of the tenants logging in via SAML, so the callback can resolve users without
+ * searching mod-users by the SAML attribute; it still confirms the found user by id and attribute value, as
+ * deletions are only seen by the next reload. The index of a tenant is built by a bulk load of all users, paged by id, on its first
+ * callback, and then kept current by polling the users updated since the last poll ({@code metadata.updatedDate}).
+ * Deleted users are not visible to the polls, the index is rebuilt from scratch every
+ * {@code saml.users.index.reloadInterval}. Polls and reloads run with the module's token, see
+ * {@link SamlConfigHolder#findOkapiHeaders(String)}; the first load uses the headers of the callback.
+ * <p>
+ * Disabled by default, enable it with {@code saml.users.index.enabled} for tenants with many users.
+ */
+public class UserIndexReplicator {
+
+  private static final Logger log = LoggerFactory.getLogger(UserIndexReplicator.class);
+
+  public static final String ENABLED_PROPERTY = "saml.users.index.enabled";
+  public static final String PAGE_SIZE_PROPERTY = "saml.users.index.pageSize";
+  public static final String POLL_INTERVAL_PROPERTY = "saml.users.index.pollInterval";
+  public static final String RELOAD_INTERVAL_PROPERTY = "saml.users.index.reloadInterval";
+
+  private static final UserIndexReplicator instance = new UserIndexReplicator(
+    PropertyUtil.getBoolean(ENABLED_PROPERTY, false),
+    PropertyUtil.getInt(PAGE_SIZE_PROPERTY, 1000),
+    PropertyUtil.getLong(POLL_INTERVAL_PROPERTY, 60000L),
+    PropertyUtil.getLong(RELOAD_INTERVAL_PROPERTY, 86400000L));
+
+  private final ConcurrentMap<String, TenantIndex> tenants = new ConcurrentHashMap<>();
+
+  private final boolean enabled;
+  private final int pageSize;
+  private final long pollInterval;
+  private final long reloadInterval;
+
+  UserIndexReplicator(boolean enabled, int pageSize, long pollInterval, long reloadInterval) {
+    this.enabled = enabled;
+    this.pageSize = pageSize;
+    this.pollInterval = pollInterval;
+    this.reloadInterval = reloadInterval;
+  }
+
+  public static UserIndexReplicator getInstance() {
+    return instance;
+  }
+
+  public void start(Vertx vertx) {
+    if (enabled && pollInterval > 0) {
+      vertx.setPeriodic(pollInterval, timerId -> pollAll());
+    }
+  }
+
+  /**
+   * Looks the user up in the index of the tenant, starts building the index if there is none for this user property.
+   *
+   * @return the user, null if the index is not loaded yet, the value is unknown or ambiguous
+   */
+  public SamlUser find(OkapiHeaders okapiHeaders, String userProperty, String value) {
+    if (!enabled) {
+      return null;
+    }
+    TenantIndex tenant = tenants.compute(okapiHeaders.getTenant(), (key, current) ->
+      current != null && current.userProperty.equals(userProperty) ? current : new TenantIndex(userProperty));
+
+    if (tenant.index == null && System.currentTimeMillis() >= tenant.nextAttempt && tenant.busy.compareAndSet(false, true)) {
+      reload(okapiHeaders, tenant);
+    }
+    return tenant.find(value);
+  }
+
+  private void pollAll() {
+    long now = System.currentTimeMillis();
+    tenants.forEach((tenantId, tenant) -> {
+      OkapiHeaders okapiHeaders = SamlConfigHolder.getInstance().findOkapiHeaders(tenantId);
+      if (okapiHeaders == null || tenant.index == null || !tenant.busy.compareAndSet(false, true)) {
+        return;
+      }
+      if (reloadInterval > 0 && now - tenant.loadedAt >= reloadInterval) {
+        reload(okapiHeaders, tenant);
+      } else {
+        poll(okapiHeaders, tenant);
+      }
+    });
+  }
+
+  private void reload(OkapiHeaders okapiHeaders, TenantIndex tenant) {
+    long started = System.currentTimeMillis();
+    UserIndex index = new UserIndex();
+    Future<String> loaded = Future.future();
+    loadPage(okapiHeaders, "cql.allRecords=1", null, tenant.userProperty, index, null, loaded);
+    loaded.setHandler(done -> {
+      if (done.succeeded()) {
+        tenant.index = index;
+        tenant.updatedSince = done.result();
+        tenant.loadedAt = started;
+        log.info("Indexed " + index.size() + " users of tenant " + okapiHeaders.getTenant() + " in "
+          + (System.currentTimeMillis() - started) + " ms, " + index.getMemoryBytes() + " bytes");
+      } else {
+        tenant.nextAttempt = System.currentTimeMillis() + pollInterval;
+        log.warn("Cannot index users of tenant " + okapiHeaders.getTenant() + ": " + done.cause().getMessage());
+        rejected(okapiHeaders, done.cause());
+      }
+      tenant.busy.set(false);
+    });
+  }
+
+  private void poll(OkapiHeaders okapiHeaders, TenantIndex tenant) {
+    Future<String> polled = Future.future();
+    String since = tenant.updatedSince;
+    String cql = since == null ? "cql.allRecords=1" : "metadata.updatedDate>=\"" + since + "\"";
+    loadPage(okapiHeaders, cql, null, tenant.userProperty, tenant.index, since, polled);
+    polled.setHandler(done -> {
+      if (done.succeeded()) {
+        tenant.updatedSince = done.result();
+      } else {
+        log.warn("Cannot poll updated users of tenant " + okapiHeaders.getTenant() + ": " + done.cause().getMessage());
+        rejected(okapiHeaders, done.cause());
+      }
+      tenant.busy.set(false);
+    });
+  }
+
+  private static void rejected(OkapiHeaders okapiHeaders, Throwable cause) {
+    if (cause instanceof TokenRejectedException) {
+      SamlConfigHolder.getInstance().rejectOkapiHeaders(okapiHeaders.getTenant(), cause);
+    }
+  }
+
+  /**
+   * Loads the users matching {@code cql} page by page, keyset paged by id, into the index.
+   *
+   * @param done completed with the latest {@code metadata.updatedDate} seen
+   */
+  private void loadPage(OkapiHeaders okapiHeaders, String cql, String afterId, String userProperty, UserIndex index,
+                        String updatedSince, Future<String> done) {
+
+    String query = (afterId == null ? cql : cql + " and id>\"" + afterId + "\"") + " sortBy id";
+    UsersClient.getUsers(okapiHeaders, query, pageSize).setHandler(page -> {
+      if (page.failed()) {
+        done.fail(page.cause());
+        return;
+      }
+      JsonArray users = page.result();
+      String latest = updatedSince;
+      String lastId = null;
+      synchronized (index) {
+        for (int i = 0; i < users.size(); i++) {
+          JsonObject user = users.getJsonObject(i);
+          lastId = user.getString("id");
+          index.put(propertyValue(user, userProperty), SamlUser.fromJson(user));
+          String updated = user.getJsonObject("metadata", new JsonObject()).getString("updatedDate");
+          // ISO 8601 timestamps of the same format compare in time order
+          if (updated != null && (latest == null || updated.compareTo(latest) > 0)) {
+            latest = updated;
+          }
+        }
+      }
+      if (users.size() < pageSize || lastId == null) {
+        done.complete(latest);
+      } else {
+        loadPage(okapiHeaders, cql, lastId, userProperty, index, latest, done);
+      }
+    });
+  }
+
+  /**
+   * @return the value of a (dotted) property of the user record as text, null if missing or not a simple value
+   */
+  static String propertyValue(JsonObject user, String userProperty) {
+    Object value = user;
+    for (String name : userProperty.split("\\.")) {
+      if (!(value instanceof JsonObject)) {
+        return null;
+      }
+      value = ((JsonObject) value).getValue(name);
+    }
+    return value == null || value instanceof JsonObject || value instanceof JsonArray ? null : value.toString();
+  }
+
+  private static class TenantIndex {
+
+    final String userProperty;
+    final AtomicBoolean busy = new AtomicBoolean();
+    volatile UserIndex index;
+    volatile String updatedSince;
+    volatile long loadedAt;
+    volatile long nextAttempt;
+
+    TenantIndex(String userProperty) {
+      this.userProperty = userProperty;
+    }
+
+    SamlUser find(String value) {
+      UserIndex current = index;
+      if (current == null) {
+        return null;
+      }
+      synchronized (current) {
+        return current.find(value);
+      }
+    }
+  }
+}
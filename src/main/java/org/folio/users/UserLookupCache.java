@@ -0,0 +1,131 @@
+package org.folio.users;
+
+import io.vertx.core.Future;
+import org.folio.users.model.SamlUser;
+import org.folio.util.PropertyUtil;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Short-lived cache of user lookups of the SAML callback, per tenant: (user property, SAML attribute value) to the
+ * matching user. "No user found" is remembered for a shorter time, ambiguous matches and failures are not cached.
+ * <p>
+ * A tenant's entries are dropped when its {@code user.property} changes.
+ */
+public class UserLookupCache {
+
+  public static final String TTL_PROPERTY = "saml.users.cacheTtl";
+  public static final String NEGATIVE_TTL_PROPERTY = "saml.users.negativeCacheTtl";
+  public static final String MAX_ENTRIES_PROPERTY = "saml.users.cacheSize";
+
+  private static final UserLookupCache instance = new UserLookupCache(
+    PropertyUtil.getLong(TTL_PROPERTY, 60000L),
+    PropertyUtil.getLong(NEGATIVE_TTL_PROPERTY, 5000L),
+    PropertyUtil.getInt(MAX_ENTRIES_PROPERTY, 10000));
+
+  private final ConcurrentMap<String, TenantUsers> tenants = new ConcurrentHashMap<>();
+
+  private final long ttl;
+  private final long negativeTtl;
+  private final int maxEntries;
+
+  UserLookupCache(long ttl, long negativeTtl, int maxEntries) {
+    this.ttl = ttl;
+    this.negativeTtl = negativeTtl;
+    this.maxEntries = maxEntries;
+  }
+
+  public static UserLookupCache getInstance() {
+    return instance;
+  }
+
+  /**
+   * @param loader queries mod-users on a miss
+   * @return Future of the users matching the value, from cache if possible
+   */
+  public Future<List<SamlUser>> findUsers(String tenantId, String userProperty, String value,
+                                          Supplier<Future<List<SamlUser>>> loader) {
+
+    if (ttl <= 0 && negativeTtl <= 0) {
+      return loader.get();
+    }
+
+    TenantUsers users = tenants.compute(tenantId, (key, current) ->
+      current != null && current.userProperty.equals(userProperty) ? current : new TenantUsers(userProperty, maxEntries));
+
+    List<SamlUser> cached = users.get(value, System.currentTimeMillis());
+    if (cached != null) {
+      return Future.succeededFuture(cached);
+    }
+
+    Future<List<SamlUser>> result = Future.future();
+    loader.get().setHandler(loaded -> {
+      if (loaded.succeeded()) {
+        List<SamlUser> found = loaded.result();
+        long now = System.currentTimeMillis();
+        if (found.size() == 1 && ttl > 0) {
+          users.put(value, found, now + ttl);
+        } else if (found.isEmpty() && negativeTtl > 0) {
+          users.put(value, Collections.emptyList(), now + negativeTtl);
+        }
+      }
+      result.handle(loaded);
+    });
+    return result;
+  }
+
+  /**
+   * Forget every lookup of the tenant, e.g. after its configuration changed.
+   */
+  public void invalidate(String tenantId) {
+    tenants.remove(tenantId);
+  }
+
+  private static class TenantUsers {
+
+    final String userProperty;
+    private final Map<String, CachedLookup> lookups; // access order, eldest evicted
+
+    TenantUsers(String userProperty, int maxEntries) {
+      this.userProperty = userProperty;
+      this.lookups = new LinkedHashMap<String, CachedLookup>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedLookup> eldest) {
+          return maxEntries > 0 && size() > maxEntries;
+        }
+      };
+    }
+
+    synchronized List<SamlUser> get(String value, long now) {
+      CachedLookup lookup = lookups.get(value);
+      if (lookup == null) {
+        return null;
+      }
+      if (now >= lookup.expiresAt) {
+        lookups.remove(value);
+        return null;
+      }
+      return lookup.users;
+    }
+
+    synchronized void put(String value, List<SamlUser> users, long expiresAt) {
+      lookups.put(value, new CachedLookup(users, expiresAt));
+    }
+  }
+
+  private static class CachedLookup {
+    final List<SamlUser> users;
+    final long expiresAt;
+
+    CachedLookup(List<SamlUser> users, long expiresAt) {
+      this.users = users;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
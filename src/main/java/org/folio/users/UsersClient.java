@@ -0,0 +1,86 @@
+package org.folio.users;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import org.folio.rest.tools.client.Response;
+import org.folio.users.model.SamlUser;
+import org.folio.util.OkapiClientPool;
+import org.folio.util.TokenRejectedException;
+import org.folio.util.model.OkapiHeaders;
+
+import javax.ws.rs.core.UriBuilder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Find users in mod-users via Okapi
+ */
+public class UsersClient {
+
+  public static final String USERS_ENDPOINT_URL = "/users";
+
+  // prevent instantiating
+  private UsersClient() {
+  }
+
+  /**
+   * @return Future of the users whose {@code userProperty} equals {@code value}, at most two: more than one match
+   * is an error anyway
+   */
+  public static Future<List<SamlUser>> findUsers(OkapiHeaders okapiHeaders, String userProperty, String value) {
+    return getUsers(okapiHeaders, userProperty + "==\"" + value + "\"", 2).map(UsersClient::toUsers);
+  }
+
+  /**
+   * Confirms a user found in a local index: a primary key lookup that also matches the property, so a user whose
+   * property changed since it was indexed is not found.
+   *
+   * @return Future of the user with this id if its {@code userProperty} still equals {@code value}, else empty
+   */
+  public static Future<List<SamlUser>> findUser(OkapiHeaders okapiHeaders, String id, String userProperty, String value) {
+    return getUsers(okapiHeaders, "id==\"" + id + "\" and " + userProperty + "==\"" + value + "\"", 2)
+      .map(UsersClient::toUsers);
+  }
+
+  private static List<SamlUser> toUsers(JsonArray users) {
+    List<SamlUser> found = new ArrayList<>(users.size());
+    for (int i = 0; i < users.size(); i++) {
+      found.add(SamlUser.fromJson(users.getJsonObject(i)));
+    }
+    return found;
+  }
+
+  /**
+   * @return Future of the user records matching the CQL query, at most {@code limit}
+   */
+  public static Future<JsonArray> getUsers(OkapiHeaders okapiHeaders, String cql, int limit) {
+
+    Future<JsonArray> result = Future.future();
+
+    final String userQuery = UriBuilder.fromPath(USERS_ENDPOINT_URL)
+      .queryParam("query", cql)
+      .queryParam("limit", limit)
+      .build()
+      .toString();
+
+    try {
+      OkapiClientPool.getClient(okapiHeaders).request(userQuery, OkapiClientPool.headers(okapiHeaders))
+        .whenComplete((userQueryResponse, throwable) -> {
+          if (userQueryResponse == null) {
+            result.fail(throwable != null ? throwable : new IllegalStateException("Cannot query users"));
+          } else if (TokenRejectedException.isRejection(userQueryResponse.getCode())) {
+            result.fail(new TokenRejectedException(userQueryResponse.getCode(),
+              "Cannot query users, HTTP status " + userQueryResponse.getCode()));
+          } else if (!Response.isSuccess(userQueryResponse.getCode())) {
+            result.fail(String.valueOf(userQueryResponse.getError()));
+          } else {
+            result.complete(userQueryResponse.getBody().getJsonArray("users", new JsonArray()));
+          }
+        });
+    } catch (Exception e) {
+      result.fail(e);
+    }
+
+    return result;
+  }
+}
@@ -0,0 +1,35 @@
+package org.folio.users.model;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * The fields of a mod-users record needed to log a user in.
+ */
+public class SamlUser {
+
+  private final String id;
+  private final String username;
+  private final boolean active;
+
+  public SamlUser(String id, String username, boolean active) {
+    this.id = id;
+    this.username = username;
+    this.active = active;
+  }
+
+  public static SamlUser fromJson(JsonObject user) {
+    return new SamlUser(user.getString("id"), user.getString("username"), user.getBoolean("active", false));
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public boolean isActive() {
+    return active;
+  }
+}
@@ -0,0 +1,163 @@
+package org.folio.util;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.Shareable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Named Vert.x worker pool with a bounded queue: when {@code poolSize + queueSize} tasks are already waiting or
+ * running, new tasks are rejected right away with {@link RejectedExecutionException}, instead of queueing
+ * indefinitely.
+ * <p>
+ * The pool belongs to the Vert.x instance and the context that created it. It is {@link Shareable}, so it can be
+ * kept in the local shared data of its Vert.x instance.
+ */
+public class BoundedWorkerExecutor implements Shareable {
+
+  private static final Logger log = LoggerFactory.getLogger(BoundedWorkerExecutor.class);
+
+  private final Vertx vertx;
+  private final String name;
+  private final WorkerExecutor executor;
+  private final int poolSize;
+  private final int queueSize;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final LongAdder executed = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder totalWaitNanos = new LongAdder();
+  private final AtomicLong maxWaitNanos = new AtomicLong();
+  private final AtomicLong statisticsTimer = new AtomicLong(-1);
+
+  public BoundedWorkerExecutor(Vertx vertx, String name, int poolSize, int queueSize) {
+    this.vertx = vertx;
+    this.name = name;
+    this.poolSize = Math.max(1, poolSize);
+    this.queueSize = Math.max(0, queueSize);
+    this.executor = vertx.createSharedWorkerExecutor(name, this.poolSize);
+  }
+
+  /**
+   * @param blockingCode run on the pool, unordered
+   * @return Future of the result, failed with {@link RejectedExecutionException} if the queue is full
+   */
+  public <T> Future<T> submit(Handler<Future<T>> blockingCode) {
+    if (inFlight.incrementAndGet() > poolSize + queueSize) {
+      inFlight.decrementAndGet();
+      rejected.increment();
+      log.warn(name + " queue is full (" + queueSize + " waiting), rejecting task");
+      return Future.failedFuture(new RejectedExecutionException(name + " is overloaded"));
+    }
+
+    long submitted = System.nanoTime();
+    Future<T> result = Future.future();
+    try {
+      executor.executeBlocking((Future<T> future) -> {
+        recordWait(System.nanoTime() - submitted);
+        blockingCode.handle(future);
+      }, false, done -> {
+        inFlight.decrementAndGet();
+        executed.increment();
+        result.handle(done);
+      });
+    } catch (RuntimeException e) {
+      // e.g. the executor was closed with the context that created it
+      inFlight.decrementAndGet();
+      log.warn(name + " cannot run task: " + e.getMessage());
+      return Future.failedFuture(e);
+    }
+    return result;
+  }
+
+  private void recordWait(long waitNanos) {
+    totalWaitNanos.add(waitNanos);
+    maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    if (waitNanos > TimeUnit.SECONDS.toNanos(1)) {
+      log.warn(name + " task waited " + TimeUnit.NANOSECONDS.toMillis(waitNanos) + " ms for a worker");
+    }
+  }
+
+  /**
+   * @return tasks waiting for a worker
+   */
+  public int getQueueDepth() {
+    return Math.max(0, inFlight.get() - poolSize);
+  }
+
+  /**
+   * @return tasks waiting or running
+   */
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  public long getRejected() {
+    return rejected.sum();
+  }
+
+  /**
+   * @return average time tasks spent in the queue, in milliseconds
+   */
+  public double getAverageWaitMillis() {
+    long count = executed.sum();
+    return count == 0 ? 0 : totalWaitNanos.sum() / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  public long getMaxWaitMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+  }
+
+  public JsonObject getStatistics() {
+    return new JsonObject()
+      .put("name", name)
+      .put("poolSize", poolSize)
+      .put("queueSize", queueSize)
+      .put("queueDepth", getQueueDepth())
+      .put("inFlight", getInFlight())
+      .put("executed", executed.sum())
+      .put("rejected", getRejected())
+      .put("averageWaitMillis", getAverageWaitMillis())
+      .put("maxWaitMillis", getMaxWaitMillis());
+  }
+
+  /**
+   * Logs the statistics if there was any work since startup.
+   */
+  public void logStatistics() {
+    if (executed.sum() > 0 || rejected.sum() > 0) {
+      log.info("Worker pool statistics: " + getStatistics().encode());
+    }
+  }
+
+  /**
+   * Logs the statistics every {@code interval} milliseconds until the pool is closed.
+   */
+  public void logStatisticsEvery(long interval) {
+    cancelTimer(statisticsTimer.getAndSet(vertx.setPeriodic(interval, timerId -> logStatistics())));
+  }
+
+  /**
+   * Closes the pool and stops logging its statistics.
+   */
+  public void close() {
+    cancelTimer(statisticsTimer.getAndSet(-1));
+    executor.close();
+  }
+
+  private void cancelTimer(long timerId) {
+    if (timerId >= 0) {
+      vertx.cancelTimer(timerId);
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package org.folio.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Key pairs of new SP KeyStores, generated ahead by a low priority background thread: onboarding a tenant takes a
+ * ready one instead of spending up to seconds of CPU. At most {@code saml.keys.poolSize} pairs are kept, an empty
+ * pool falls back to generating on the caller's thread.
+ */
+public class KeyPairPool {
+
+  private static final Logger log = LoggerFactory.getLogger(KeyPairPool.class);
+
+  public static final String POOL_SIZE_PROPERTY = "saml.keys.poolSize";
+  public static final String KEY_SIZE_PROPERTY = "saml.keys.keySize";
+
+  private static final KeyPairPool instance = new KeyPairPool(PropertyUtil.getInt(POOL_SIZE_PROPERTY, 2),
+    PropertyUtil.getInt(KEY_SIZE_PROPERTY, KeyStoreGenerator.DEFAULT_KEY_SIZE), Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "saml-key-generator");
+      thread.setDaemon(true);
+      thread.setPriority(Thread.MIN_PRIORITY);
+      return thread;
+    }));
+
+  private final int size;
+  private final int keySize;
+  private final Executor generator;
+  private final BlockingQueue<KeyPair> keyPairs;
+  private final AtomicBoolean refilling = new AtomicBoolean();
+
+  KeyPairPool(int size, int keySize, Executor generator) {
+    this.size = Math.max(0, size);
+    this.keySize = keySize;
+    this.generator = generator;
+    this.keyPairs = new ArrayBlockingQueue<>(Math.max(1, this.size));
+  }
+
+  public static KeyPairPool getInstance() {
+    return instance;
+  }
+
+  /**
+   * @return a pooled key pair, or one generated now if the pool is empty; blocks, call it on a worker thread
+   */
+  public KeyPair take() throws GeneralSecurityException {
+    KeyPair keyPair = keyPairs.poll();
+    refill();
+    return keyPair != null ? keyPair : KeyStoreGenerator.generateKeyPair(keySize);
+  }
+
+  /**
+   * Tops the pool up in the background, unless it is full or already being filled.
+   */
+  public void refill() {
+    if (keyPairs.size() < size && refilling.compareAndSet(false, true)) {
+      generator.execute(this::fill);
+    }
+  }
+
+  int available() {
+    return keyPairs.size();
+  }
+
+  private void fill() {
+    try {
+      while (keyPairs.size() < size) {
+        keyPairs.offer(KeyStoreGenerator.generateKeyPair(keySize));
+      }
+    } catch (GeneralSecurityException | RuntimeException e) {
+      log.warn("Cannot generate key pair: " + e.getMessage());
+      return;
+    } finally {
+      refilling.set(false);
+    }
+    // a pair taken after the last check is replaced by the next call
+    if (keyPairs.size() < size) {
+      refill();
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package org.folio.util;
+
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.asn1.x509.TBSCertificate;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.asn1.x509.V3TBSCertificateGenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates the SP KeyStore of a tenant in memory: an RSA key pair with a self-signed certificate, in a JKS with the
+ * alias pac4j uses for the KeyStores it generates. CPU heavy, call it on a worker thread.
+ */
+public class KeyStoreGenerator {
+
+  public static final String KEYSTORE_ALIAS = "SAML2ClientConfiguration";
+  public static final int DEFAULT_KEY_SIZE = 2048;
+
+  private static final String KEYSTORE_TYPE = "JKS";
+  private static final long VALIDITY = TimeUnit.DAYS.toMillis(365);
+  private static final SecureRandom random = new SecureRandom();
+
+  // prevent instantiating
+  private KeyStoreGenerator() {
+  }
+
+  /**
+   * @return a new key pair, RSA with {@code keySize} bits
+   */
+  public static KeyPair generateKeyPair(int keySize) throws GeneralSecurityException {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(keySize, random);
+    return generator.generateKeyPair();
+  }
+
+  /**
+   * @return serialized JKS holding the key pair and a certificate of it, valid for a year
+   */
+  public static byte[] generateKeyStore(KeyPair keyPair, String commonName, String keystorePassword,
+                                        String privateKeyPassword) throws GeneralSecurityException, IOException {
+    X509Certificate certificate = selfSignedCertificate(keyPair, commonName, System.currentTimeMillis());
+
+    KeyStore keyStore = KeyStore.getInstance(KEYSTORE_TYPE);
+    keyStore.load(null, keystorePassword.toCharArray());
+    keyStore.setKeyEntry(KEYSTORE_ALIAS, keyPair.getPrivate(), privateKeyPassword.toCharArray(),
+      new Certificate[]{certificate});
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+    keyStore.store(bytes, keystorePassword.toCharArray());
+    return bytes.toByteArray();
+  }
+
+  static X509Certificate selfSignedCertificate(KeyPair keyPair, String commonName, long now)
+    throws GeneralSecurityException, IOException {
+
+    X500Name name = new X500Name("CN=" + commonName);
+    AlgorithmIdentifier signatureAlgorithm = new AlgorithmIdentifier(PKCSObjectIdentifiers.sha256WithRSAEncryption,
+      DERNull.INSTANCE);
+
+    V3TBSCertificateGenerator tbsGenerator = new V3TBSCertificateGenerator();
+    tbsGenerator.setSerialNumber(new ASN1Integer(new BigInteger(64, random)));
+    tbsGenerator.setIssuer(name);
+    tbsGenerator.setSubject(name);
+    tbsGenerator.setStartDate(new Time(new Date(now)));
+    tbsGenerator.setEndDate(new Time(new Date(now + VALIDITY)));
+    tbsGenerator.setSubjectPublicKeyInfo(SubjectPublicKeyInfo.getInstance(keyPair.getPublic().getEncoded()));
+    tbsGenerator.setSignature(signatureAlgorithm);
+    TBSCertificate tbsCertificate = tbsGenerator.generateTBSCertificate();
+
+    Signature signer = Signature.getInstance("SHA256withRSA");
+    signer.initSign(keyPair.getPrivate());
+    signer.update(tbsCertificate.getEncoded(ASN1Encoding.DER));
+
+    ASN1EncodableVector certificate = new ASN1EncodableVector();
+    certificate.add(tbsCertificate);
+    certificate.add(signatureAlgorithm);
+    certificate.add(new DERBitString(signer.sign()));
+
+    byte[] encoded = new DERSequence(certificate).getEncoded(ASN1Encoding.DER);
+    return (X509Certificate) CertificateFactory.getInstance("X.509")
+      .generateCertificate(new ByteArrayInputStream(encoded));
+  }
+}
@@ -0,0 +1,100 @@
+package org.folio.util;
+
+import org.folio.rest.tools.client.HttpClientFactory;
+import org.folio.rest.tools.client.interfaces.HttpClientInterface;
+import org.folio.util.model.OkapiHeaders;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * Shared keep-alive HTTP clients for calls through Okapi, one per Okapi URL and tenant. The clients stay open, so
+ * their connections are reused by the following requests. At most {@code saml.okapi.maxClients} clients are kept,
+ * the one used least recently is closed first.
+ * <p>
+ * Clients are shared: pass the token of the request with {@link #headers(OkapiHeaders)} to each call instead of
+ * setting default headers.
+ */
+public class OkapiClientPool {
+
+  public static final String CONNECT_TIMEOUT_PROPERTY = "saml.okapi.connectTimeout";
+  public static final String IDLE_TIMEOUT_PROPERTY = "saml.okapi.idleTimeout";
+  public static final String MAX_CLIENTS_PROPERTY = "saml.okapi.maxClients";
+
+  private static final long RESPONSE_CACHE_TIMEOUT = 30; // RMB default, only used for requests asking for caching
+
+  private static final Clients clients = new Clients(PropertyUtil.getInt(MAX_CLIENTS_PROPERTY, 1000),
+    OkapiClientPool::createClient);
+
+  // prevent instantiating
+  private OkapiClientPool() {
+  }
+
+  public static HttpClientInterface getClient(OkapiHeaders okapiHeaders) {
+    return getClient(okapiHeaders.getUrl(), okapiHeaders.getTenant());
+  }
+
+  public static HttpClientInterface getClient(String okapiUrl, String tenantId) {
+    return clients.get(okapiUrl, tenantId);
+  }
+
+  /**
+   * @return request headers carrying the token of the caller
+   */
+  public static Map<String, String> headers(OkapiHeaders okapiHeaders) {
+    Map<String, String> headers = new HashMap<>();
+    headers.put(OkapiHeaders.OKAPI_TOKEN_HEADER, okapiHeaders.getToken());
+    return headers;
+  }
+
+  static HttpClientInterface createClient(String okapiUrl, String tenantId) {
+    return HttpClientFactory.getHttpClient(okapiUrl, tenantId,
+      true,
+      PropertyUtil.getInt(CONNECT_TIMEOUT_PROPERTY, 2000),
+      PropertyUtil.getInt(IDLE_TIMEOUT_PROPERTY, 60),
+      false,
+      RESPONSE_CACHE_TIMEOUT);
+  }
+
+  /**
+   * Clients by Okapi URL and tenant in access order, bounded by {@code maxClients} ({@code 0} means unlimited).
+   */
+  static class Clients {
+
+    private final int maxClients;
+    private final BiFunction<String, String, HttpClientInterface> factory;
+    private final LinkedHashMap<String, HttpClientInterface> clients = new LinkedHashMap<>(16, 0.75f, true);
+
+    Clients(int maxClients, BiFunction<String, String, HttpClientInterface> factory) {
+      this.maxClients = maxClients;
+      this.factory = factory;
+    }
+
+    synchronized HttpClientInterface get(String okapiUrl, String tenantId) {
+      String key = okapiUrl + "\n" + tenantId;
+      HttpClientInterface client = clients.get(key);
+      if (client == null) {
+        client = factory.apply(okapiUrl, tenantId);
+        clients.put(key, client);
+        evictOverLimit();
+      }
+      return client;
+    }
+
+    synchronized int size() {
+      return clients.size();
+    }
+
+    private void evictOverLimit() {
+      Iterator<HttpClientInterface> leastRecentlyUsed = clients.values().iterator();
+      while (maxClients > 0 && clients.size() > maxClients) {
+        HttpClientInterface evicted = leastRecentlyUsed.next();
+        leastRecentlyUsed.remove();
+        evicted.closeClient();
+      }
+    }
+  }
+}
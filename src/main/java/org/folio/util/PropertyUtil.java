@@ -0,0 +1,44 @@
+package org.folio.util;
+
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.springframework.util.StringUtils;
+
+/**
+ * Typed access to the module's tuning knobs, passed as JVM system properties ({@code -Dname=value}).
+ */
+public class PropertyUtil {
+
+  private static final Logger log = LoggerFactory.getLogger(PropertyUtil.class);
+
+  // prevent instantiating this static util class
+  private PropertyUtil() {
+  }
+
+  public static String getString(String name, String defaultValue) {
+    String value = System.getProperty(name);
+    return StringUtils.hasText(value) ? value.trim() : defaultValue;
+  }
+
+  public static boolean getBoolean(String name, boolean defaultValue) {
+    String value = System.getProperty(name);
+    return StringUtils.hasText(value) ? Boolean.parseBoolean(value.trim()) : defaultValue;
+  }
+
+  public static int getInt(String name, int defaultValue) {
+    return (int) getLong(name, defaultValue);
+  }
+
+  public static long getLong(String name, long defaultValue) {
+    String value = System.getProperty(name);
+    if (!StringUtils.hasText(value)) {
+      return defaultValue;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      log.warn("Invalid value of " + name + ": " + value + ", using default " + defaultValue);
+      return defaultValue;
+    }
+  }
+}
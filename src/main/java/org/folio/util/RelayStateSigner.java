@@ -0,0 +1,162 @@
+package org.folio.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Stateless RelayState: {@code <expiry>.<signature>.<url>}, the expiry in base 36 epoch seconds and the signature a
+ * truncated HMAC-SHA256 of tenant, expiry and URL with a key derived per tenant from {@code saml.relayState.secret}.
+ * The callback only redirects to URLs signed at login, on whichever node it arrives.
+ * <p>
+ * Without {@code saml.relayState.secret} the key is derived from a secret of the tenant every node reads from
+ * mod-configuration, passed by the caller: it changes with it, RelayStates signed before are rejected then.
+ */
+public class RelayStateSigner {
+
+  private static final Logger log = LoggerFactory.getLogger(RelayStateSigner.class);
+
+  public static final String SECRET_PROPERTY = "saml.relayState.secret";
+  public static final String TTL_PROPERTY = "saml.relayState.ttl";
+
+  private static final String ALGORITHM = "HmacSHA256";
+  private static final int SIGNATURE_LENGTH = 16;
+  private static final char SEPARATOR = '.';
+
+  private static final RelayStateSigner instance = fromProperties();
+
+  private final SecretKeySpec masterKey;
+  private final long ttl;
+  private final ConcurrentMap<String, SecretKeySpec> tenantKeys = new ConcurrentHashMap<>();
+  private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(RelayStateSigner::newMac);
+
+  /**
+   * @param secret shared by all nodes, null to derive the keys from the secrets of the tenants
+   */
+  RelayStateSigner(byte[] secret, long ttl) {
+    this.masterKey = secret == null ? null : new SecretKeySpec(secret, ALGORITHM);
+    this.ttl = ttl;
+  }
+
+  public static RelayStateSigner getInstance() {
+    return instance;
+  }
+
+  /**
+   * Signer configured by {@code saml.relayState.secret} and {@code saml.relayState.ttl}, as on every node.
+   */
+  static RelayStateSigner fromProperties() {
+    String secret = PropertyUtil.getString(SECRET_PROPERTY, null);
+    if (secret == null) {
+      log.warn(SECRET_PROPERTY + " is not set, RelayState keys are derived from the SAML configuration of each tenant."
+        + " Set it to keep the RelayStates of pending logins valid when a tenant's keystore is regenerated");
+    }
+    return new RelayStateSigner(secret == null ? null : secret.getBytes(StandardCharsets.UTF_8),
+      PropertyUtil.getLong(TTL_PROPERTY, 3600000L));
+  }
+
+  /**
+   * @param tenantSecret secret of the tenant shared by all nodes, used if {@code saml.relayState.secret} is not set
+   */
+  public String sign(String tenantId, String tenantSecret, String url) {
+    return sign(tenantId, tenantSecret, url, System.currentTimeMillis());
+  }
+
+  String sign(String tenantId, String tenantSecret, String url, long now) {
+    String expiry = Long.toString((now + ttl) / 1000, Character.MAX_RADIX);
+    return expiry + SEPARATOR + signature(tenantKey(tenantId, tenantSecret), tenantId, expiry, url) + SEPARATOR + url;
+  }
+
+  /**
+   * @param tenantSecret secret of the tenant shared by all nodes, used if {@code saml.relayState.secret} is not set
+   */
+  public String verify(String tenantId, String tenantSecret, String relayState) {
+    return verify(tenantId, tenantSecret, relayState, System.currentTimeMillis());
+  }
+
+  /**
+   * @return the URL the RelayState was signed for
+   * @throws IllegalArgumentException if it is malformed, signed for another tenant or by another key, or expired
+   */
+  String verify(String tenantId, String tenantSecret, String relayState, long now) {
+    if (relayState == null) {
+      throw new IllegalArgumentException("RelayState is missing");
+    }
+    int expiryEnd = relayState.indexOf(SEPARATOR);
+    int signatureEnd = expiryEnd < 0 ? -1 : relayState.indexOf(SEPARATOR, expiryEnd + 1);
+    if (signatureEnd < 0) {
+      throw new IllegalArgumentException("RelayState is not signed");
+    }
+
+    String expiry = relayState.substring(0, expiryEnd);
+    String url = relayState.substring(signatureEnd + 1);
+    byte[] expected = signature(tenantKey(tenantId, tenantSecret), tenantId, expiry, url).getBytes(StandardCharsets.US_ASCII);
+    byte[] actual = relayState.substring(expiryEnd + 1, signatureEnd).getBytes(StandardCharsets.US_ASCII);
+    if (!MessageDigest.isEqual(expected, actual)) {
+      throw new IllegalArgumentException("RelayState signature is invalid");
+    }
+
+    long expiresAt;
+    try {
+      expiresAt = Long.parseLong(expiry, Character.MAX_RADIX) * 1000;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("RelayState expiry is invalid");
+    }
+    if (expiresAt <= now) {
+      throw new IllegalArgumentException("RelayState expired");
+    }
+    return url;
+  }
+
+  private String signature(SecretKeySpec tenantKey, String tenantId, String expiry, String url) {
+    Mac mac = macs.get();
+    try {
+      mac.init(tenantKey);
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Cannot initialize " + ALGORITHM, e);
+    }
+    mac.update(tenantId.getBytes(StandardCharsets.UTF_8));
+    mac.update((byte) 0);
+    mac.update(expiry.getBytes(StandardCharsets.US_ASCII));
+    mac.update((byte) 0);
+    byte[] signature = mac.doFinal(url.getBytes(StandardCharsets.UTF_8));
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(signature, SIGNATURE_LENGTH));
+  }
+
+  private SecretKeySpec tenantKey(String tenantId, String tenantSecret) {
+    if (masterKey != null) {
+      return tenantKeys.computeIfAbsent(tenantId, tenant -> deriveKey(masterKey, tenant));
+    }
+    if (tenantSecret == null || tenantSecret.isEmpty()) {
+      throw new IllegalArgumentException("No key to sign the RelayState, " + SECRET_PROPERTY + " is not set");
+    }
+    return deriveKey(new SecretKeySpec(tenantSecret.getBytes(StandardCharsets.UTF_8), ALGORITHM), tenantId);
+  }
+
+  private static SecretKeySpec deriveKey(SecretKeySpec key, String tenantId) {
+    Mac mac = newMac();
+    try {
+      mac.init(key);
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Cannot initialize " + ALGORITHM, e);
+    }
+    return new SecretKeySpec(mac.doFinal(tenantId.getBytes(StandardCharsets.UTF_8)), ALGORITHM);
+  }
+
+  private static Mac newMac() {
+    try {
+      return Mac.getInstance(ALGORITHM);
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(ALGORITHM + " is not available", e);
+    }
+  }
+}
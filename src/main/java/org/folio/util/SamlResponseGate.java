@@ -0,0 +1,63 @@
+package org.folio.util;
+
+import org.folio.util.model.SamlResponseInfo;
+
+/**
+ * Cheap checks of an incoming SAMLResponse before pac4j decodes it, builds the DOM and validates the signature: size,
+ * well-formedness, Destination, Issuer and expiry. Passing the gate proves nothing, pac4j still validates everything.
+ */
+public class SamlResponseGate {
+
+  public static final String MAX_RESPONSE_SIZE_PROPERTY = "saml.callback.maxResponseSize";
+  public static final String CLOCK_SKEW_PROPERTY = "saml.callback.clockSkew";
+  public static final String REQUIRE_IN_RESPONSE_TO_PROPERTY = "saml.callback.requireInResponseTo";
+  public static final int DEFAULT_MAX_RESPONSE_SIZE = 524288;
+
+  private final int maxResponseSize;
+  private final long clockSkew;
+  private final boolean requireInResponseTo;
+
+  public SamlResponseGate() {
+    this(PropertyUtil.getInt(MAX_RESPONSE_SIZE_PROPERTY, DEFAULT_MAX_RESPONSE_SIZE),
+      PropertyUtil.getLong(CLOCK_SKEW_PROPERTY, 120000L),
+      PropertyUtil.getBoolean(REQUIRE_IN_RESPONSE_TO_PROPERTY, false));
+  }
+
+  SamlResponseGate(int maxResponseSize, long clockSkew, boolean requireInResponseTo) {
+    this.maxResponseSize = maxResponseSize;
+    this.clockSkew = clockSkew;
+    this.requireInResponseTo = requireInResponseTo;
+  }
+
+  /**
+   * @param samlResponse        value of the SAMLResponse form parameter
+   * @param expectedDestination callback URL of the tenant
+   * @param expectedIssuer      entity ID of the tenant's IdP, null to skip the check
+   * @return what was read from the response
+   * @throws IllegalArgumentException with the reason of the rejection
+   */
+  public SamlResponseInfo check(String samlResponse, String expectedDestination, String expectedIssuer, long now) {
+    if (samlResponse == null || samlResponse.isEmpty()) {
+      throw new IllegalArgumentException("SAMLResponse is missing");
+    }
+    if (maxResponseSize > 0 && samlResponse.length() > maxResponseSize) {
+      throw new IllegalArgumentException("SAMLResponse is larger than " + maxResponseSize + " bytes");
+    }
+
+    SamlResponseInfo info = SamlResponseScanner.scan(samlResponse);
+
+    if (info.getDestination() != null && !info.getDestination().equals(expectedDestination)) {
+      throw new IllegalArgumentException("SAMLResponse is addressed to " + info.getDestination());
+    }
+    if (expectedIssuer != null && info.getIssuer() != null && !info.getIssuer().equals(expectedIssuer)) {
+      throw new IllegalArgumentException("SAMLResponse is issued by an unknown IdP: " + info.getIssuer());
+    }
+    if (requireInResponseTo && info.getInResponseTo() == null) {
+      throw new IllegalArgumentException("Unsolicited SAMLResponse is not accepted");
+    }
+    if (info.getNotOnOrAfter() != null && info.getNotOnOrAfter().toEpochMilli() + clockSkew <= now) {
+      throw new IllegalArgumentException("SAMLResponse expired at " + info.getNotOnOrAfter());
+    }
+    return info;
+  }
+}
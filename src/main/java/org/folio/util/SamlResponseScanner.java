@@ -0,0 +1,101 @@
+package org.folio.util;
+
+import org.folio.util.model.SamlResponseInfo;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Reads the identifiers and validity of a base64 encoded SAML Response (HTTP-POST binding) with a streaming parser,
+ * no DOM is built.
+ */
+public class SamlResponseScanner {
+
+  public static final String PROTOCOL_NS = "urn:oasis:names:tc:SAML:2.0:protocol";
+  public static final String ASSERTION_NS = "urn:oasis:names:tc:SAML:2.0:assertion";
+
+  // prevent instantiating
+  private SamlResponseScanner() {
+  }
+
+  /**
+   * @param samlResponse value of the SAMLResponse form parameter
+   * @throws IllegalArgumentException if it is not base64 encoded XML
+   */
+  public static SamlResponseInfo scan(String samlResponse) {
+    byte[] xml;
+    try {
+      xml = Base64.getMimeDecoder().decode(samlResponse);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("SAMLResponse is not base64 encoded", e);
+    }
+
+    SamlResponseInfo info = new SamlResponseInfo();
+    XMLStreamReader reader = null;
+    try {
+      reader = XmlUtil.getInputFactory().createXMLStreamReader(new ByteArrayInputStream(xml));
+      int depth = 0;
+      while (reader.hasNext()) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.END_ELEMENT) {
+          depth--;
+        }
+        if (event != XMLStreamConstants.START_ELEMENT) {
+          continue;
+        }
+        depth++;
+        String namespace = reader.getNamespaceURI();
+        String name = reader.getLocalName();
+        if (depth == 1) {
+          if (!PROTOCOL_NS.equals(namespace) || !"Response".equals(name)) {
+            throw new IllegalArgumentException("SAMLResponse does not contain a Response but " + name);
+          }
+          info.setResponseId(reader.getAttributeValue(null, "ID"));
+          info.setDestination(reader.getAttributeValue(null, "Destination"));
+          info.setInResponseTo(reader.getAttributeValue(null, "InResponseTo"));
+        } else if (ASSERTION_NS.equals(namespace)) {
+          if (depth == 2 && "Issuer".equals(name)) {
+            info.setIssuer(reader.getElementText().trim());
+            depth--; // getElementText() consumed the end tag
+          } else if ("Assertion".equals(name)) {
+            info.addAssertionId(reader.getAttributeValue(null, "ID"));
+          } else if ("Conditions".equals(name) || "SubjectConfirmationData".equals(name)) {
+            String notOnOrAfter = reader.getAttributeValue(null, "NotOnOrAfter");
+            if (notOnOrAfter != null) {
+              info.updateNotOnOrAfter(parseDateTime(notOnOrAfter));
+            }
+          }
+        }
+      }
+    } catch (XMLStreamException e) {
+      throw new IllegalArgumentException("SAMLResponse is not well-formed XML: " + e.getMessage(), e);
+    } finally {
+      close(reader);
+    }
+    return info;
+  }
+
+  static Instant parseDateTime(String dateTime) {
+    try {
+      return OffsetDateTime.parse(dateTime.trim()).toInstant();
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException("Invalid xs:dateTime: " + dateTime, e);
+    }
+  }
+
+  private static void close(XMLStreamReader reader) {
+    if (reader != null) {
+      try {
+        reader.close();
+      } catch (XMLStreamException e) {
+        // nothing to release
+      }
+    }
+  }
+}
@@ -0,0 +1,23 @@
+package org.folio.util;
+
+/**
+ * Okapi answered {@code 401} or {@code 403}: the token used for the request is not valid (any more) or lacks
+ * permissions. Background jobs stop using the credentials of the tenant when they see it.
+ */
+public class TokenRejectedException extends RuntimeException {
+
+  private final int statusCode;
+
+  public TokenRejectedException(int statusCode, String message) {
+    super(message);
+    this.statusCode = statusCode;
+  }
+
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  public static boolean isRejection(int statusCode) {
+    return statusCode == 401 || statusCode == 403;
+  }
+}
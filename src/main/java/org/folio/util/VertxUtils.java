@@ -1,8 +1,13 @@
 package org.folio.util;
 
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
 import io.vertx.ext.web.RoutingContext;
 import org.pac4j.vertx.VertxWebContext;
 
+import java.util.concurrent.CompletableFuture;
+
 
 /**
  * Vert.x utils
@@ -18,4 +23,31 @@ public class VertxUtils {
     return new VertxWebContext(routingContext, null);
   }
 
+  /**
+   * Adapt a {@link CompletableFuture} shared between event loops: the returned {@link Future} is completed on the
+   * context of the caller.
+   */
+  public static <T> Future<T> onCurrentContext(CompletableFuture<T> completableFuture) {
+    Future<T> result = Future.future();
+    Context context = Vertx.currentContext();
+
+    completableFuture.whenComplete((value, throwable) -> {
+      if (context == null) {
+        complete(result, value, throwable);
+      } else {
+        context.runOnContext(v -> complete(result, value, throwable));
+      }
+    });
+
+    return result;
+  }
+
+  private static <T> void complete(Future<T> future, T value, Throwable throwable) {
+    if (throwable == null) {
+      future.complete(value);
+    } else {
+      future.fail(throwable);
+    }
+  }
+
 }
@@ -0,0 +1,114 @@
+package org.folio.util;
+
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.xml.BasicParserPool;
+import net.shibboleth.utilities.java.support.xml.ParserPool;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.XMLConstants;
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.stream.XMLInputFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process-wide XML parsers, shared by all tenants: one bounded, hardened DOM parser pool, which pac4j and OpenSAML
+ * use for SAML messages and metadata, and one hardened StAX factory for the streaming checks of this module.
+ */
+public class XmlUtil {
+
+  private static final Logger log = LoggerFactory.getLogger(XmlUtil.class);
+
+  public static final String PARSER_POOL_SIZE_PROPERTY = "saml.xml.parserPoolSize";
+
+  private static final XMLInputFactory inputFactory = createInputFactory();
+  private static final DatatypeFactory datatypeFactory = createDatatypeFactory();
+  private static ParserPool parserPool;
+
+  // prevent instantiating
+  private XmlUtil() {
+  }
+
+  /**
+   * @return the StAX factory, DTDs and external entities are not supported
+   */
+  public static XMLInputFactory getInputFactory() {
+    return inputFactory;
+  }
+
+  /**
+   * @return the factory for {@code xs:dateTime} and {@code xs:duration} values, looking it up is expensive
+   */
+  public static DatatypeFactory getDatatypeFactory() {
+    return datatypeFactory;
+  }
+
+  /**
+   * @return the DOM parser pool, at most {@code saml.xml.parserPoolSize} idle builders are kept
+   */
+  public static synchronized ParserPool getParserPool() {
+    if (parserPool == null) {
+      parserPool = createParserPool(PropertyUtil.getInt(PARSER_POOL_SIZE_PROPERTY,
+        2 * Runtime.getRuntime().availableProcessors()));
+    }
+    return parserPool;
+  }
+
+  /**
+   * Makes pac4j and OpenSAML use the shared parser pool. Call it before the first SAML client is initialized, the
+   * clients keep the pool they were built with.
+   */
+  public static void installParserPool() {
+    // bootstraps OpenSAML with the pac4j defaults, then replaces its pool
+    org.pac4j.saml.util.Configuration.getParserPool();
+    XMLObjectProviderRegistrySupport.setParserPool(getParserPool());
+  }
+
+  static ParserPool createParserPool(int maxPoolSize) {
+    BasicParserPool pool = new BasicParserPool();
+    pool.setMaxPoolSize(Math.max(1, maxPoolSize));
+    pool.setNamespaceAware(true);
+    pool.setCoalescing(true);
+    pool.setIgnoreComments(true);
+    pool.setIgnoreElementContentWhitespace(true);
+    pool.setExpandEntityReferences(false);
+    pool.setXincludeAware(false);
+    pool.setDTDValidating(false);
+
+    Map<String, Boolean> features = new HashMap<>();
+    features.put(XMLConstants.FEATURE_SECURE_PROCESSING, Boolean.TRUE);
+    features.put("http://apache.org/xml/features/disallow-doctype-decl", Boolean.TRUE);
+    features.put("http://xml.org/sax/features/external-general-entities", Boolean.FALSE);
+    features.put("http://xml.org/sax/features/external-parameter-entities", Boolean.FALSE);
+    features.put("http://apache.org/xml/features/nonvalidating/load-external-dtd", Boolean.FALSE);
+    features.put("http://apache.org/xml/features/validation/schema/normalized-value", Boolean.FALSE);
+    pool.setBuilderFeatures(features);
+
+    try {
+      pool.initialize();
+    } catch (ComponentInitializationException e) {
+      throw new IllegalStateException("Cannot initialize XML parser pool", e);
+    }
+    log.info("XML parser pool initialized, max " + maxPoolSize + " idle parsers");
+    return pool;
+  }
+
+  private static XMLInputFactory createInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    return factory;
+  }
+
+  private static DatatypeFactory createDatatypeFactory() {
+    try {
+      return DatatypeFactory.newInstance();
+    } catch (DatatypeConfigurationException e) {
+      throw new IllegalStateException("Cannot create XML datatype factory", e);
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package org.folio.util.model;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Identifiers and validity of a SAML Response, read without building a DOM. Nothing here is verified, only use it
+ * for checks that can reject but never accept a response on their own.
+ */
+public class SamlResponseInfo {
+
+  private String responseId;
+  private String issuer;
+  private String destination;
+  private String inResponseTo;
+  private final List<String> assertionIds = new ArrayList<>();
+  private Instant notOnOrAfter;
+
+  public String getResponseId() {
+    return responseId;
+  }
+
+  public void setResponseId(String responseId) {
+    this.responseId = responseId;
+  }
+
+  /**
+   * @return Issuer of the Response element, null if it has none
+   */
+  public String getIssuer() {
+    return issuer;
+  }
+
+  public void setIssuer(String issuer) {
+    this.issuer = issuer;
+  }
+
+  public String getDestination() {
+    return destination;
+  }
+
+  public void setDestination(String destination) {
+    this.destination = destination;
+  }
+
+  /**
+   * @return ID of the AuthnRequest answered, null for an unsolicited response
+   */
+  public String getInResponseTo() {
+    return inResponseTo;
+  }
+
+  public void setInResponseTo(String inResponseTo) {
+    this.inResponseTo = inResponseTo;
+  }
+
+  /**
+   * @return IDs of the assertions which are not encrypted
+   */
+  public List<String> getAssertionIds() {
+    return Collections.unmodifiableList(assertionIds);
+  }
+
+  public void addAssertionId(String assertionId) {
+    assertionIds.add(assertionId);
+  }
+
+  /**
+   * @return the earliest NotOnOrAfter of the conditions and subject confirmations, null if there is none
+   */
+  public Instant getNotOnOrAfter() {
+    return notOnOrAfter;
+  }
+
+  public void updateNotOnOrAfter(Instant instant) {
+    if (notOnOrAfter == null || instant.isBefore(notOnOrAfter)) {
+      notOnOrAfter = instant;
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package org.folio.config;
+
+import net.shibboleth.utilities.java.support.codec.Base64Support;
+import net.shibboleth.utilities.java.support.xml.SerializeSupport;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.opensaml.core.xml.XMLObjectBuilderFactory;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.common.SAMLVersion;
+import org.opensaml.saml.common.xml.SAMLConstants;
+import org.opensaml.saml.saml2.core.AuthnRequest;
+import org.opensaml.saml.saml2.core.Issuer;
+import org.opensaml.saml.saml2.core.NameIDPolicy;
+import org.opensaml.saml.saml2.core.NameIDType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.pac4j.saml.util.Configuration;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding an unsigned AuthnRequest for the HTTP-POST binding: building and marshalling the OpenSAML objects like
+ * pac4j's {@code SAML2AuthnRequestBuilder} (before) against rendering the compiled template (after).
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *   -Dexec.mainClass=org.folio.config.AuthnRequestTemplateBenchmark -Dexec.args="-prof gc"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(4)
+public class AuthnRequestTemplateBenchmark {
+
+  private static final String SSO_URL = "https://idp.example.org/sso";
+  private static final String CALLBACK_URL = "http://localhost:9130/_/invoke/tenant/diku/saml/callback";
+  private static final String MARKER_ID = "_marker";
+  private static final Instant MARKER_INSTANT = Instant.parse("2000-01-01T00:00:00Z");
+
+  private XMLObjectBuilderFactory builders;
+  private AuthnRequestTemplate template;
+
+  @Setup(Level.Trial)
+  public void compileTemplate() throws Exception {
+    builders = Configuration.getBuilderFactory();
+
+    AuthnRequest prototype = buildRequest();
+    prototype.setID(MARKER_ID);
+    prototype.setIssueInstant(new DateTime(MARKER_INSTANT.toEpochMilli(), DateTimeZone.UTC));
+    template = AuthnRequestTemplate.compile(SerializeSupport.nodeToString(XMLObjectSupport.marshall(prototype)),
+      MARKER_ID, MARKER_INSTANT, SSO_URL);
+  }
+
+  @Benchmark
+  public String openSamlBuilder() throws Exception {
+    String xml = SerializeSupport.nodeToString(XMLObjectSupport.marshall(buildRequest()));
+    return Base64Support.encode(xml.getBytes(StandardCharsets.UTF_8), Base64Support.UNCHUNKED);
+  }
+
+  @Benchmark
+  public String compiledTemplate() {
+    return template.encodePost(AuthnRequestTemplate.newId(), Instant.now());
+  }
+
+  private AuthnRequest buildRequest() {
+    AuthnRequest request = (AuthnRequest) builders.getBuilder(AuthnRequest.DEFAULT_ELEMENT_NAME)
+      .buildObject(AuthnRequest.DEFAULT_ELEMENT_NAME);
+    request.setID(AuthnRequestTemplate.newId());
+    request.setIssueInstant(DateTime.now(DateTimeZone.UTC));
+    request.setVersion(SAMLVersion.VERSION_20);
+    request.setIsPassive(false);
+    request.setForceAuthn(false);
+    request.setProviderName("pac4j-saml");
+    request.setDestination(SSO_URL);
+    request.setAssertionConsumerServiceURL(CALLBACK_URL);
+    request.setProtocolBinding(SAMLConstants.SAML2_POST_BINDING_URI);
+
+    Issuer issuer = (Issuer) builders.getBuilder(Issuer.DEFAULT_ELEMENT_NAME).buildObject(Issuer.DEFAULT_ELEMENT_NAME);
+    issuer.setFormat(NameIDType.ENTITY);
+    issuer.setValue(CALLBACK_URL);
+    request.setIssuer(issuer);
+
+    NameIDPolicy nameIdPolicy = (NameIDPolicy) builders.getBuilder(NameIDPolicy.DEFAULT_ELEMENT_NAME)
+      .buildObject(NameIDPolicy.DEFAULT_ELEMENT_NAME);
+    nameIdPolicy.setAllowCreate(true);
+    nameIdPolicy.setFormat(NameIDType.TRANSIENT);
+    request.setNameIDPolicy(nameIdPolicy);
+    return request;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    OptionsBuilder options = new OptionsBuilder();
+    options.include(AuthnRequestTemplateBenchmark.class.getSimpleName());
+    if (args.length > 1 && "-prof".equals(args[0])) {
+      options.addProfiler(args[1]);
+    }
+    new Runner(options.build()).run();
+  }
+}
@@ -0,0 +1,96 @@
+package org.folio.config;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AuthnRequestTemplateTest {
+
+  private static final String MARKER_ID = "_marker";
+  private static final Instant MARKER_INSTANT = Instant.parse("2000-01-01T00:00:00Z");
+  private static final String SSO_URL = "https://idp.example.org/sso";
+
+  static String authnRequest(String id, String issueInstant) {
+    return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+      + "<saml2p:AuthnRequest xmlns:saml2p=\"urn:oasis:names:tc:SAML:2.0:protocol\""
+      + " AssertionConsumerServiceURL=\"http://localhost:9130/_/invoke/tenant/diku/saml/callback\""
+      + " Destination=\"" + SSO_URL + "\" ForceAuthn=\"false\" ID=\"" + id + "\" IsPassive=\"false\""
+      + " IssueInstant=\"" + issueInstant + "\" ProtocolBinding=\"urn:oasis:names:tc:SAML:2.0:bindings:HTTP-POST\""
+      + " ProviderName=\"pac4j-saml\" Version=\"2.0\">"
+      + "<saml2:Issuer xmlns:saml2=\"urn:oasis:names:tc:SAML:2.0:assertion\">http://localhost:9130/_/invoke/tenant/diku/saml/callback</saml2:Issuer>"
+      + "<saml2p:NameIDPolicy AllowCreate=\"true\" Format=\"urn:oasis:names:tc:SAML:2.0:nameid-format:transient\"/>"
+      + "</saml2p:AuthnRequest>";
+  }
+
+  private static AuthnRequestTemplate template(String destination) {
+    return AuthnRequestTemplate.compile(authnRequest(MARKER_ID, "2000-01-01T00:00:00.000Z"), MARKER_ID,
+      MARKER_INSTANT, destination);
+  }
+
+  @Test
+  public void rendersIdAndIssueInstant() {
+    String xml = template(SSO_URL).render("_abc", Instant.parse("2018-01-01T10:00:00.123Z"));
+
+    assertEquals(authnRequest("_abc", "2018-01-01T10:00:00.123Z"), xml);
+  }
+
+  @Test
+  public void encodesPostBinding() {
+    Instant now = Instant.parse("2018-01-01T10:00:00Z");
+
+    String encoded = template(SSO_URL).encodePost("_abc", now);
+
+    assertEquals(authnRequest("_abc", "2018-01-01T10:00:00.000Z"),
+      new String(Base64.getDecoder().decode(encoded), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void encodesRedirectBinding() throws Exception {
+    Instant now = Instant.parse("2018-01-01T10:00:00Z");
+
+    String url = template(SSO_URL + "?tenant=diku").redirectUrl("_abc", now, "http://localhost:3000/sso-landing?a=b");
+
+    assertTrue(url.startsWith(SSO_URL + "?tenant=diku&SAMLRequest="));
+    String[] parameters = url.substring(url.indexOf('&') + 1).split("&");
+    assertEquals("RelayState=" + "http%3A%2F%2Flocalhost%3A3000%2Fsso-landing%3Fa%3Db", parameters[1]);
+
+    byte[] deflated = Base64.getDecoder().decode(URLDecoder.decode(parameters[0].substring("SAMLRequest=".length()), "UTF-8"));
+    Inflater inflater = new Inflater(true);
+    inflater.setInput(deflated);
+    ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+    byte[] chunk = new byte[1024];
+    while (!inflater.finished()) {
+      inflated.write(chunk, 0, inflater.inflate(chunk));
+    }
+    assertEquals(authnRequest("_abc", "2018-01-01T10:00:00.000Z"), new String(inflated.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void omitsEmptyRelayState() {
+    String url = template(SSO_URL).redirectUrl("_abc", Instant.now(), null);
+
+    assertEquals(-1, url.indexOf("RelayState"));
+  }
+
+  @Test
+  public void generatesDistinctIds() {
+    String id = AuthnRequestTemplate.newId();
+
+    assertTrue(id.matches("_[0-9a-f]{40}"));
+    assertNotEquals(id, AuthnRequestTemplate.newId());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsRequestWithoutMarkers() {
+    AuthnRequestTemplate.compile(authnRequest("_other", "2000-01-01T00:00:00.000Z"), MARKER_ID, MARKER_INSTANT, SSO_URL);
+  }
+}
@@ -0,0 +1,50 @@
+package org.folio.config;
+
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import org.junit.Test;
+import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.security.credential.BasicCredential;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.CredentialResolver;
+import org.opensaml.security.credential.UsageType;
+import org.opensaml.security.criteria.UsageCriterion;
+
+import java.security.KeyPairGenerator;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class CachingCredentialResolverTest {
+
+  private static CriteriaSet criteria(String entityId) {
+    return new CriteriaSet(new EntityIdCriterion(entityId), new UsageCriterion(UsageType.SIGNING));
+  }
+
+  @Test
+  public void resolvesOncePerCriteria() throws Exception {
+    Credential credential = new BasicCredential(KeyPairGenerator.getInstance("RSA").generateKeyPair().getPublic());
+    AtomicInteger calls = new AtomicInteger();
+    CredentialResolver delegate = new CredentialResolver() {
+      @Override
+      public Iterable<Credential> resolve(CriteriaSet criteriaSet) {
+        calls.incrementAndGet();
+        return Collections.singletonList(credential);
+      }
+
+      @Override
+      public Credential resolveSingle(CriteriaSet criteriaSet) {
+        return resolve(criteriaSet).iterator().next();
+      }
+    };
+    CachingCredentialResolver resolver = new CachingCredentialResolver(delegate);
+
+    assertSame(credential, resolver.resolveSingle(criteria("https://idp.example.org")));
+    assertSame(credential, resolver.resolve(criteria("https://idp.example.org")).iterator().next());
+    assertEquals(1, calls.get());
+
+    resolver.resolve(criteria("https://other.example.org"));
+    assertEquals(2, calls.get());
+  }
+}
@@ -0,0 +1,29 @@
+package org.folio.config;
+
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class ConfigChangeNotifierTest {
+
+  @Rule
+  public RunTestOnContext rule = new RunTestOnContext();
+
+  @Test
+  public void otherNodesAreNotified(TestContext context) {
+    ConfigChangeNotifier nodeA = new ConfigChangeNotifier(rule.vertx(), "node-a");
+    ConfigChangeNotifier nodeB = new ConfigChangeNotifier(rule.vertx(), "node-b");
+    Async async = context.async();
+
+    nodeA.listen(tenantId -> context.fail("publisher must ignore its own change"));
+    nodeB.listen(tenantId -> {
+      context.assertEquals("diku", tenantId);
+      async.complete();
+    }).completionHandler(context.asyncAssertSuccess(registered -> nodeA.publish("diku")));
+  }
+}
@@ -0,0 +1,113 @@
+package org.folio.config;
+
+import org.folio.config.model.SamlConfiguration;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ConfigurationCacheTest {
+
+  private static final Map<String, String> VALUES = Collections.singletonMap(SamlConfiguration.IDP_URL_CODE, "https://idp");
+
+  private static SamlConfiguration configuration() {
+    SamlConfiguration configuration = new SamlConfiguration();
+    configuration.setIdpUrl("https://idp");
+    return configuration;
+  }
+
+  @Test
+  public void servesLoadedConfigurationUntilTtl() {
+    ConfigurationCache cache = new ConfigurationCache(1000, 0, 0);
+    SamlConfiguration configuration = configuration();
+    ConfigurationCache.Entry entry = cache.entry("a");
+    entry.loaded(entry.version(), VALUES, configuration, 0);
+
+    assertSame(configuration, cache.get("a", 999));
+    assertNull(cache.get("a", 1000));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void invalidateRemovesEntry() {
+    ConfigurationCache cache = new ConfigurationCache(1000, 0, 0);
+    ConfigurationCache.Entry entry = cache.entry("a");
+    entry.loaded(entry.version(), VALUES, configuration(), 0);
+
+    cache.remove("a");
+
+    assertNull(cache.get("a", 0));
+    assertNull(cache.find("a"));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void fetchStartedBeforeWriteIsDropped() {
+    ConfigurationCache cache = new ConfigurationCache(1000, 0, 0);
+    ConfigurationCache.Entry entry = cache.entry("a");
+    long fetchVersion = entry.version();
+    SamlConfiguration stored = configuration();
+
+    entry.stored(VALUES, stored, 0);
+
+    assertFalse(entry.loaded(fetchVersion, VALUES, configuration(), 0));
+    assertSame(stored, cache.get("a", 0));
+  }
+
+  @Test
+  public void writeUpdatesCachedConfiguration() {
+    ConfigurationCache cache = new ConfigurationCache(1000, 0, 0);
+    ConfigurationCache.Entry entry = cache.entry("a");
+    entry.loaded(entry.version(), VALUES, configuration(), 0);
+
+    entry.written(SamlConfiguration.USER_PROPERTY_CODE, "externalSystemId");
+
+    SamlConfiguration configuration = cache.get("a", 0);
+    assertEquals("https://idp", configuration.getIdpUrl());
+    assertEquals("externalSystemId", configuration.getUserProperty());
+  }
+
+  @Test
+  public void evictsEntryLoadedFirst() {
+    ConfigurationCache cache = new ConfigurationCache(1000, 2, 0);
+    for (String tenantId : new String[]{"b", "a", "c"}) {
+      ConfigurationCache.Entry entry = cache.entry(tenantId);
+      entry.loaded(entry.version(), VALUES, configuration(), "b".equals(tenantId) ? 0 : 10);
+      cache.evictOverLimit(tenantId);
+    }
+
+    assertEquals(2, cache.size());
+    assertNull(cache.find("b"));
+    assertNotNull(cache.get("a", 10));
+    assertNotNull(cache.get("c", 10));
+  }
+
+  @Test
+  public void honoursByteLimit() {
+    ConfigurationCache cache = new ConfigurationCache(1000, 0, 1);
+    for (String tenantId : new String[]{"a", "b"}) {
+      ConfigurationCache.Entry entry = cache.entry(tenantId);
+      entry.loaded(entry.version(), VALUES, configuration(), 0);
+      cache.evictOverLimit(tenantId);
+    }
+
+    // the entry just loaded is kept even if it alone is over the limit
+    assertEquals(1, cache.size());
+    assertNotNull(cache.find("b"));
+  }
+
+  @Test
+  public void discardsEntryOfFailedFirstLoad() {
+    ConfigurationCache cache = new ConfigurationCache(1000, 0, 0);
+
+    cache.discardEmpty("a", cache.entry("a"));
+
+    assertEquals(0, cache.size());
+  }
+}
@@ -0,0 +1,217 @@
+package org.folio.config;
+
+import io.vertx.core.Future;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.folio.config.model.SamlConfiguration;
+import org.folio.rest.tools.client.test.HttpClientMock2;
+import org.folio.util.model.OkapiHeaders;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+@RunWith(VertxUnitRunner.class)
+public class ConfigurationsClientTest {
+
+  private static final String ALL_ENTRIES_QUERY = "(module==LOGIN-SAML AND configName==saml)";
+  private static final String IDP_URL_ID = "60eead4f-de97-437c-9cb7-09966ce50e49";
+  private static final String BINDING_ID = "2dd0d26d-3be4-4e80-a631-f7bda5311719";
+
+  @Rule
+  public RunTestOnContext rule = new RunTestOnContext();
+
+  private HttpServer okapi;
+  private String okapiUrl;
+  private final JsonArray configs = new JsonArray();
+  private final Set<String> failingIds = new HashSet<>();
+  private final List<String> requests = new CopyOnWriteArrayList<>();
+
+  /**
+   * mod-configuration with an IdP URL, a keystore and a binding, recording the requests it gets.
+   */
+  @Before
+  public void setUp(TestContext context) {
+    configs.add(entry(IDP_URL_ID, SamlConfiguration.IDP_URL_CODE, "https://idp.example.org"));
+    configs.add(entry("022d8342-fa51-44d1-8b2b-27da36e11f07", SamlConfiguration.KEYSTORE_FILE_CODE, "a2V5c3RvcmU="));
+    configs.add(entry(BINDING_ID, SamlConfiguration.SAML_BINDING_CODE, "POST"));
+
+    Async async = context.async();
+    okapi = rule.vertx().createHttpServer().requestHandler(request -> request.bodyHandler(body -> {
+      requests.add(request.method() + " " + request.path()
+        + (request.getParam("limit") != null ? " limit=" + request.getParam("limit") : "")
+        + (body.length() > 0 ? " " + body.toJsonObject().getString("code") : ""));
+      answer(request);
+    })).listen(0, context.asyncAssertSuccess(server -> {
+      okapiUrl = "http://localhost:" + server.actualPort();
+      async.complete();
+    }));
+  }
+
+  @After
+  public void tearDown(TestContext context) {
+    System.clearProperty(HttpClientMock2.MOCK_MODE);
+    okapi.close(context.asyncAssertSuccess());
+  }
+
+  private static JsonObject entry(String id, String code, String value) {
+    return new JsonObject().put("id", id).put("module", "LOGIN-SAML").put("configName", "saml")
+      .put("code", code).put("value", value);
+  }
+
+  private void answer(HttpServerRequest request) {
+    String path = request.path();
+    if ("GET".equals(request.method().name()) && ConfigurationsClient.CONFIGURATIONS_ENTRIES_ENDPOINT_URL.equals(path)) {
+      // the query of checkEntry ends with "code== <code>)"
+      String query = request.getParam("query");
+      JsonArray found = new JsonArray();
+      for (Object config : configs) {
+        String code = ((JsonObject) config).getString("code");
+        if (ALL_ENTRIES_QUERY.equals(query) || query.endsWith("code== " + code + ")")) {
+          found.add(config);
+        }
+      }
+      request.response().putHeader("Content-Type", "application/json")
+        .end(new JsonObject().put("configs", found).put("totalRecords", found.size()).encode());
+    } else if ("POST".equals(request.method().name())) {
+      request.response().setStatusCode(201).putHeader("Content-Type", "application/json").end("{}");
+    } else if ("PUT".equals(request.method().name())) {
+      String id = path.substring(path.lastIndexOf('/') + 1);
+      request.response().setStatusCode(failingIds.contains(id) ? 500 : 204).end();
+    } else {
+      request.response().setStatusCode(404).end();
+    }
+  }
+
+  private OkapiHeaders headers(String tenantId) {
+    OkapiHeaders headers = new OkapiHeaders();
+    headers.setUrl(okapiUrl);
+    headers.setTenant(tenantId);
+    headers.setToken("configurations-test");
+    return headers;
+  }
+
+  private long fetches() {
+    return requests.stream().filter(request -> request.equals("GET /configurations/entries limit=100")).count();
+  }
+
+  @Test
+  public void storeEntriesFetchesOnceAndWritesEachEntry(TestContext context) {
+    Map<String, String> entries = new LinkedHashMap<>();
+    entries.put(SamlConfiguration.IDP_URL_CODE, "https://idp.example.org/new");
+    entries.put(SamlConfiguration.USER_PROPERTY_CODE, "externalSystemId");
+    OkapiHeaders headers = headers("store-entries");
+
+    ConfigurationsClient.storeEntries(headers, entries).compose(stored -> {
+      context.assertEquals(1L, fetches());
+      context.assertTrue(requests.contains("PUT /configurations/entries/" + IDP_URL_ID + " idp.url"));
+      context.assertTrue(requests.contains("POST /configurations/entries user.property"));
+      context.assertEquals(3, requests.size());
+
+      // mapped locally from the fetched and the written entries
+      context.assertEquals("https://idp.example.org/new", stored.getIdpUrl());
+      context.assertEquals("externalSystemId", stored.getUserProperty());
+      context.assertEquals("a2V5c3RvcmU=", stored.getKeystore());
+      return ConfigurationsClient.getConfiguration(headers);
+    }).setHandler(context.asyncAssertSuccess(cached -> {
+      context.assertEquals(1L, fetches());
+      context.assertEquals("externalSystemId", cached.getUserProperty());
+    }));
+  }
+
+  @Test
+  public void partialFailureDropsCachedConfiguration(TestContext context) {
+    failingIds.add(BINDING_ID);
+    Map<String, String> entries = new LinkedHashMap<>();
+    entries.put(SamlConfiguration.IDP_URL_CODE, "https://idp.example.org/new");
+    entries.put(SamlConfiguration.SAML_BINDING_CODE, "REDIRECT");
+    OkapiHeaders headers = headers("partial-failure");
+    Async async = context.async();
+
+    ConfigurationsClient.getConfiguration(headers).setHandler(context.asyncAssertSuccess(loaded ->
+      ConfigurationsClient.storeEntries(headers, entries).setHandler(stored -> {
+        context.assertTrue(stored.failed());
+        context.assertFalse(ConfigurationsClient.isCached(headers.getTenant()));
+
+        // the written IdP URL may be stored, the configuration is fetched again
+        ConfigurationsClient.getConfiguration(headers).setHandler(context.asyncAssertSuccess(reloaded -> {
+          context.assertEquals(3L, fetches());
+          async.complete();
+        }));
+      })));
+  }
+
+  @Test
+  public void storeEntryUpdatesCachedConfiguration(TestContext context) {
+    OkapiHeaders headers = headers("store-entry");
+
+    ConfigurationsClient.getConfiguration(headers)
+      .compose(loaded -> ConfigurationsClient.storeEntry(headers, SamlConfiguration.SAML_BINDING_CODE, "REDIRECT"))
+      .compose(written -> ConfigurationsClient.getConfiguration(headers))
+      .setHandler(context.asyncAssertSuccess(cached -> {
+        context.assertEquals(1L, fetches());
+        context.assertTrue(requests.contains("PUT /configurations/entries/" + BINDING_ID + " saml.binding"));
+        context.assertEquals("REDIRECT", cached.getSamlBinding());
+        context.assertEquals("https://idp.example.org", cached.getIdpUrl());
+      }));
+  }
+
+  @Test
+  public void invalidateRemovesCachedConfiguration(TestContext context) {
+    OkapiHeaders headers = headers("invalidate");
+
+    ConfigurationsClient.getConfiguration(headers).compose(loaded -> {
+      context.assertTrue(ConfigurationsClient.isCached(headers.getTenant()));
+      ConfigurationsClient.invalidate(headers.getTenant());
+      context.assertFalse(ConfigurationsClient.isCached(headers.getTenant()));
+      return ConfigurationsClient.getConfiguration(headers);
+    }).setHandler(context.asyncAssertSuccess(reloaded -> context.assertEquals(2L, fetches())));
+  }
+
+  @Test
+  public void headersCheckedBeforeCache(TestContext context) {
+    OkapiHeaders headers = headers("missing-token");
+
+    ConfigurationsClient.getConfiguration(headers).setHandler(context.asyncAssertSuccess(loaded -> {
+      headers.setToken(null);
+
+      Future<SamlConfiguration> withoutToken = ConfigurationsClient.getConfiguration(headers);
+      context.assertTrue(withoutToken.failed());
+      context.assertEquals("Missing Token", withoutToken.cause().getMessage());
+    }));
+  }
+
+  @Test
+  public void storeEntriesAgainstMock(TestContext context) {
+    // entries and responses come from mock_content.json
+    System.setProperty(HttpClientMock2.MOCK_MODE, "true");
+    OkapiHeaders headers = new OkapiHeaders();
+    headers.setUrl("http://localhost:9130");
+    headers.setTenant("store-entries-mock");
+    headers.setToken("configurations-test");
+    Map<String, String> entries = new LinkedHashMap<>();
+    entries.put(SamlConfiguration.IDP_URL_CODE, "https://idp.ssocircle.com/new");
+    entries.put(SamlConfiguration.USER_PROPERTY_CODE, "externalSystemId");
+
+    ConfigurationsClient.storeEntries(headers, entries).setHandler(context.asyncAssertSuccess(stored -> {
+      context.assertEquals("https://idp.ssocircle.com/new", stored.getIdpUrl());
+      context.assertEquals("externalSystemId", stored.getUserProperty());
+      context.assertEquals("iOzPffanq1xj", stored.getKeystorePassword());
+      context.assertEquals("false", stored.getMetadataInvalidated());
+    }));
+  }
+}
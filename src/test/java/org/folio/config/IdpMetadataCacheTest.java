@@ -0,0 +1,165 @@
+package org.folio.config;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServer;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.folio.config.model.IdpMetadata;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(VertxUnitRunner.class)
+public class IdpMetadataCacheTest {
+
+  @Rule
+  public RunTestOnContext rule = new RunTestOnContext();
+
+  private static byte[] metadata(String attributes) {
+    return ("<?xml version=\"1.0\"?><md:EntityDescriptor xmlns:md=\"urn:oasis:names:tc:SAML:2.0:metadata\" "
+      + "entityID=\"https://idp.example.org\" " + attributes + "/>").getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void readsValidity() throws Exception {
+    IdpMetadataCache.Validity validity = IdpMetadataCache.parseValidity(
+      metadata("validUntil=\"2100-01-01T00:00:00Z\" cacheDuration=\"PT2H\""));
+
+    assertEquals(4102444800000L, validity.validUntil);
+    assertEquals(7200000L, validity.cacheDuration);
+  }
+
+  @Test
+  public void unlimitedWithoutAttributes() throws Exception {
+    IdpMetadataCache.Validity validity = IdpMetadataCache.parseValidity(metadata(""));
+
+    assertEquals(Long.MAX_VALUE, validity.validUntil);
+    assertEquals(0L, validity.cacheDuration);
+  }
+
+  @Test
+  public void lifetimeIsBounded() {
+    IdpMetadataCache cache = new IdpMetadataCache(1000, 100, 5000, 0, 1000, 1000, false);
+    IdpMetadataCache.Validity validity = new IdpMetadataCache.Validity();
+
+    assertEquals(1000, cache.expiresAt(validity, 0));
+
+    validity.cacheDuration = 10;
+    assertEquals(100, cache.expiresAt(validity, 0));
+
+    validity.cacheDuration = 60000;
+    assertEquals(5000, cache.expiresAt(validity, 0));
+
+    validity.validUntil = 2000;
+    assertEquals(2000, cache.expiresAt(validity, 0));
+  }
+
+  @Test
+  public void readsDocumentInPlace() throws Exception {
+    byte[] document = metadata("cacheDuration=\"PT2H\"");
+    ByteBuffer direct = ByteBuffer.allocateDirect(document.length);
+    direct.put(document).flip();
+
+    assertEquals(7200000L, IdpMetadataCache.parseValidity(direct).cacheDuration);
+
+    IdpMetadata metadata = new IdpMetadata("https://idp.example.org", direct, "v1", null, null, 0, 1000, 0, Long.MAX_VALUE);
+    assertArrayEquals(document, StreamUtils.copyToByteArray(metadata.toResource().getInputStream()));
+    assertArrayEquals(document, StreamUtils.copyToByteArray(metadata.toResource(null).getInputStream()));
+  }
+
+  /**
+   * Serves the document at {@code /metadata}, in one piece with Content-Length or chunked without it.
+   */
+  private void serve(TestContext context, byte[] document, boolean chunked, Handler<String> url) {
+    HttpServer server = rule.vertx().createHttpServer().requestHandler(request -> {
+      if (chunked) {
+        request.response().setChunked(true);
+        for (int i = 0; i < document.length; i += 256) {
+          request.response().write(Buffer.buffer().appendBytes(document, i, Math.min(256, document.length - i)));
+        }
+        request.response().end();
+      } else {
+        request.response().end(Buffer.buffer(document));
+      }
+    });
+    server.listen(0, context.asyncAssertSuccess(listening -> url.handle("http://localhost:" + listening.actualPort() + "/metadata")));
+  }
+
+  private static byte[] largeMetadata() {
+    StringBuilder padding = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      padding.append("<!-- padding of a large aggregate -->");
+    }
+    return ("<?xml version=\"1.0\"?>" + padding + "<md:EntitiesDescriptor "
+      + "xmlns:md=\"urn:oasis:names:tc:SAML:2.0:metadata\" cacheDuration=\"PT2H\"/>").getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void smallDocumentStaysOnHeap(TestContext context) {
+    IdpMetadataCache cache = new IdpMetadataCache(1000, 100, 5000, 1024, 1000, 1000, false);
+    byte[] document = metadata("cacheDuration=\"PT2H\"");
+    Async async = context.async();
+
+    serve(context, document, false, url -> cache.get(rule.vertx(), url).setHandler(context.asyncAssertSuccess(metadata -> {
+      context.assertFalse(metadata.getContent().isDirect());
+      context.assertEquals(document.length, metadata.getSize());
+      async.complete();
+    })));
+  }
+
+  @Test
+  public void largeDocumentIsMapped(TestContext context) {
+    IdpMetadataCache cache = new IdpMetadataCache(1000, 100, 5000, 1024, 1000, 1000, false);
+    byte[] document = largeMetadata();
+    Async async = context.async();
+
+    serve(context, document, false, url -> cache.get(rule.vertx(), url).setHandler(context.asyncAssertSuccess(metadata -> {
+      context.assertTrue(metadata.getContent().isDirect());
+      context.assertEquals(document.length, metadata.getSize());
+      async.complete();
+    })));
+  }
+
+  @Test
+  public void chunkedDocumentMovesToFileAtThreshold(TestContext context) {
+    IdpMetadataCache cache = new IdpMetadataCache(1000, 100, 5000, 1024, 1000, 1000, false);
+    byte[] document = largeMetadata();
+    Async async = context.async();
+
+    serve(context, document, true, url -> cache.get(rule.vertx(), url).setHandler(context.asyncAssertSuccess(metadata -> {
+      context.assertTrue(metadata.getContent().isDirect());
+      context.assertEquals(7200000L, metadata.getCacheDuration());
+      try {
+        context.assertTrue(Arrays.equals(document, StreamUtils.copyToByteArray(metadata.toResource().getInputStream())));
+      } catch (IOException e) {
+        context.fail(e);
+      }
+      async.complete();
+    })));
+  }
+
+  @Test
+  public void withoutThresholdNothingIsMapped(TestContext context) {
+    IdpMetadataCache cache = new IdpMetadataCache(1000, 100, 5000, 0, 1000, 1000, false);
+    byte[] document = largeMetadata();
+    Async async = context.async();
+
+    serve(context, document, true, url -> cache.get(rule.vertx(), url).setHandler(context.asyncAssertSuccess(metadata -> {
+      context.assertFalse(metadata.getContent().isDirect());
+      context.assertEquals(document.length, metadata.getSize());
+      async.complete();
+    })));
+  }
+}
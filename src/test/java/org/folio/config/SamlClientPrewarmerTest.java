@@ -0,0 +1,154 @@
+package org.folio.config;
+
+import io.vertx.core.Future;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.folio.config.model.SamlClientComposite;
+import org.folio.config.model.SamlConfiguration;
+import org.folio.rest.tools.client.test.HttpClientMock2;
+import org.folio.util.model.OkapiHeaders;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.pac4j.saml.client.SAML2Client;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+@RunWith(VertxUnitRunner.class)
+public class SamlClientPrewarmerTest {
+
+  @Rule
+  public RunTestOnContext rule = new RunTestOnContext();
+
+  private HttpServer okapi;
+
+  @After
+  public void tearDown() {
+    System.clearProperty(HttpClientMock2.MOCK_MODE);
+    System.clearProperty(SamlConfigHolder.MODULE_OKAPI_URL_PROPERTY);
+    System.clearProperty(SamlConfigHolder.MODULE_TOKEN_PROPERTY);
+    System.clearProperty(SamlClientPrewarmer.TENANTS_PROPERTY);
+    System.clearProperty(SamlClientPrewarmer.DISCOVER_PROPERTY);
+    System.clearProperty(SamlClientPrewarmer.TIMEOUT_PROPERTY);
+    if (okapi != null) {
+      okapi.close();
+    }
+  }
+
+  /**
+   * Okapi answering {@code /_/proxy/tenants} with the given status and tenants, on a random port.
+   */
+  private Future<String> startOkapi(int status, String... tenantIds) {
+    JsonArray tenants = new JsonArray();
+    for (String tenantId : tenantIds) {
+      tenants.add(new JsonObject().put("id", tenantId));
+    }
+    Future<String> okapiUrl = Future.future();
+    okapi = rule.vertx().createHttpServer().requestHandler(request -> {
+      if ("/_/proxy/tenants".equals(request.path()) && "module-token".equals(request.getHeader(OkapiHeaders.OKAPI_TOKEN_HEADER))) {
+        request.response().setStatusCode(status).end(tenants.encode());
+      } else {
+        request.response().setStatusCode(404).end();
+      }
+    }).listen(0, listening -> {
+      if (listening.failed()) {
+        okapiUrl.fail(listening.cause());
+      } else {
+        okapiUrl.complete("http://localhost:" + listening.result().actualPort());
+      }
+    });
+    return okapiUrl;
+  }
+
+  @Test
+  public void warmsUpDiscoveredTenants(TestContext context) {
+    // the configuration comes from mock_content.json
+    System.setProperty(HttpClientMock2.MOCK_MODE, "true");
+    System.setProperty(SamlConfigHolder.MODULE_TOKEN_PROPERTY, "module-token");
+    System.setProperty(SamlClientPrewarmer.DISCOVER_PROPERTY, "true");
+    SamlConfigHolder holder = SamlConfigHolder.getInstance();
+    List<String> loaded = new CopyOnWriteArrayList<>();
+    Async async = context.async();
+
+    startOkapi(200, "supertenant", "warmup-a", "warmup-b").setHandler(context.asyncAssertSuccess(okapiUrl -> {
+      System.setProperty(SamlConfigHolder.MODULE_OKAPI_URL_PROPERTY, okapiUrl);
+
+      new SamlClientPrewarmer(rule.vertx(), holder, okapiHeaders -> {
+        context.assertEquals("module-token", okapiHeaders.getToken());
+        loaded.add(okapiHeaders.getTenant());
+        return ConfigurationsClient.getConfiguration(okapiHeaders)
+          .map(configuration -> new SamlClientComposite(new SAML2Client(), configuration));
+      }).warmUp().setHandler(context.asyncAssertSuccess(warmedUp -> {
+        context.assertEquals(2, loaded.size());
+        context.assertTrue(loaded.contains("warmup-a") && loaded.contains("warmup-b"));
+        context.assertNotNull(holder.findClient("warmup-a"));
+        context.assertEquals("https://idp.ssocircle.com", holder.findClient("warmup-b").getConfiguration().getIdpUrl());
+        context.assertNotNull(holder.findOkapiHeaders("warmup-a"));
+        async.complete();
+      }));
+    }));
+  }
+
+  @Test
+  public void failedDiscoveryDoesNotFail(TestContext context) {
+    System.setProperty(SamlConfigHolder.MODULE_TOKEN_PROPERTY, "module-token");
+    System.setProperty(SamlClientPrewarmer.DISCOVER_PROPERTY, "true");
+    Async async = context.async();
+
+    startOkapi(500).setHandler(context.asyncAssertSuccess(okapiUrl -> {
+      System.setProperty(SamlConfigHolder.MODULE_OKAPI_URL_PROPERTY, okapiUrl);
+
+      new SamlClientPrewarmer(rule.vertx(), SamlConfigHolder.getInstance(), okapiHeaders -> {
+        context.fail("no tenant to warm up");
+        return Future.failedFuture("unexpected");
+      }).warmUp().setHandler(context.asyncAssertSuccess(warmedUp -> async.complete()));
+    }));
+  }
+
+  @Test
+  public void failedClientDoesNotFail(TestContext context) {
+    System.setProperty(SamlConfigHolder.MODULE_OKAPI_URL_PROPERTY, "http://localhost:9130");
+    System.setProperty(SamlClientPrewarmer.TENANTS_PROPERTY, "warmup-failing, warmup-ok");
+    SamlConfigHolder holder = SamlConfigHolder.getInstance();
+
+    new SamlClientPrewarmer(rule.vertx(), holder, okapiHeaders -> "warmup-ok".equals(okapiHeaders.getTenant())
+      ? Future.succeededFuture(new SamlClientComposite(new SAML2Client(), new SamlConfiguration()))
+      : Future.failedFuture("No KeyStore stored in configuration."))
+      .warmUp().setHandler(context.asyncAssertSuccess(warmedUp -> {
+        context.assertNull(holder.findClient("warmup-failing"));
+        context.assertNotNull(holder.findClient("warmup-ok"));
+      }));
+  }
+
+  @Test
+  public void readyWhenTimeBudgetRunsOut(TestContext context) {
+    System.setProperty(SamlConfigHolder.MODULE_OKAPI_URL_PROPERTY, "http://localhost:9130");
+    System.setProperty(SamlClientPrewarmer.TENANTS_PROPERTY, "warmup-slow");
+    System.setProperty(SamlClientPrewarmer.TIMEOUT_PROPERTY, "100");
+    long start = System.currentTimeMillis();
+
+    // the load never completes
+    new SamlClientPrewarmer(rule.vertx(), SamlConfigHolder.getInstance(), okapiHeaders -> Future.future())
+      .warmUp().setHandler(context.asyncAssertSuccess(warmedUp ->
+        context.assertTrue(System.currentTimeMillis() - start < 5000)));
+  }
+
+  @Test
+  public void skippedWithoutTenants(TestContext context) {
+    System.setProperty(SamlConfigHolder.MODULE_OKAPI_URL_PROPERTY, "http://localhost:9130");
+
+    Future<Void> warmedUp = new SamlClientPrewarmer(rule.vertx(), SamlConfigHolder.getInstance(), okapiHeaders -> {
+      context.fail("no tenant to warm up");
+      return Future.failedFuture("unexpected");
+    }).warmUp();
+
+    context.assertTrue(warmedUp.succeeded());
+  }
+}
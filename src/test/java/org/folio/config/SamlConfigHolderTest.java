@@ -0,0 +1,84 @@
+package org.folio.config;
+
+import io.vertx.core.Future;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.folio.config.model.SamlClientComposite;
+import org.folio.config.model.SamlConfiguration;
+import org.folio.util.TokenRejectedException;
+import org.folio.util.model.OkapiHeaders;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.pac4j.saml.client.SAML2Client;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(VertxUnitRunner.class)
+public class SamlConfigHolderTest {
+
+  @Rule
+  public RunTestOnContext rule = new RunTestOnContext();
+
+  @Test
+  public void concurrentCallersShareOneLoad(TestContext context) {
+    SamlConfigHolder holder = SamlConfigHolder.getInstance();
+    AtomicInteger loads = new AtomicInteger();
+    Future<SamlClientComposite> pendingLoad = Future.future();
+    Async async = context.async(3);
+
+    for (int i = 0; i < 3; i++) {
+      holder.findOrLoadClient("single-flight", false, () -> {
+        loads.incrementAndGet();
+        return pendingLoad;
+      }).setHandler(context.asyncAssertSuccess(client -> {
+        context.assertNotNull(holder.findClient("single-flight"));
+        async.countDown();
+      }));
+    }
+
+    context.assertEquals(1, loads.get());
+    pendingLoad.complete(new SamlClientComposite(new SAML2Client(), new SamlConfiguration()));
+  }
+
+  @Test
+  public void failedLoadIsRemembered(TestContext context) {
+    SamlConfigHolder holder = SamlConfigHolder.getInstance();
+    AtomicInteger loads = new AtomicInteger();
+    Async async = context.async();
+
+    holder.findOrLoadClient("failing", false, () -> {
+      loads.incrementAndGet();
+      return Future.failedFuture("no config");
+    }).setHandler(context.asyncAssertFailure(first ->
+      holder.findOrLoadClient("failing", false, () -> {
+        loads.incrementAndGet();
+        return Future.failedFuture("no config");
+      }).setHandler(context.asyncAssertFailure(second -> {
+        context.assertEquals(1, loads.get());
+        async.complete();
+      }))));
+  }
+
+  @Test
+  public void backgroundHeadersUseModuleToken(TestContext context) {
+    SamlConfigHolder holder = SamlConfigHolder.getInstance();
+    System.setProperty(SamlConfigHolder.MODULE_TOKEN_PROPERTY + ".background", "module-token");
+    try {
+      context.assertNull(holder.findOkapiHeaders("background"));
+
+      holder.putOkapiUrl("background", "http://localhost:9130");
+      OkapiHeaders headers = holder.findOkapiHeaders("background");
+      context.assertEquals("http://localhost:9130", headers.getUrl());
+      context.assertEquals("background", headers.getTenant());
+      context.assertEquals("module-token", headers.getToken());
+
+      holder.rejectOkapiHeaders("background", new TokenRejectedException(401, "expired"));
+      context.assertNull(holder.findOkapiHeaders("background"));
+    } finally {
+      System.clearProperty(SamlConfigHolder.MODULE_TOKEN_PROPERTY + ".background");
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package org.folio.config;
+
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.folio.config.model.SamlClientComposite;
+import org.folio.config.model.SamlConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.pac4j.saml.client.SAML2Client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RunWith(VertxUnitRunner.class)
+public class SamlConfigRefresherTest {
+
+  @Rule
+  public RunTestOnContext rule = new RunTestOnContext();
+
+  private final SamlConfigHolder holder = SamlConfigHolder.getInstance();
+  private final Map<String, String> values = new LinkedHashMap<>();
+  private HttpServer okapi;
+  private String okapiUrl;
+
+  /**
+   * mod-configuration answering with {@link #values}, the IdP metadata cannot be downloaded.
+   */
+  @Before
+  public void setUp(TestContext context) {
+    Async async = context.async();
+    okapi = rule.vertx().createHttpServer().requestHandler(request -> {
+      if (ConfigurationsClient.CONFIGURATIONS_ENTRIES_ENDPOINT_URL.equals(request.path())) {
+        JsonArray configs = ConfigurationCache.configs(values);
+        request.response().putHeader("Content-Type", "application/json")
+          .end(new JsonObject().put("configs", configs).put("totalRecords", configs.size()).encode());
+      } else {
+        request.response().setStatusCode(404).end();
+      }
+    }).listen(0, context.asyncAssertSuccess(server -> {
+      okapiUrl = "http://localhost:" + server.actualPort();
+      values.put(SamlConfiguration.IDP_URL_CODE, okapiUrl + "/idp-metadata");
+      values.put(SamlConfiguration.SAML_BINDING_CODE, "POST");
+      values.put(SamlConfiguration.USER_PROPERTY_CODE, "externalSystemId");
+      async.complete();
+    }));
+  }
+
+  @After
+  public void tearDown(TestContext context) {
+    okapi.close(context.asyncAssertSuccess());
+  }
+
+  private SamlClientComposite load(String tenantId, Map<String, String> cachedValues) {
+    System.setProperty(SamlConfigHolder.MODULE_TOKEN_PROPERTY + "." + tenantId, "module-token");
+    holder.putOkapiUrl(tenantId, okapiUrl);
+    SamlClientComposite client = new SamlClientComposite(new SAML2Client(),
+      ConfigurationObjectMapper.map(ConfigurationCache.configs(cachedValues), SamlConfiguration.class));
+    holder.putClient(tenantId, client);
+    return client;
+  }
+
+  private void unload(String tenantId) {
+    System.clearProperty(SamlConfigHolder.MODULE_TOKEN_PROPERTY + "." + tenantId);
+    holder.removeClient(tenantId);
+  }
+
+  @Test
+  public void unchangedClientIsKept(TestContext context) {
+    SamlClientComposite client = load("refresh-unchanged", values);
+
+    new SamlConfigRefresher(rule.vertx(), holder).refreshTenant("refresh-unchanged")
+      .setHandler(context.asyncAssertSuccess(refreshed -> {
+        context.assertEquals(client, holder.findClient("refresh-unchanged"));
+        unload("refresh-unchanged");
+      }));
+  }
+
+  @Test
+  public void changedMappingKeepsClient(TestContext context) {
+    Map<String, String> cachedValues = new LinkedHashMap<>(values);
+    cachedValues.put(SamlConfiguration.USER_PROPERTY_CODE, "username");
+    SamlClientComposite client = load("refresh-mapping", cachedValues);
+
+    new SamlConfigRefresher(rule.vertx(), holder).refreshTenant("refresh-mapping")
+      .setHandler(context.asyncAssertSuccess(refreshed -> {
+        SamlClientComposite current = holder.findClient("refresh-mapping");
+        context.assertNotEquals(client, current);
+        context.assertEquals(client.getClient(), current.getClient());
+        context.assertEquals("externalSystemId", current.getConfiguration().getUserProperty());
+        unload("refresh-mapping");
+      }));
+  }
+
+  @Test
+  public void removedConfigurationDropsClient(TestContext context) {
+    load("refresh-removed", values);
+    values.remove(SamlConfiguration.IDP_URL_CODE);
+
+    new SamlConfigRefresher(rule.vertx(), holder).refreshTenant("refresh-removed")
+      .setHandler(context.asyncAssertSuccess(refreshed -> {
+        context.assertNull(holder.findClient("refresh-removed"));
+        unload("refresh-removed");
+      }));
+  }
+
+  @Test
+  public void clientWithoutCredentialsIsDropped(TestContext context) {
+    holder.putClient("refresh-no-token", new SamlClientComposite(new SAML2Client(), new SamlConfiguration()));
+
+    new SamlConfigRefresher(rule.vertx(), holder).refreshTenant("refresh-no-token")
+      .setHandler(context.asyncAssertSuccess(refreshed -> context.assertNull(holder.findClient("refresh-no-token"))));
+  }
+
+  @Test
+  public void clientSettingsChanged(TestContext context) {
+    SamlConfiguration cached = new SamlConfiguration();
+    cached.setIdpUrl("https://idp.example.org");
+    cached.setSamlBinding("POST");
+    SamlConfiguration loaded = new SamlConfiguration();
+    loaded.setIdpUrl("https://idp.example.org");
+    loaded.setSamlBinding("POST");
+
+    loaded.setUserProperty("externalSystemId");
+    loaded.setSamlAttribute("UserID");
+    context.assertFalse(SamlConfigRefresher.clientSettingsChanged(cached, loaded));
+
+    loaded.setSamlBinding("REDIRECT");
+    context.assertTrue(SamlConfigRefresher.clientSettingsChanged(cached, loaded));
+
+    loaded.setSamlBinding("POST");
+    loaded.setKeystorePassword("changed");
+    context.assertTrue(SamlConfigRefresher.clientSettingsChanged(cached, loaded));
+  }
+}
@@ -0,0 +1,41 @@
+package org.folio.config;
+
+import org.folio.config.model.SamlConfiguration;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SamlStatusIndexTest {
+
+  private static SamlConfiguration configuration(String idpUrl, String keystore) {
+    SamlConfiguration configuration = new SamlConfiguration();
+    configuration.setIdpUrl(idpUrl);
+    configuration.setKeystore(keystore);
+    return configuration;
+  }
+
+  @Test
+  public void activeWithIdpUrlAndKeystore() {
+    SamlStatusIndex index = new SamlStatusIndex(60000);
+
+    index.update("diku", configuration("https://idp.example.org", "keystore"), 1000);
+    index.update("other", configuration("https://idp.example.org", ""), 1000);
+
+    assertEquals(Boolean.TRUE, index.isActive("diku", 2000));
+    assertEquals(Boolean.FALSE, index.isActive("other", 2000));
+    assertNull(index.isActive("unknown", 2000));
+  }
+
+  @Test
+  public void unknownWhenExpiredOrInvalidated() {
+    SamlStatusIndex index = new SamlStatusIndex(60000);
+    index.update("diku", configuration("https://idp.example.org", "keystore"), 1000);
+
+    assertNull(index.isActive("diku", 61000));
+
+    index.update("diku", configuration("https://idp.example.org", "keystore"), 61000);
+    index.invalidate("diku");
+    assertNull(index.isActive("diku", 61000));
+  }
+}
@@ -0,0 +1,59 @@
+package org.folio.config;
+
+import org.folio.config.model.SamlConfiguration;
+import org.folio.config.model.SpMetadata;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SpMetadataCacheTest {
+
+  private static SamlConfiguration configuration(String keystore) {
+    SamlConfiguration configuration = new SamlConfiguration();
+    configuration.setKeystore(keystore);
+    configuration.setOkapiUrl("http://localhost:9130");
+    configuration.setIdpUrl("https://idp.example.org");
+    return configuration;
+  }
+
+  @Test
+  public void regeneratedOnlyWhenKeystoreOrUrlsChange() {
+    SpMetadataCache cache = new SpMetadataCache();
+    SpMetadata metadata = cache.put("diku", configuration("keystore"), "<md:EntityDescriptor/>", 1500);
+
+    SamlConfiguration sameValues = configuration("keystore");
+    sameValues.setSamlAttribute("mail");
+    assertSame(metadata, cache.get("diku", sameValues));
+    assertNull(cache.get("diku", configuration("other keystore")));
+    assertNull(cache.get("other", sameValues));
+    assertEquals(1000, metadata.getLastModified());
+  }
+
+  @Test
+  public void keepsValidatorsOfSameDocument() {
+    SpMetadataCache cache = new SpMetadataCache();
+    SpMetadata metadata = cache.put("diku", configuration("keystore"), "<md:EntityDescriptor/>", 1000);
+
+    assertSame(metadata, cache.put("diku", configuration("keystore"), "<md:EntityDescriptor/>", 5000));
+    assertNotEquals(metadata.getEtag(), cache.put("diku", configuration("keystore"), "<md:Other/>", 5000).getEtag());
+  }
+
+  @Test
+  public void conditionalRequests() {
+    SpMetadata metadata = new SpMetadataCache().put("diku", configuration("keystore"), "<md:EntityDescriptor/>",
+      1514800800000L);
+
+    assertTrue(SpMetadataCache.notModified(metadata, metadata.getEtag(), null));
+    assertTrue(SpMetadataCache.notModified(metadata, "\"other\", W/" + metadata.getEtag(), null));
+    assertFalse(SpMetadataCache.notModified(metadata, "\"other\"", "Mon, 01 Jan 2018 10:00:00 GMT"));
+    assertTrue(SpMetadataCache.notModified(metadata, null, "Mon, 01 Jan 2018 10:00:00 GMT"));
+    assertFalse(SpMetadataCache.notModified(metadata, null, "Mon, 01 Jan 2018 09:59:59 GMT"));
+    assertFalse(SpMetadataCache.notModified(metadata, null, "yesterday"));
+    assertEquals("Mon, 01 Jan 2018 10:00:00 GMT", SpMetadataCache.httpDate(metadata.getLastModified()));
+  }
+}
@@ -0,0 +1,77 @@
+package org.folio.config;
+
+import org.folio.config.model.SamlClientComposite;
+import org.folio.config.model.SamlConfiguration;
+import org.junit.Test;
+import org.pac4j.saml.client.SAML2Client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TenantClientCacheTest {
+
+  private static SamlClientComposite composite() {
+    SamlConfiguration configuration = new SamlConfiguration();
+    configuration.setKeystore("a2V5c3RvcmU=");
+    return new SamlClientComposite(new SAML2Client(), configuration);
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsed() {
+    TenantClientCache cache = new TenantClientCache(2, 0, 0, TenantClientCache.EvictionPolicy.LRU, 1000);
+
+    cache.put("a", composite());
+    cache.put("b", composite());
+    cache.get("a");
+    cache.put("c", composite());
+
+    assertNotNull(cache.get("a"));
+    assertNull(cache.get("b"));
+    assertNotNull(cache.get("c"));
+  }
+
+  @Test
+  public void evictsLeastFrequentlyUsed() {
+    TenantClientCache cache = new TenantClientCache(2, 0, 0, TenantClientCache.EvictionPolicy.LFU, 1000);
+
+    cache.put("a", composite());
+    cache.put("b", composite());
+    cache.get("a");
+    cache.get("a");
+    cache.get("b");
+    cache.put("c", composite());
+
+    assertNotNull(cache.get("a"));
+    assertNull(cache.get("b"));
+  }
+
+  @Test
+  public void honoursByteLimit() {
+    SamlClientComposite composite = composite();
+    TenantClientCache cache = new TenantClientCache(0, 0, 0, TenantClientCache.EvictionPolicy.LRU, 1000);
+    long entryBytes = cache.estimateBytes(composite);
+
+    cache = new TenantClientCache(0, entryBytes * 2, 0, TenantClientCache.EvictionPolicy.LRU, 1000);
+    cache.put("a", composite);
+    cache.put("b", composite);
+    cache.put("c", composite);
+
+    assertEquals(2, cache.size());
+    assertTrue(cache.totalBytes() <= entryBytes * 2);
+    assertEquals(Long.valueOf(entryBytes), cache.memoryEstimates().get("c"));
+  }
+
+  @Test
+  public void dropsIdleEntries() throws InterruptedException {
+    TenantClientCache cache = new TenantClientCache(0, 0, 10, TenantClientCache.EvictionPolicy.LRU, 1000);
+
+    cache.put("a", composite());
+    Thread.sleep(30);
+    cache.evictIdle();
+
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.totalBytes());
+  }
+}
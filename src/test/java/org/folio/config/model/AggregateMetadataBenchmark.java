@@ -0,0 +1,139 @@
+package org.folio.config.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading one IdP out of a large federation aggregate: DOM of the whole document (what a client did before) against
+ * index + DOM of the entity. Run with the GC profiler to compare allocations:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *   -Dexec.mainClass=org.folio.config.model.AggregateMetadataBenchmark -Dexec.args="-prof gc"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class AggregateMetadataBenchmark {
+
+  private static final String ENTITY_ID = "https://idp%d.example.org/idp/shibboleth";
+
+  @Param({"1000", "10000"})
+  public int entities;
+
+  private Path fixture;
+  private ByteBuffer content;
+  private AggregateMetadataIndex index;
+  private String entityId;
+
+  @Setup(Level.Trial)
+  public void createFixture() throws IOException {
+    fixture = Files.createTempFile("aggregate-", ".xml");
+    writeAggregate(fixture, entities);
+    try (FileChannel channel = FileChannel.open(fixture)) {
+      content = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    index = AggregateMetadataIndex.build(content);
+    entityId = String.format(ENTITY_ID, entities / 2);
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteFixture() throws IOException {
+    Files.deleteIfExists(fixture);
+  }
+
+  @Benchmark
+  public Document parseWholeAggregate() throws Exception {
+    byte[] bytes = new byte[content.limit()];
+    content.duplicate().get(bytes);
+    return parse(bytes);
+  }
+
+  @Benchmark
+  public AggregateMetadataIndex buildIndex() throws IOException {
+    return AggregateMetadataIndex.build(content);
+  }
+
+  @Benchmark
+  public Document parseIndexedEntity() throws Exception {
+    return parse(index.materialize(content, entityId));
+  }
+
+  private static Document parse(byte[] bytes) throws Exception {
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    return factory.newDocumentBuilder().parse(new ByteArrayInputStream(bytes));
+  }
+
+  /**
+   * Entities shaped like the ones in real aggregates: a signing certificate, some endpoints and UI info.
+   */
+  static void writeAggregate(Path file, int entities) throws IOException {
+    StringBuilder certificate = new StringBuilder();
+    for (int i = 0; i < 20; i++) {
+      certificate.append("MIIDdzCCAl+gAwIBAgIEbKxYvDANBgkqhkiG9w0BAQsFADBsMRAwDgYDVQQGEwdVbmtub3duMRAwDg\n");
+    }
+
+    try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+      writer.write("<md:EntitiesDescriptor xmlns:md=\"urn:oasis:names:tc:SAML:2.0:metadata\""
+        + " xmlns:ds=\"http://www.w3.org/2000/09/xmldsig#\" xmlns:mdui=\"urn:oasis:names:tc:SAML:metadata:ui\""
+        + " Name=\"https://federation.example.org\">\n");
+      for (int i = 0; i < entities; i++) {
+        String entityId = String.format(ENTITY_ID, i);
+        writer.write("<md:EntityDescriptor entityID=\"" + entityId + "\">\n"
+          + "<md:IDPSSODescriptor protocolSupportEnumeration=\"urn:oasis:names:tc:SAML:2.0:protocol\">\n"
+          + "<md:Extensions><mdui:UIInfo><mdui:DisplayName xml:lang=\"en\">IdP " + i + "</mdui:DisplayName>"
+          + "</mdui:UIInfo></md:Extensions>\n"
+          + "<md:KeyDescriptor use=\"signing\"><ds:KeyInfo><ds:X509Data><ds:X509Certificate>\n"
+          + certificate
+          + "</ds:X509Certificate></ds:X509Data></ds:KeyInfo></md:KeyDescriptor>\n"
+          + "<md:SingleSignOnService Binding=\"urn:oasis:names:tc:SAML:2.0:bindings:HTTP-POST\""
+          + " Location=\"" + entityId + "/SSO/POST\"/>\n"
+          + "<md:SingleSignOnService Binding=\"urn:oasis:names:tc:SAML:2.0:bindings:HTTP-Redirect\""
+          + " Location=\"" + entityId + "/SSO/Redirect\"/>\n"
+          + "</md:IDPSSODescriptor>\n"
+          + "</md:EntityDescriptor>\n");
+      }
+      writer.write("</md:EntitiesDescriptor>\n");
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    OptionsBuilder options = new OptionsBuilder();
+    options.include(AggregateMetadataBenchmark.class.getSimpleName());
+    if (args.length > 1 && "-prof".equals(args[0])) {
+      options.addProfiler(args[1]);
+    }
+    new Runner(options.build()).run();
+  }
+}
@@ -0,0 +1,96 @@
+package org.folio.config.model;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AggregateMetadataIndexTest {
+
+  private static final String MD_NS = "urn:oasis:names:tc:SAML:2.0:metadata";
+  private static final String DS_NS = "http://www.w3.org/2000/09/xmldsig#";
+
+  private static final String AGGREGATE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+    + "<!-- federation aggregate -->\n"
+    + "<md:EntitiesDescriptor xmlns:md=\"" + MD_NS + "\" xmlns:ds=\"" + DS_NS + "\" Name=\"a > b\">\n"
+    + "  <md:EntityDescriptor entityID=\"https://idp1.example.org\">\n"
+    + "    <md:IDPSSODescriptor><ds:KeyInfo><![CDATA[</md:EntityDescriptor>]]></ds:KeyInfo></md:IDPSSODescriptor>\n"
+    + "  </md:EntityDescriptor>\n"
+    + "  <md:EntitiesDescriptor Name=\"nested\">\n"
+    + "    <md:EntityDescriptor xmlns:md=\"" + MD_NS + "\" entityID=\"https://idp2.example.org/?a=1&amp;b=2\"/>\n"
+    + "  </md:EntitiesDescriptor>\n"
+    + "</md:EntitiesDescriptor>\n";
+
+  private static ByteBuffer bytes(String xml) {
+    return ByteBuffer.wrap(xml.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static Element parse(byte[] document) throws Exception {
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    Document parsed = factory.newDocumentBuilder().parse(new ByteArrayInputStream(document));
+    return parsed.getDocumentElement();
+  }
+
+  @Test
+  public void indexesEntities() throws IOException {
+    AggregateMetadataIndex index = AggregateMetadataIndex.build(bytes(AGGREGATE));
+
+    assertTrue(index.isAggregate());
+    assertEquals(2, index.size());
+    assertTrue(index.contains("https://idp1.example.org"));
+    assertTrue(index.contains("https://idp2.example.org/?a=1&b=2"));
+    assertFalse(index.contains("https://idp3.example.org"));
+  }
+
+  @Test
+  public void materializesStandaloneEntity() throws Exception {
+    ByteBuffer content = bytes(AGGREGATE);
+    AggregateMetadataIndex index = AggregateMetadataIndex.build(content);
+
+    Element entity = parse(index.materialize(content, "https://idp1.example.org"));
+    assertEquals(MD_NS, entity.getNamespaceURI());
+    assertEquals("EntityDescriptor", entity.getLocalName());
+    assertEquals("https://idp1.example.org", entity.getAttribute("entityID"));
+    assertEquals(1, entity.getElementsByTagNameNS(DS_NS, "KeyInfo").getLength());
+
+    Element nested = parse(index.materialize(content, "https://idp2.example.org/?a=1&b=2"));
+    assertEquals("https://idp2.example.org/?a=1&b=2", nested.getAttribute("entityID"));
+
+    assertNull(index.materialize(content, "https://idp3.example.org"));
+  }
+
+  @Test
+  public void indexesSingleEntity() throws IOException {
+    AggregateMetadataIndex index = AggregateMetadataIndex.build(bytes(
+      "<EntityDescriptor xmlns=\"" + MD_NS + "\" entityID=\"https://idp.example.org\"></EntityDescriptor>"));
+
+    assertFalse(index.isAggregate());
+    assertTrue(index.contains("https://idp.example.org"));
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsDtd() throws IOException {
+    AggregateMetadataIndex.build(bytes("<!DOCTYPE foo [<!ENTITY x \"y\">]><EntitiesDescriptor/>"));
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsTruncatedDocument() throws IOException {
+    AggregateMetadataIndex.build(bytes(AGGREGATE.substring(0, AGGREGATE.length() / 2)));
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsOtherEncodings() throws IOException {
+    AggregateMetadataIndex.build(bytes("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><EntitiesDescriptor/>"));
+  }
+}
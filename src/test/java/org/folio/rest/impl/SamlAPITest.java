@@ -12,6 +12,8 @@ import io.vertx.ext.unit.junit.VertxUnitRunner;
 import org.folio.rest.RestVerticle;
 import org.folio.rest.jaxrs.model.SamlConfigRequest;
 import org.folio.rest.tools.client.test.HttpClientMock2;
+import org.folio.util.BoundedWorkerExecutor;
+import org.folio.util.SamlResponseGate;
 import org.folio.util.TestingClasspathResolver;
 import org.junit.After;
 import org.junit.Before;
@@ -25,12 +27,17 @@ import org.w3c.dom.ls.LSResourceResolver;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
 
 import static io.restassured.RestAssured.given;
 import static io.restassured.module.jsv.JsonSchemaValidator.matchesJsonSchemaInClasspath;
 import static org.folio.util.Base64AwareXsdMatcher.matchesBase64XsdInClasspath;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
 
 /**
  * @author rsass
@@ -74,6 +81,31 @@ public class SamlAPITest {
     vertx.close(context.asyncAssertSuccess());
   }
 
+  /**
+   * RelayState signed by {@code /saml/login}, with the key the callback verifies it with.
+   */
+  private static String relayState(String stripesUrl) {
+    return given()
+      .header(TENANT_HEADER)
+      .header(TOKEN_HEADER)
+      .header(OKAPI_URL_HEADER)
+      .header(JSON_CONTENT_TYPE_HEADER)
+      .body(new JsonObject().put("stripesUrl", stripesUrl).encode())
+      .post("/saml/login")
+      .then()
+      .statusCode(200)
+      .extract().path("relayState");
+  }
+
+  /**
+   * Base64 encoded SAML Response {@link SamlResponseGate} can scan, the mock client accepts any the gate lets through.
+   */
+  private static String samlResponse(String id, String destination) {
+    String xml = "<samlp:Response xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\" ID=\"" + id + "\" Version=\"2.0\""
+      + (destination != null ? " Destination=\"" + destination + "\"" : "") + "/>";
+    return Base64.getEncoder().encodeToString(xml.getBytes(StandardCharsets.UTF_8));
+  }
+
   @Test
   public void checkEndpointTests() {
 
@@ -122,7 +154,7 @@ public class SamlAPITest {
       .contentType(ContentType.JSON)
       .body(matchesJsonSchemaInClasspath("ramls/schemas/SamlLogin.json"))
       .body("bindingMethod", equalTo("POST"))
-      .body("relayState", equalTo(STRIPES_URL))
+      .body("relayState", endsWith("." + STRIPES_URL))
       .statusCode(200);
 
   }
@@ -146,6 +178,43 @@ public class SamlAPITest {
 
   }
 
+  @Test
+  public void metadataEndpointTests() {
+
+    String etag = given()
+      .header(TENANT_HEADER)
+      .header(TOKEN_HEADER)
+      .header(OKAPI_URL_HEADER)
+      .get("/saml/metadata")
+      .then()
+      .statusCode(200)
+      .contentType(ContentType.XML)
+      .body(containsString("EntityDescriptor"))
+      .header("Last-Modified", notNullValue())
+      .extract().header("ETag");
+
+    // unchanged since the first request
+    given()
+      .header(TENANT_HEADER)
+      .header(TOKEN_HEADER)
+      .header(OKAPI_URL_HEADER)
+      .header("If-None-Match", etag)
+      .get("/saml/metadata")
+      .then()
+      .statusCode(304)
+      .header("ETag", etag);
+
+    given()
+      .header(TENANT_HEADER)
+      .header(TOKEN_HEADER)
+      .header(OKAPI_URL_HEADER)
+      .header("If-None-Match", "\"outdated\"")
+      .get("/saml/metadata")
+      .then()
+      .statusCode(200)
+      .header("ETag", etag);
+  }
+
   @Test
   public void callbackEndpointTests() throws IOException {
 
@@ -156,8 +225,8 @@ public class SamlAPITest {
       .header(TENANT_HEADER)
       .header(TOKEN_HEADER)
       .header(OKAPI_URL_HEADER)
-      .formParam("SAMLResponse", "saml-response")
-      .formParam("RelayState", STRIPES_URL + testPath)
+      .formParam("SAMLResponse", samlResponse("_callback", null))
+      .formParam("RelayState", relayState(STRIPES_URL + testPath))
       .post("/saml/callback")
       .then()
       .statusCode(302)
@@ -165,6 +234,80 @@ public class SamlAPITest {
       .header("x-okapi-token", "saml-token")
       .cookie("ssoToken", "saml-token");
 
+    // unsigned RelayState
+    given()
+      .header(TENANT_HEADER)
+      .header(TOKEN_HEADER)
+      .header(OKAPI_URL_HEADER)
+      .formParam("SAMLResponse", samlResponse("_callback", null))
+      .formParam("RelayState", STRIPES_URL + testPath)
+      .post("/saml/callback")
+      .then()
+      .statusCode(400);
+
+  }
+
+  @Test
+  public void callbackRejectsReplayedResponse() {
+
+    for (int expectedStatus : new int[]{302, 403}) {
+      given()
+        .header(TENANT_HEADER)
+        .header(TOKEN_HEADER)
+        .header(OKAPI_URL_HEADER)
+        .formParam("SAMLResponse", samlResponse("_replayed", null))
+        .formParam("RelayState", relayState(STRIPES_URL + "/test/path"))
+        .post("/saml/callback")
+        .then()
+        .statusCode(expectedStatus);
+    }
+  }
+
+  @Test
+  public void callbackRejectsResponsesFailingTheGate() {
+
+    String misdirected = samlResponse("_misdirected", "https://sp.example.org/saml/callback");
+    char[] oversized = new char[SamlResponseGate.DEFAULT_MAX_RESPONSE_SIZE + 1];
+    Arrays.fill(oversized, 'A');
+
+    for (String response : Arrays.asList(misdirected, new String(oversized), "not a saml response")) {
+      given()
+        .header(TENANT_HEADER)
+        .header(TOKEN_HEADER)
+        .header(OKAPI_URL_HEADER)
+        .formParam("SAMLResponse", response)
+        .formParam("RelayState", relayState(STRIPES_URL + "/test/path"))
+        .post("/saml/callback")
+        .then()
+        .statusCode(400);
+    }
+  }
+
+  @Test
+  public void callbackExecutorPerVertxInstance(TestContext context) {
+    Vertx other = Vertx.vertx();
+
+    // created by ApiInitializer for the deployed instance
+    BoundedWorkerExecutor executor = SamlAPI.callbackExecutor(vertx);
+    context.assertTrue(executor == SamlAPI.callbackExecutor(vertx));
+    context.assertFalse(executor == SamlAPI.callbackExecutor(other));
+
+    other.close(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void createCallbackExecutorClosesPrevious(TestContext context) {
+    Vertx other = Vertx.vertx();
+
+    BoundedWorkerExecutor previous = SamlAPI.createCallbackExecutor(other);
+    BoundedWorkerExecutor created = SamlAPI.createCallbackExecutor(other);
+    context.assertTrue(created == SamlAPI.callbackExecutor(other));
+    context.assertTrue(previous.submit(future -> future.complete()).failed());
+
+    created.submit(future -> future.complete("validated")).setHandler(context.asyncAssertSuccess(result -> {
+      context.assertEquals("validated", result);
+      other.close(context.asyncAssertSuccess());
+    }));
   }
 
   @Test
@@ -0,0 +1,59 @@
+package org.folio.session;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AssertionReplayCacheTest {
+
+  private static final long NOW = 1_000_000L;
+
+  @Test
+  public void rejectsReplayedId() {
+    AssertionReplayCache cache = new AssertionReplayCache(60000, 1000, 1000);
+
+    assertTrue(cache.consume("t", Arrays.asList("response-1", "assertion-1"), NOW + 5000, NOW));
+    assertFalse(cache.consume("t", Collections.singletonList("response-1"), NOW + 5000, NOW + 10));
+    assertFalse(cache.consume("t", Collections.singletonList("assertion-1"), NOW + 30000, NOW + 10));
+    assertTrue(cache.consume("other", Collections.singletonList("response-1"), NOW + 5000, NOW + 10));
+  }
+
+  @Test
+  public void forgetsExpiredIds() {
+    AssertionReplayCache cache = new AssertionReplayCache(60000, 1000, 1000);
+
+    cache.consume("t", Collections.singletonList("response-1"), NOW + 5000, NOW);
+    cache.purge(NOW + 7000);
+
+    assertEquals(0, cache.size());
+    assertTrue(cache.consume("t", Collections.singletonList("response-1"), NOW + 12000, NOW + 7000));
+  }
+
+  @Test
+  public void capsTtl() {
+    AssertionReplayCache cache = new AssertionReplayCache(10000, 1000, 1000);
+
+    cache.consume("t", Collections.singletonList("response-1"), Long.MAX_VALUE, NOW);
+
+    assertFalse(cache.consume("t", Collections.singletonList("response-1"), Long.MAX_VALUE, NOW + 9000));
+    assertTrue(cache.consume("t", Collections.singletonList("response-1"), Long.MAX_VALUE, NOW + 12000));
+  }
+
+  @Test
+  public void dropsOldestBucketWhenFull() {
+    AssertionReplayCache cache = new AssertionReplayCache(60000, 1000, 2);
+
+    cache.consume("t", Collections.singletonList("a"), NOW + 2000, NOW);
+    cache.consume("t", Collections.singletonList("b"), NOW + 5000, NOW);
+    cache.consume("t", Collections.singletonList("c"), NOW + 8000, NOW);
+
+    assertEquals(2, cache.size());
+    assertTrue(cache.consume("t", Collections.singletonList("a"), NOW + 2000, NOW));
+    assertFalse(cache.consume("t", Collections.singletonList("c"), NOW + 8000, NOW));
+  }
+}
@@ -0,0 +1,99 @@
+package org.folio.users;
+
+import io.vertx.core.json.JsonObject;
+import org.folio.users.model.SamlUser;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UserIndexTest {
+
+  private static final String ID = "1ad737b0-d847-11e6-bf26-cec0c932ce01";
+
+  @Test
+  public void findsUser() {
+    UserIndex index = new UserIndex();
+    assertTrue(index.put("ext-1", new SamlUser(ID, "jdoe", true)));
+
+    SamlUser user = index.find("ext-1");
+    assertEquals(ID, user.getId());
+    assertEquals("jdoe", user.getUsername());
+    assertTrue(user.isActive());
+    assertNull(index.find("ext-2"));
+  }
+
+  @Test
+  public void replacesUpdatedUser() {
+    UserIndex index = new UserIndex();
+    index.put("ext-1", new SamlUser(ID, "jdoe", true));
+    index.put("ext-2", new SamlUser(ID, "jdoe", false));
+
+    assertNull(index.find("ext-1"));
+    assertFalse(index.find("ext-2").isActive());
+    assertEquals(1, index.size());
+  }
+
+  @Test
+  public void sharedValueIsAmbiguous() {
+    UserIndex index = new UserIndex();
+    index.put("ext-1", new SamlUser(ID, "jdoe", true));
+    index.put("ext-1", new SamlUser(UUID.randomUUID().toString(), "jroe", true));
+
+    assertNull(index.find("ext-1"));
+  }
+
+  @Test
+  public void clearedValueRemovesUser() {
+    UserIndex index = new UserIndex();
+    index.put("ext-1", new SamlUser(ID, "jdoe", true));
+
+    assertFalse(index.put(null, new SamlUser(ID, "jdoe", true)));
+    assertNull(index.find("ext-1"));
+    assertEquals(0, index.size());
+
+    // indexed again once the value is set
+    assertTrue(index.put("ext-2", new SamlUser(ID, "jdoe", true)));
+    assertEquals(ID, index.find("ext-2").getId());
+    assertEquals(1, index.size());
+  }
+
+  @Test
+  public void skipsNonUuidIds() {
+    assertFalse(new UserIndex().put("ext-1", new SamlUser("saml-user", "jdoe", true)));
+  }
+
+  @Test
+  public void growsAndCompacts() {
+    UserIndex index = new UserIndex();
+    UUID[] ids = new UUID[5000];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = UUID.randomUUID();
+      index.put("ext-" + i, new SamlUser(ids[i].toString(), "user" + i, true));
+    }
+    for (int i = 0; i < ids.length; i++) {
+      index.put("ext-" + i, new SamlUser(ids[i].toString(), "renamed" + i, i % 2 == 0));
+    }
+
+    assertEquals(ids.length, index.size());
+    for (int i = 0; i < ids.length; i++) {
+      SamlUser user = index.find("ext-" + i);
+      assertEquals(ids[i].toString(), user.getId());
+      assertEquals("renamed" + i, user.getUsername());
+      assertEquals(i % 2 == 0, user.isActive());
+    }
+  }
+
+  @Test
+  public void readsDottedProperty() {
+    JsonObject user = new JsonObject().put("personal", new JsonObject().put("email", "jdoe@example.org"));
+
+    assertEquals("jdoe@example.org", UserIndexReplicator.propertyValue(user, "personal.email"));
+    assertNull(UserIndexReplicator.propertyValue(user, "personal"));
+    assertNull(UserIndexReplicator.propertyValue(user, "externalSystemId"));
+  }
+}
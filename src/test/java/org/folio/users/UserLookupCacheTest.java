@@ -0,0 +1,87 @@
+package org.folio.users;
+
+import io.vertx.core.Future;
+import org.folio.users.model.SamlUser;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UserLookupCacheTest {
+
+  private static final SamlUser USER = new SamlUser("id", "samluser", true);
+
+  private static Supplier<Future<List<SamlUser>>> loader(AtomicInteger calls, List<SamlUser> users) {
+    return () -> {
+      calls.incrementAndGet();
+      return Future.succeededFuture(users);
+    };
+  }
+
+  @Test
+  public void reusesFoundUser() {
+    UserLookupCache cache = new UserLookupCache(60000, 5000, 10);
+    AtomicInteger calls = new AtomicInteger();
+
+    cache.findUsers("t", "externalSystemId", "x", loader(calls, Collections.singletonList(USER)));
+    List<SamlUser> users = cache.findUsers("t", "externalSystemId", "x", loader(calls, Collections.singletonList(USER))).result();
+
+    assertEquals(1, calls.get());
+    assertEquals("samluser", users.get(0).getUsername());
+  }
+
+  @Test
+  public void doesNotCacheAmbiguousResults() {
+    UserLookupCache cache = new UserLookupCache(60000, 5000, 10);
+    AtomicInteger calls = new AtomicInteger();
+
+    cache.findUsers("t", "externalSystemId", "x", loader(calls, Arrays.asList(USER, USER)));
+    cache.findUsers("t", "externalSystemId", "x", loader(calls, Arrays.asList(USER, USER)));
+
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void negativeResultsExpire() throws InterruptedException {
+    UserLookupCache cache = new UserLookupCache(60000, 1, 10);
+    AtomicInteger calls = new AtomicInteger();
+
+    cache.findUsers("t", "externalSystemId", "x", loader(calls, Collections.emptyList()));
+    Thread.sleep(5);
+    cache.findUsers("t", "externalSystemId", "x", loader(calls, Collections.emptyList()));
+
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void userPropertyChangeDropsTenant() {
+    UserLookupCache cache = new UserLookupCache(60000, 5000, 10);
+    AtomicInteger calls = new AtomicInteger();
+
+    cache.findUsers("t", "externalSystemId", "x", loader(calls, Collections.singletonList(USER)));
+    assertTrue(cache.findUsers("t", "username", "x", loader(calls, Collections.emptyList())).result().isEmpty());
+
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsed() {
+    UserLookupCache cache = new UserLookupCache(60000, 5000, 2);
+    AtomicInteger calls = new AtomicInteger();
+
+    cache.findUsers("t", "externalSystemId", "a", loader(calls, Collections.singletonList(USER)));
+    cache.findUsers("t", "externalSystemId", "b", loader(calls, Collections.singletonList(USER)));
+    cache.findUsers("t", "externalSystemId", "a", loader(calls, Collections.singletonList(USER)));
+    cache.findUsers("t", "externalSystemId", "c", loader(calls, Collections.singletonList(USER)));
+    cache.findUsers("t", "externalSystemId", "a", loader(calls, Collections.singletonList(USER)));
+    cache.findUsers("t", "externalSystemId", "b", loader(calls, Collections.singletonList(USER)));
+
+    assertEquals(4, calls.get());
+  }
+}
@@ -0,0 +1,70 @@
+package org.folio.users;
+
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.folio.util.model.OkapiHeaders;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class UsersClientTest {
+
+  private static final String ID = "1ad737b0-d847-11e6-bf26-cec0c932ce01";
+
+  @Rule
+  public RunTestOnContext rule = new RunTestOnContext();
+
+  private HttpServer okapi;
+  private OkapiHeaders headers;
+
+  /**
+   * mod-users knowing one user, its externalSystemId is {@code ext-new}.
+   */
+  @Before
+  public void setUp(TestContext context) {
+    Async async = context.async();
+    okapi = rule.vertx().createHttpServer().requestHandler(request -> {
+      JsonArray users = new JsonArray();
+      if ("/users".equals(request.path())
+        && ("id==\"" + ID + "\" and externalSystemId==\"ext-new\"").equals(request.getParam("query"))) {
+        users.add(new JsonObject().put("id", ID).put("username", "jdoe").put("active", true));
+      }
+      request.response().putHeader("Content-Type", "application/json")
+        .end(new JsonObject().put("users", users).put("totalRecords", users.size()).encode());
+    }).listen(0, context.asyncAssertSuccess(server -> {
+      headers = new OkapiHeaders();
+      headers.setUrl("http://localhost:" + server.actualPort());
+      headers.setTenant("users-test");
+      headers.setToken("users-test");
+      async.complete();
+    }));
+  }
+
+  @After
+  public void tearDown(TestContext context) {
+    okapi.close(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void findUserConfirmsProperty(TestContext context) {
+    UsersClient.findUser(headers, ID, "externalSystemId", "ext-new").setHandler(context.asyncAssertSuccess(users -> {
+      context.assertEquals(1, users.size());
+      context.assertEquals("jdoe", users.get(0).getUsername());
+    }));
+  }
+
+  @Test
+  public void findUserMissesChangedProperty(TestContext context) {
+    // the index still maps the old value to the user
+    UsersClient.findUser(headers, ID, "externalSystemId", "ext-old").setHandler(context.asyncAssertSuccess(users ->
+      context.assertTrue(users.isEmpty())));
+  }
+}
@@ -0,0 +1,67 @@
+package org.folio.util;
+
+import io.vertx.core.Future;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(VertxUnitRunner.class)
+public class BoundedWorkerExecutorTest {
+
+  @Rule
+  public RunTestOnContext rule = new RunTestOnContext();
+
+  @Test
+  public void rejectsWhenQueueIsFull(TestContext context) {
+    BoundedWorkerExecutor executor = new BoundedWorkerExecutor(rule.vertx(), "bounded-test", 1, 1);
+    CountDownLatch release = new CountDownLatch(1);
+    Async async = context.async(2);
+
+    Future<String> running = executor.submit(future -> {
+      try {
+        release.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      future.complete("first");
+    });
+    Future<String> queued = executor.submit(future -> future.complete("second"));
+    Future<String> rejected = executor.submit(future -> future.complete("third"));
+
+    context.assertTrue(rejected.failed());
+    context.assertTrue(rejected.cause() instanceof RejectedExecutionException);
+    context.assertEquals(1L, executor.getRejected());
+    context.assertEquals(2, executor.getInFlight());
+
+    running.setHandler(context.asyncAssertSuccess(result -> {
+      context.assertEquals("first", result);
+      async.countDown();
+    }));
+    queued.setHandler(context.asyncAssertSuccess(result -> {
+      context.assertEquals("second", result);
+      context.assertEquals(0, executor.getQueueDepth());
+      async.countDown();
+    }));
+
+    release.countDown();
+  }
+
+  @Test
+  public void closedExecutorFailsTask(TestContext context) {
+    BoundedWorkerExecutor executor = new BoundedWorkerExecutor(rule.vertx(), "closed-test", 1, 1);
+    executor.close();
+
+    Future<String> failed = executor.submit(future -> future.complete("never"));
+
+    context.assertTrue(failed.failed());
+    context.assertEquals(0, executor.getInFlight());
+  }
+}
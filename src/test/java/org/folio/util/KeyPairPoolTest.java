@@ -0,0 +1,48 @@
+package org.folio.util;
+
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class KeyPairPoolTest {
+
+  private final List<Runnable> tasks = new ArrayList<>();
+
+  private void runTasks() {
+    while (!tasks.isEmpty()) {
+      tasks.remove(0).run();
+    }
+  }
+
+  @Test
+  public void refillsInBackground() throws Exception {
+    KeyPairPool pool = new KeyPairPool(2, 1024, tasks::add);
+
+    pool.refill();
+    pool.refill();
+    assertEquals(1, tasks.size());
+    runTasks();
+    assertEquals(2, pool.available());
+
+    KeyPair keyPair = pool.take();
+    assertEquals(1024, ((RSAPublicKey) keyPair.getPublic()).getModulus().bitLength());
+    assertEquals(1, pool.available());
+    runTasks();
+    assertEquals(2, pool.available());
+  }
+
+  @Test
+  public void generatesWhenEmpty() throws Exception {
+    KeyPairPool pool = new KeyPairPool(0, 1024, tasks::add);
+
+    assertNotNull(pool.take());
+    assertEquals(0, tasks.size());
+    assertEquals(0, pool.available());
+  }
+}
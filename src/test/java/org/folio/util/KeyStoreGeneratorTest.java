@@ -0,0 +1,31 @@
+package org.folio.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class KeyStoreGeneratorTest {
+
+  @Test
+  public void generatesLoadableKeyStore() throws Exception {
+    KeyPair keyPair = KeyStoreGenerator.generateKeyPair(KeyStoreGenerator.DEFAULT_KEY_SIZE);
+
+    byte[] bytes = KeyStoreGenerator.generateKeyStore(keyPair, "diku", "storePassword", "keyPassword");
+
+    KeyStore keyStore = KeyStore.getInstance("JKS");
+    keyStore.load(new ByteArrayInputStream(bytes), "storePassword".toCharArray());
+    assertNotNull(keyStore.getKey(KeyStoreGenerator.KEYSTORE_ALIAS, "keyPassword".toCharArray()));
+
+    X509Certificate certificate = (X509Certificate) keyStore.getCertificate(KeyStoreGenerator.KEYSTORE_ALIAS);
+    certificate.checkValidity();
+    certificate.verify(keyPair.getPublic());
+    assertEquals("CN=diku", certificate.getSubjectX500Principal().getName());
+    assertEquals(keyPair.getPublic(), certificate.getPublicKey());
+  }
+}
@@ -0,0 +1,39 @@
+package org.folio.util;
+
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.folio.rest.tools.client.interfaces.HttpClientInterface;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class OkapiClientPoolTest {
+
+  @Rule
+  public RunTestOnContext rule = new RunTestOnContext();
+
+  @Test
+  public void reusesClientPerUrlAndTenant(TestContext context) {
+    HttpClientInterface client = OkapiClientPool.getClient("http://localhost:9130", "pool-a");
+
+    context.assertTrue(client == OkapiClientPool.getClient("http://localhost:9130", "pool-a"));
+    context.assertFalse(client == OkapiClientPool.getClient("http://localhost:9130", "pool-b"));
+    context.assertFalse(client == OkapiClientPool.getClient("http://localhost:9131", "pool-a"));
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsed(TestContext context) {
+    OkapiClientPool.Clients clients = new OkapiClientPool.Clients(2, OkapiClientPool::createClient);
+    HttpClientInterface a = clients.get("http://localhost:9130", "a");
+    HttpClientInterface b = clients.get("http://localhost:9130", "b");
+    clients.get("http://localhost:9130", "a");
+
+    clients.get("http://localhost:9130", "c");
+
+    context.assertEquals(2, clients.size());
+    context.assertTrue(a == clients.get("http://localhost:9130", "a"));
+    context.assertFalse(b == clients.get("http://localhost:9130", "b"));
+  }
+}
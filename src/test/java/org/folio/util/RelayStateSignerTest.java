@@ -0,0 +1,89 @@
+package org.folio.util;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class RelayStateSignerTest {
+
+  private static final String URL = "http://localhost:3000/some/path?a=b.c";
+  private static final long NOW = 1514800800000L;
+
+  private final RelayStateSigner signer = new RelayStateSigner("secret".getBytes(StandardCharsets.UTF_8), 60000);
+
+  @Test
+  public void verifiesOwnRelayState() {
+    String relayState = signer.sign("diku", null, URL, NOW);
+
+    assertEquals(URL, signer.verify("diku", null, relayState, NOW + 59000));
+  }
+
+  @Test
+  public void otherNodeWithSameSecretVerifies() {
+    RelayStateSigner otherNode = new RelayStateSigner("secret".getBytes(StandardCharsets.UTF_8), 60000);
+
+    assertEquals(URL, otherNode.verify("diku", null, signer.sign("diku", null, URL, NOW), NOW));
+  }
+
+  @Test
+  public void nodesConfiguredWithSecretVerifyEachOther() {
+    System.setProperty(RelayStateSigner.SECRET_PROPERTY, "shared-secret");
+    try {
+      RelayStateSigner loginNode = RelayStateSigner.fromProperties();
+      RelayStateSigner callbackNode = RelayStateSigner.fromProperties();
+
+      assertEquals(URL, callbackNode.verify("diku", "tenant-secret", loginNode.sign("diku", "other-tenant-secret", URL)));
+    } finally {
+      System.clearProperty(RelayStateSigner.SECRET_PROPERTY);
+    }
+  }
+
+  @Test
+  public void nodesWithoutSecretUseTenantSecret() {
+    RelayStateSigner loginNode = new RelayStateSigner(null, 60000);
+    RelayStateSigner callbackNode = new RelayStateSigner(null, 60000);
+
+    assertEquals(URL, callbackNode.verify("diku", "tenant-secret", loginNode.sign("diku", "tenant-secret", URL, NOW), NOW));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsOtherTenantSecret() {
+    RelayStateSigner withoutSecret = new RelayStateSigner(null, 60000);
+
+    withoutSecret.verify("diku", "regenerated", withoutSecret.sign("diku", "tenant-secret", URL, NOW), NOW);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsWithoutAnySecret() {
+    new RelayStateSigner(null, 60000).sign("diku", null, URL, NOW);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsExpired() {
+    signer.verify("diku", null, signer.sign("diku", null, URL, NOW), NOW + 60000);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsOtherTenant() {
+    signer.verify("other", null, signer.sign("diku", null, URL, NOW), NOW);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsChangedUrl() {
+    signer.verify("diku", null, signer.sign("diku", null, URL, NOW) + "/evil", NOW);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsOtherKey() {
+    RelayStateSigner otherKey = new RelayStateSigner("other".getBytes(StandardCharsets.UTF_8), 60000);
+
+    otherKey.verify("diku", null, signer.sign("diku", null, URL, NOW), NOW);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnsigned() {
+    signer.verify("diku", null, URL, NOW);
+  }
+}
@@ -0,0 +1,67 @@
+package org.folio.util;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+import static org.junit.Assert.assertEquals;
+
+public class SamlResponseGateTest {
+
+  private static final String CALLBACK_URL = "http://localhost:9130/_/invoke/tenant/diku/saml/callback";
+  private static final String IDP = "https://idp.example.org";
+  private static final long NOW = Instant.parse("2018-01-01T10:00:00Z").toEpochMilli();
+
+  private static String response(String destination, String inResponseTo, String notOnOrAfter) {
+    String xml = "<samlp:Response xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\""
+      + " xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\" ID=\"_response\" Destination=\"" + destination + "\""
+      + (inResponseTo != null ? " InResponseTo=\"" + inResponseTo + "\"" : "") + ">"
+      + "<saml:Issuer> " + IDP + " </saml:Issuer>"
+      + "<saml:Assertion ID=\"_assertion\"><saml:Conditions NotOnOrAfter=\"" + notOnOrAfter + "\"/></saml:Assertion>"
+      + "</samlp:Response>";
+    return Base64.getEncoder().encodeToString(xml.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void acceptsMatchingResponse() {
+    SamlResponseGate gate = new SamlResponseGate(10000, 0, true);
+
+    assertEquals(IDP, gate.check(response(CALLBACK_URL, "_request", "2018-01-01T10:05:00Z"), CALLBACK_URL, IDP, NOW)
+      .getIssuer());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsOversizedResponse() {
+    new SamlResponseGate(100, 0, false).check(response(CALLBACK_URL, null, "2018-01-01T10:05:00Z"), CALLBACK_URL, IDP, NOW);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsOtherDestination() {
+    new SamlResponseGate(10000, 0, false).check(response("http://localhost:9130/_/invoke/tenant/other/saml/callback",
+      null, "2018-01-01T10:05:00Z"), CALLBACK_URL, IDP, NOW);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsOtherIssuer() {
+    new SamlResponseGate(10000, 0, false).check(response(CALLBACK_URL, null, "2018-01-01T10:05:00Z"), CALLBACK_URL,
+      "https://other.example.org", NOW);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsExpiredResponse() {
+    new SamlResponseGate(10000, 60000, false).check(response(CALLBACK_URL, null, "2018-01-01T09:58:00Z"), CALLBACK_URL,
+      IDP, NOW);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnsolicitedResponseIfRequired() {
+    new SamlResponseGate(10000, 0, true).check(response(CALLBACK_URL, null, "2018-01-01T10:05:00Z"), CALLBACK_URL, IDP, NOW);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsGarbage() {
+    new SamlResponseGate(10000, 0, false).check("not base64 at all!", CALLBACK_URL, IDP, NOW);
+  }
+}
@@ -0,0 +1,47 @@
+package org.folio.util;
+
+import org.folio.util.model.SamlResponseInfo;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class SamlResponseScannerTest {
+
+  private static final String RESPONSE = "<samlp:Response xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\""
+    + " xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\" ID=\"_response\" Version=\"2.0\">"
+    + "<saml:Issuer>https://idp.example.org</saml:Issuer>"
+    + "<saml:Assertion ID=\"_assertion\" Version=\"2.0\">"
+    + "<saml:Subject><saml:SubjectConfirmation Method=\"urn:oasis:names:tc:SAML:2.0:cm:bearer\">"
+    + "<saml:SubjectConfirmationData NotOnOrAfter=\"2018-01-01T10:05:00Z\"/>"
+    + "</saml:SubjectConfirmation></saml:Subject>"
+    + "<saml:Conditions NotBefore=\"2018-01-01T09:55:00Z\" NotOnOrAfter=\"2018-01-01T10:10:00.000Z\"/>"
+    + "</saml:Assertion></samlp:Response>";
+
+  private static String encode(String xml) {
+    return Base64.getEncoder().encodeToString(xml.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void readsIdsAndValidity() {
+    SamlResponseInfo info = SamlResponseScanner.scan(encode(RESPONSE));
+
+    assertEquals("_response", info.getResponseId());
+    assertEquals(Collections.singletonList("_assertion"), info.getAssertionIds());
+    assertEquals(Instant.parse("2018-01-01T10:05:00Z"), info.getNotOnOrAfter());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsMalformedXml() {
+    SamlResponseScanner.scan(encode("<samlp:Response"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsDoctype() {
+    SamlResponseScanner.scan(encode("<!DOCTYPE r [<!ENTITY e SYSTEM \"file:///etc/passwd\">]><r>&e;</r>"));
+  }
+}
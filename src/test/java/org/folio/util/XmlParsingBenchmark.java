@@ -0,0 +1,118 @@
+package org.folio.util;
+
+import net.shibboleth.utilities.java.support.xml.ParserPool;
+import org.folio.util.model.SamlResponseInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.w3c.dom.Document;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a signed SAML Response on several threads: a new hardened DocumentBuilder per message (before) against
+ * the shared parser pool (after), and the streaming pre-check. Run with the GC profiler to compare allocations:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *   -Dexec.mainClass=org.folio.util.XmlParsingBenchmark -Dexec.args="-prof gc"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(4)
+public class XmlParsingBenchmark {
+
+  private byte[] response;
+  private String encodedResponse;
+  private ParserPool parserPool;
+
+  @Setup(Level.Trial)
+  public void createFixture() {
+    response = samlResponse().getBytes(StandardCharsets.UTF_8);
+    encodedResponse = Base64.getEncoder().encodeToString(response);
+    parserPool = XmlUtil.createParserPool(4);
+  }
+
+  @Benchmark
+  public Document newDocumentBuilder() throws Exception {
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    factory.setExpandEntityReferences(false);
+    factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+    factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+    return factory.newDocumentBuilder().parse(new ByteArrayInputStream(response));
+  }
+
+  @Benchmark
+  public Document pooledDocumentBuilder() throws Exception {
+    return parserPool.parse(new ByteArrayInputStream(response));
+  }
+
+  @Benchmark
+  public SamlResponseInfo streamingScan() {
+    return SamlResponseScanner.scan(encodedResponse);
+  }
+
+  /**
+   * A response shaped like the ones of common IdPs: signed assertion with a certificate and a few attributes.
+   */
+  static String samlResponse() {
+    StringBuilder certificate = new StringBuilder();
+    for (int i = 0; i < 20; i++) {
+      certificate.append("MIIDdzCCAl+gAwIBAgIEbKxYvDANBgkqhkiG9w0BAQsFADBsMRAwDgYDVQQGEwdVbmtub3duMRAwDg\n");
+    }
+    StringBuilder attributes = new StringBuilder();
+    for (int i = 0; i < 10; i++) {
+      attributes.append("<saml:Attribute Name=\"attribute").append(i).append("\">")
+        .append("<saml:AttributeValue>value").append(i).append("</saml:AttributeValue></saml:Attribute>");
+    }
+    return "<samlp:Response xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\""
+      + " xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\" xmlns:ds=\"http://www.w3.org/2000/09/xmldsig#\""
+      + " ID=\"_response\" Version=\"2.0\" IssueInstant=\"2018-01-01T10:00:00Z\""
+      + " Destination=\"http://localhost:9130/_/invoke/tenant/diku/saml/callback\" InResponseTo=\"_request\">"
+      + "<saml:Issuer>https://idp.example.org</saml:Issuer>"
+      + "<samlp:Status><samlp:StatusCode Value=\"urn:oasis:names:tc:SAML:2.0:status:Success\"/></samlp:Status>"
+      + "<saml:Assertion ID=\"_assertion\" Version=\"2.0\" IssueInstant=\"2018-01-01T10:00:00Z\">"
+      + "<saml:Issuer>https://idp.example.org</saml:Issuer>"
+      + "<ds:Signature><ds:SignedInfo><ds:Reference URI=\"#_assertion\"><ds:DigestValue>ZGlnZXN0</ds:DigestValue>"
+      + "</ds:Reference></ds:SignedInfo><ds:SignatureValue>c2lnbmF0dXJl</ds:SignatureValue>"
+      + "<ds:KeyInfo><ds:X509Data><ds:X509Certificate>" + certificate + "</ds:X509Certificate></ds:X509Data>"
+      + "</ds:KeyInfo></ds:Signature>"
+      + "<saml:Subject><saml:NameID>jdoe</saml:NameID><saml:SubjectConfirmation"
+      + " Method=\"urn:oasis:names:tc:SAML:2.0:cm:bearer\"><saml:SubjectConfirmationData"
+      + " NotOnOrAfter=\"2018-01-01T10:05:00Z\" InResponseTo=\"_request\"/></saml:SubjectConfirmation></saml:Subject>"
+      + "<saml:Conditions NotBefore=\"2018-01-01T09:55:00Z\" NotOnOrAfter=\"2018-01-01T10:05:00Z\"/>"
+      + "<saml:AttributeStatement>" + attributes + "</saml:AttributeStatement>"
+      + "</saml:Assertion></samlp:Response>";
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    OptionsBuilder options = new OptionsBuilder();
+    options.include(XmlParsingBenchmark.class.getSimpleName());
+    if (args.length > 1 && "-prof".equals(args[0])) {
+      options.addProfiler(args[1]);
+    }
+    new Runner(options.build()).run();
+  }
+}
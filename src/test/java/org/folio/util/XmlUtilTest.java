@@ -0,0 +1,65 @@
+package org.folio.util;
+
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class XmlUtilTest {
+
+  private static final String SECRET = "secret-file-content";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private String externalEntityDocument() throws IOException {
+    File secret = folder.newFile("secret.txt");
+    Files.write(secret.toPath(), SECRET.getBytes(StandardCharsets.UTF_8));
+    return "<?xml version=\"1.0\"?><!DOCTYPE root [<!ENTITY xxe SYSTEM \"" + secret.toURI() + "\">]>"
+      + "<root>&xxe;</root>";
+  }
+
+  @Test(expected = XMLParserException.class)
+  public void parserPoolRejectsDoctype() throws Exception {
+    XmlUtil.createParserPool(1).parse(new ByteArrayInputStream(externalEntityDocument().getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test(expected = XMLStreamException.class)
+  public void inputFactoryRejectsExternalEntity() throws Exception {
+    XMLStreamReader reader = XmlUtil.getInputFactory().createXMLStreamReader(
+      new ByteArrayInputStream(externalEntityDocument().getBytes(StandardCharsets.UTF_8)));
+    try {
+      while (reader.hasNext()) {
+        if (reader.next() == XMLStreamConstants.CHARACTERS) {
+          assertFalse(reader.getText().contains(SECRET));
+        }
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void inputFactoryReadsPlainDocument() throws Exception {
+    XMLStreamReader reader = XmlUtil.getInputFactory().createXMLStreamReader(
+      new ByteArrayInputStream("<root>text</root>".getBytes(StandardCharsets.UTF_8)));
+    try {
+      reader.nextTag();
+      assertEquals("text", reader.getElementText());
+    } finally {
+      reader.close();
+    }
+  }
+}